@@ -0,0 +1,111 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+import benchmarks.App;
+
+/**
+ * This class is the benchmarks' way into the application (see
+ * benchmarks.App). It lives in the default package with the application,
+ * so it calls Hotel, HotelService and the rest directly.
+ */
+public final class AppBridge extends App {
+
+   public int topCustomersLimit(){
+      return HotelService.TOP_CUSTOMERS;
+   }
+
+   public int recentPageSize(){
+      return HotelService.RECENT_PAGE_SIZE;
+   }
+
+   public int nearestHotels(){
+      return HotelService.NEAREST_HOTELS;
+   }
+
+   public String stayConflicts(){
+      return HotelService.STAY_CONFLICTS;
+   }
+
+   public Object connect(String db, String port, String user, String password) throws SQLException {
+      return new Hotel(db, port, user, password);
+   }
+
+   public void cleanup(Object esql){
+      ((Hotel) esql).cleanup();
+   }
+
+   public int executeUpdate(Object esql, String sql, Object... params) throws SQLException {
+      return ((Hotel) esql).executeUpdate(sql, params);
+   }
+
+   public List<List<String>> executeQueryAndReturnResult(Object esql, String sql, Object... params) throws SQLException {
+      return ((Hotel) esql).executeQueryAndReturnResult(sql, params);
+   }
+
+   public Object executeQueryAndReturnTypedResult(Object esql, String sql, Object... params) throws SQLException {
+      return ((Hotel) esql).executeQueryAndReturnTypedResult(sql, params);
+   }
+
+   public int executeQueryAndStream(Object esql, String sql, final Rows rows, Object... params) throws SQLException {
+      return ((Hotel) esql).executeQueryAndStream(sql, new RowHandler(){
+         public void handle(ResultSet rs) throws SQLException {
+            rows.handle(rs);
+         }
+      }, params);
+   }
+
+   public Object topCustomers(Object esql, int hotelID, int limit) throws SQLException {
+      return ((Hotel) esql).service().topCustomers(hotelID, limit);
+   }
+
+   public Object recentBookings(Object esql, int customerID, int limit, LocalDate beforeDate, int beforeID) throws SQLException {
+      return ((Hotel) esql).service().recentBookings(customerID, limit, beforeDate, beforeID);
+   }
+
+   public boolean bookRoom(Object esql, int customerID, int hotelID, int roomNumber, LocalDate date) throws SQLException {
+      return ((Hotel) esql).service().bookRoom(customerID, hotelID, roomNumber, date);
+   }
+
+   public Object bookStay(Object esql, int customerID, int hotelID, int[] rooms, LocalDate first, LocalDate last) throws SQLException {
+      return ((Hotel) esql).service().bookStay(customerID, hotelID, rooms, first, last);
+   }
+
+   public LocalDate lastBookableNight(LocalDate today){
+      return HotelService.lastBookableNight(today);
+   }
+
+   public int[] roomNumbers(Object esql, int hotelID) throws SQLException {
+      return ((Hotel) esql).availability().roomNumbers(hotelID);
+   }
+
+   public int[] bookedRooms(Object esql, int hotelID, LocalDate date) throws SQLException {
+      return ((Hotel) esql).availability().bookedRooms(hotelID, date);
+   }
+
+   public boolean isFree(Object esql, int hotelID, int roomNumber, LocalDate first, LocalDate last) throws SQLException {
+      return ((Hotel) esql).availability().isFree(hotelID, roomNumber, first, last);
+   }
+
+   public void invalidateAvailability(Object esql){
+      ((Hotel) esql).availability().invalidateAll();
+   }
+
+   public double calculateDistance(double lat1, double long1, double lat2, double long2){
+      return Hotel.calculateDistance(lat1, long1, lat2, long2);
+   }
+
+   public double haversineKm(double lat1, double long1, double lat2, double long2){
+      return HotelLocator.haversineKm(lat1, long1, lat2, long2);
+   }
+
+   public Object newLocator(int[] ids, String[] names, double[] latitudes, double[] longitudes){
+      return new HotelLocator(ids, names, latitudes, longitudes);
+   }
+
+   public List<?> nearest(Object locator, double latitude, double longitude, int k){
+      return ((HotelLocator) locator).nearest(latitude, longitude, k);
+   }
+
+}//end AppBridge
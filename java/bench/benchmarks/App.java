@@ -0,0 +1,93 @@
+package benchmarks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * This class is how the benchmarks call the application. JMH only accepts
+ * benchmarks in a named package and a named package cannot refer to the
+ * classes of the default package the application lives in, but a class of
+ * the default package can extend one of a named package. AppBridge, in
+ * bench/ next to this package, does so and makes every call directly; its
+ * one instance, APP, is created by name when this class loads. As the only
+ * subclass its calls are inlined by the JIT like any other.
+ *
+ * The application's objects, such as Hotel and TypedResult, are passed
+ * around as Object, since the benchmarks cannot name their types.
+ */
+public abstract class App {
+
+   static final App APP = load();
+
+   static final int TOP_CUSTOMERS = APP.topCustomersLimit();
+   static final int RECENT_PAGE_SIZE = APP.recentPageSize();
+   static final int NEAREST_HOTELS = APP.nearestHotels();
+   static final String STAY_CONFLICTS = APP.stayConflicts();
+
+   /**
+    * A callback receiving each row of a streamed query, see RowHandler.
+    */
+   public interface Rows {
+      void handle(ResultSet rs) throws SQLException;
+   }
+
+   protected App(){
+   }
+
+   private static App load(){
+      try{
+         return (App) Class.forName("AppBridge").newInstance();
+      }catch (ReflectiveOperationException e){
+         throw new ExceptionInInitializerError(e);
+      }
+   }
+
+   public abstract int topCustomersLimit();
+
+   public abstract int recentPageSize();
+
+   public abstract int nearestHotels();
+
+   public abstract String stayConflicts();
+
+   public abstract Object connect(String db, String port, String user, String password) throws SQLException;
+
+   public abstract void cleanup(Object esql);
+
+   public abstract int executeUpdate(Object esql, String sql, Object... params) throws SQLException;
+
+   public abstract List<List<String>> executeQueryAndReturnResult(Object esql, String sql, Object... params) throws SQLException;
+
+   public abstract Object executeQueryAndReturnTypedResult(Object esql, String sql, Object... params) throws SQLException;
+
+   public abstract int executeQueryAndStream(Object esql, String sql, Rows rows, Object... params) throws SQLException;
+
+   public abstract Object topCustomers(Object esql, int hotelID, int limit) throws SQLException;
+
+   public abstract Object recentBookings(Object esql, int customerID, int limit, LocalDate beforeDate, int beforeID) throws SQLException;
+
+   public abstract boolean bookRoom(Object esql, int customerID, int hotelID, int roomNumber, LocalDate date) throws SQLException;
+
+   public abstract Object bookStay(Object esql, int customerID, int hotelID, int[] rooms, LocalDate first, LocalDate last) throws SQLException;
+
+   public abstract LocalDate lastBookableNight(LocalDate today);
+
+   public abstract int[] roomNumbers(Object esql, int hotelID) throws SQLException;
+
+   public abstract int[] bookedRooms(Object esql, int hotelID, LocalDate date) throws SQLException;
+
+   public abstract boolean isFree(Object esql, int hotelID, int roomNumber, LocalDate first, LocalDate last) throws SQLException;
+
+   public abstract void invalidateAvailability(Object esql);
+
+   public abstract double calculateDistance(double lat1, double long1, double lat2, double long2);
+
+   public abstract double haversineKm(double lat1, double long1, double lat2, double long2);
+
+   public abstract Object newLocator(int[] ids, String[] names, double[] latitudes, double[] longitudes);
+
+   public abstract List<?> nearest(Object locator, double latitude, double longitude, int k);
+
+}//end App
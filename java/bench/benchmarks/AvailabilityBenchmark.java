@@ -0,0 +1,66 @@
+package benchmarks;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class times the availability checks viewRooms and bookRooms make:
+ * answering them from the AvailabilityIndex bitmaps against asking the
+ * database for the booked rooms of a date.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AvailabilityBenchmark {
+
+   // dates are walked over the year before the busiest hotel's last booking.
+   private int _day = 0;
+
+   private LocalDate nextDate(BenchmarkDatabase db){
+      _day = (_day + 1) % 365;
+      return db.busiestDate.minusDays(_day);
+   }
+
+   @Benchmark
+   public int[] bookedRoomsFromIndex(BenchmarkDatabase db) throws SQLException {
+      return App.APP.bookedRooms(db.esql, db.hotelID, nextDate(db));
+   }
+
+   @Benchmark
+   public Object bookedRoomsFromDatabase(BenchmarkDatabase db) throws SQLException {
+      return App.APP.executeQueryAndReturnTypedResult(db.esql,
+         "SELECT roomNumber FROM RoomBookings WHERE hotelID = ? AND bookingDate = ? ORDER BY roomNumber",
+         db.hotelID, java.sql.Date.valueOf(nextDate(db)));
+   }
+
+   // a week's stay in one room, the check bookRooms makes before inserting.
+   @Benchmark
+   public boolean weekFreeFromIndex(BenchmarkDatabase db) throws SQLException {
+      LocalDate first = nextDate(db);
+      return App.APP.isFree(db.esql, db.hotelID, db.roomNumbers[_day % db.roomNumbers.length],
+                        first, first.plusDays(6));
+   }
+
+   @Benchmark
+   public Object weekFreeFromDatabase(BenchmarkDatabase db) throws SQLException {
+      LocalDate first = nextDate(db);
+      return App.APP.executeQueryAndReturnTypedResult(db.esql, App.STAY_CONFLICTS,
+         db.hotelID, new int[]{ db.roomNumbers[_day % db.roomNumbers.length] },
+         java.sql.Date.valueOf(first), java.sql.Date.valueOf(first.plusDays(6)));
+   }
+
+}//end AvailabilityBenchmark
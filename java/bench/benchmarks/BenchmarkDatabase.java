@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * This class is the database shared by the benchmarks that need one. It
+ * connects with the bench.db, bench.port, bench.user and bench.password
+ * system properties to a database loaded by scripts/benchmark.sh and picks
+ * the busiest hotel and customer so every run measures the same rows.
+ *
+ * Bookings made by the benchmarks are dated from BOOKING_EPOCH, today, to
+ * lastNight, the last night the application lets be booked, after any
+ * loaded booking, and are deleted when the trial ends.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+   // first night used for bookings made by the benchmarks.
+   static final LocalDate BOOKING_EPOCH = LocalDate.now();
+
+   Object esql;
+   int hotelID;
+   int customerID;
+   int[] roomNumbers;
+   LocalDate busiestDate;
+   LocalDate lastNight;
+
+   @Setup(Level.Trial)
+   public void connect() throws Exception {
+      Class.forName("org.postgresql.Driver");
+      esql = App.APP.connect(System.getProperty("bench.db", System.getProperty("user.name") + "_DB"),
+                       System.getProperty("bench.port", System.getenv("PGPORT") == null ? "5432" : System.getenv("PGPORT")),
+                       System.getProperty("bench.user", System.getProperty("user.name")),
+                       System.getProperty("bench.password", ""));
+
+      List<List<String>> busiest = App.APP.executeQueryAndReturnResult(esql,
+         "SELECT hotelID, max(bookingDate) FROM RoomBookings GROUP BY hotelID ORDER BY count(*) DESC LIMIT 1");
+      List<List<String>> customer = App.APP.executeQueryAndReturnResult(esql,
+         "SELECT customerID FROM RoomBookings GROUP BY customerID ORDER BY count(*) DESC LIMIT 1");
+      if (busiest.isEmpty() || customer.isEmpty())
+         throw new SQLException("The benchmark database has no bookings; load it with scripts/benchmark.sh first");
+
+      hotelID = Integer.parseInt(busiest.get(0).get(0));
+      busiestDate = LocalDate.parse(busiest.get(0).get(1));
+      customerID = Integer.parseInt(customer.get(0).get(0));
+      roomNumbers = App.APP.roomNumbers(esql, hotelID);
+      lastNight = App.APP.lastBookableNight(BOOKING_EPOCH);
+      removeBenchmarkBookings();
+   }//end connect
+
+   @TearDown(Level.Trial)
+   public void disconnect() throws SQLException {
+      removeBenchmarkBookings();
+      App.APP.cleanup(esql);
+   }//end disconnect
+
+   void removeBenchmarkBookings() throws SQLException {
+      App.APP.executeUpdate(esql, "DELETE FROM RoomBookings WHERE bookingDate >= ?", java.sql.Date.valueOf(BOOKING_EPOCH));
+      App.APP.invalidateAvailability(esql);
+   }
+
+}//end BenchmarkDatabase
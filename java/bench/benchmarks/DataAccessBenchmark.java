@@ -0,0 +1,121 @@
+package benchmarks;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This class times the data access paths behind the menus against the
+ * benchmark database: reading results as strings, typed columns or a
+ * stream, the booking statements and the top customer and recent booking
+ * lookups.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DataAccessBenchmark {
+
+   // every booking of the busiest hotel, the largest result a menu reads.
+   static final String HOTEL_HISTORY =
+      "SELECT bookingID, bookingDate, hotelID, roomNumber, customerID FROM RoomBookings WHERE hotelID = ?";
+
+   static final String HOTEL_ROOMS = "SELECT roomNumber, price FROM Rooms WHERE hotelID = ? ORDER BY roomNumber";
+
+   // (room, night) slots handed to the booking benchmarks, each used once per iteration.
+   private final AtomicInteger _slot = new AtomicInteger();
+
+   // nights from BOOKING_EPOCH the booking benchmarks spread over; the night after them is kept for bookTakenRoom.
+   private int _nights;
+
+   // each iteration starts with the nights free again, but for the one bookTakenRoom tries.
+   @Setup(Level.Iteration)
+   public void freeNights(BenchmarkDatabase db) throws SQLException {
+      db.removeBenchmarkBookings();
+      _slot.set(0);
+      _nights = (int) (db.lastNight.toEpochDay() - BenchmarkDatabase.BOOKING_EPOCH.toEpochDay());
+      App.APP.bookRoom(db.esql, db.customerID, db.hotelID, db.roomNumbers[0], db.lastNight);
+   }
+
+   @Benchmark
+   public List<List<String>> roomsAsStrings(BenchmarkDatabase db) throws SQLException {
+      return App.APP.executeQueryAndReturnResult(db.esql, HOTEL_ROOMS, db.hotelID);
+   }
+
+   @Benchmark
+   public List<List<String>> historyAsStrings(BenchmarkDatabase db) throws SQLException {
+      return App.APP.executeQueryAndReturnResult(db.esql, HOTEL_HISTORY, db.hotelID);
+   }
+
+   @Benchmark
+   public Object historyTyped(BenchmarkDatabase db) throws SQLException {
+      return App.APP.executeQueryAndReturnTypedResult(db.esql, HOTEL_HISTORY, db.hotelID);
+   }
+
+   @Benchmark
+   public int historyStreamed(BenchmarkDatabase db, final Blackhole bh) throws SQLException {
+      return App.APP.executeQueryAndStream(db.esql, HOTEL_HISTORY, new App.Rows(){
+         public void handle(ResultSet rs) throws SQLException {
+            bh.consume(rs.getInt(1));
+            bh.consume(rs.getDate(2));
+         }
+      }, db.hotelID);
+   }
+
+   @Benchmark
+   public Object topCustomers(BenchmarkDatabase db) throws SQLException {
+      return App.APP.topCustomers(db.esql, db.hotelID, App.TOP_CUSTOMERS);
+   }
+
+   @Benchmark
+   public Object recentBookings(BenchmarkDatabase db) throws SQLException {
+      return App.APP.recentBookings(db.esql, db.customerID, App.RECENT_PAGE_SIZE, null, 0);
+   }
+
+   // books a night nobody has booked yet, until an iteration has booked every room on every night.
+   @Benchmark
+   public boolean bookRoom(BenchmarkDatabase db) throws SQLException {
+      int slot = _slot.getAndIncrement();
+      int room = db.roomNumbers[slot % db.roomNumbers.length];
+      LocalDate night = BenchmarkDatabase.BOOKING_EPOCH.plusDays(slot / db.roomNumbers.length % _nights);
+      return App.APP.bookRoom(db.esql, db.customerID, db.hotelID, room, night);
+   }
+
+   // tries to book a night that is already taken, so the insert does nothing.
+   @Benchmark
+   public boolean bookTakenRoom(BenchmarkDatabase db) throws SQLException {
+      return App.APP.bookRoom(db.esql, db.customerID, db.hotelID, db.roomNumbers[0], db.lastNight);
+   }
+
+   // books two rooms for three nights in one transaction.
+   @Benchmark
+   public Object bookStay(BenchmarkDatabase db) throws SQLException {
+      int rooms = Math.max(1, db.roomNumbers.length / 2);
+      int slot = _slot.getAndIncrement();
+      int first = slot % rooms;
+      LocalDate night = BenchmarkDatabase.BOOKING_EPOCH.plusDays(3L * (slot / rooms % (_nights / 3)));
+      return App.APP.bookStay(db.esql, db.customerID, db.hotelID,
+                          new int[]{ db.roomNumbers[2 * first % db.roomNumbers.length],
+                                     db.roomNumbers[(2 * first + 1) % db.roomNumbers.length] },
+                          night, night.plusDays(2));
+   }
+
+}//end DataAccessBenchmark
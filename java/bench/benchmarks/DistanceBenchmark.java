@@ -0,0 +1,105 @@
+package benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class times the distance functions and the nearest hotel search on
+ * generated hotel locations; it needs no database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DistanceBenchmark {
+
+   @Param({"1000", "100000"})
+   public int hotels;
+
+   private double[] _lat;
+   private double[] _long;
+   private Object _locator;
+
+   // search points, walked in turn so each call asks about a different place.
+   private final double[] _queries = new double[2 * 1024];
+   private int _next = 0;
+   private double _queryLat;
+   private double _queryLong;
+
+   @Setup(Level.Trial)
+   public void generate(){
+      int[] ids = new int[hotels];
+      String[] names = new String[hotels];
+      _lat = new double[hotels];
+      _long = new double[hotels];
+      Random random = new Random(7);
+      for (int i = 0; i < hotels; ++i){
+         ids[i] = i + 1;
+         names[i] = "Hotel" + (i + 1);
+         _lat[i] = random.nextDouble() * 180 - 90;
+         _long[i] = random.nextDouble() * 360 - 180;
+      }
+      _locator = App.APP.newLocator(ids, names, _lat, _long);
+      for (int i = 0; i < _queries.length; i += 2){
+         _queries[i] = random.nextDouble() * 180 - 90;
+         _queries[i + 1] = random.nextDouble() * 360 - 180;
+      }
+   }//end generate
+
+   private void nextQuery(){
+      _next = (_next + 2) & (_queries.length - 1);
+      _queryLat = _queries[_next];
+      _queryLong = _queries[_next + 1];
+   }
+
+   @Benchmark
+   public double calculateDistance(){
+      nextQuery();
+      return App.APP.calculateDistance(_queryLat, _queryLong, _lat[0], _long[0]);
+   }
+
+   @Benchmark
+   public double haversine(){
+      nextQuery();
+      return App.APP.haversineKm(_queryLat, _queryLong, _lat[0], _long[0]);
+   }
+
+   // the single nearest hotel found by scanning every hotel, a lower bound for a k nearest scan.
+   @Benchmark
+   public int nearestByScan(){
+      nextQuery();
+      int best = -1;
+      double bestDistance = Double.MAX_VALUE;
+      for (int i = 0; i < _lat.length; ++i){
+         double d = App.APP.haversineKm(_queryLat, _queryLong, _lat[i], _long[i]);
+         if (d < bestDistance){
+            bestDistance = d;
+            best = i;
+         }
+      }
+      return best;
+   }
+
+   @Benchmark
+   public List<?> nearestByIndex(){
+      nextQuery();
+      return App.APP.nearest(_locator, _queryLat, _queryLong, App.NEAREST_HOTELS);
+   }
+
+}//end DistanceBenchmark
@@ -0,0 +1,25 @@
+#!/bin/bash
+# Loads a synthetic dataset into a scratch database, builds the JMH
+# benchmarks with Maven and runs them against it.
+#
+# usage: benchmark.sh <scratch dbname> [scale] [JMH options...]
+# e.g.   benchmark.sh bench_DB 0.5 DataAccessBenchmark -f 1
+# Everything in the scratch database is dropped and recreated.
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+DB=${1:?"usage: benchmark.sh <scratch dbname> [scale] [JMH options...]"}
+SCALE=${2:-1}
+shift; shift
+
+SQL_DIR=$DIR/../../sql/src
+psql -h localhost -p $PGPORT $DB < $SQL_DIR/create_tables.sql
+
+(cd $DIR/.. && mvn -B -q -Pbench package -DskipTests) || exit 1
+# writes data/*.csv scaled up with DataGenerator and loads it with DataLoader, building the indexes after.
+DATA=$(mktemp -d) || exit 1
+trap 'rm -rf "$DATA"' EXIT
+java -cp "$DIR/../target/hotel.jar:$DIR/../target/lib/*" DataGenerator \
+     $DATA $SCALE $DB $PGPORT $USER $SQL_DIR/create_indexes.sql || exit 1
+psql -h localhost -p $PGPORT $DB -c "ANALYZE"
+
+java -Dbench.db=$DB -Dbench.port=$PGPORT -Dbench.user=$USER \
+     -jar $DIR/../target/benchmarks.jar "$@"
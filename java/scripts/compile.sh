@@ -1,13 +1,9 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
 
-export JAVA_HOME=/usr/csshare/pkgs/jdk1.7.0_17
-export PATH=$JAVA_HOME/bin:$PATH
-
-# compile the java program
-javac -d $DIR/../classes $DIR/../src/Hotel.java
+# compile the java program into target/hotel.jar, with the PostgreSQL driver pom.xml declares in target/lib
+(cd $DIR/.. && mvn -B -q package -DskipTests) || exit 1
 
 #run the java program
 #Use your database name, port number and login
-java -cp $DIR/../classes:$DIR/../lib/pg73jdbc3.jar Hotel $USER"_DB" $PGPORT $USER
-
+java -cp "$DIR/../target/hotel.jar:$DIR/../target/lib/*" Hotel $USER"_DB" $PGPORT $USER
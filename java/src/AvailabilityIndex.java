@@ -0,0 +1,360 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class keeps, for every room of every hotel, a bitset of the nights the
+ * room is booked, one bit per day. "Which rooms are free on a date" and "is
+ * a room free for a run of nights" are then answered with bit tests and word
+ * masks instead of by fetching and scanning booking rows.
+ *
+ * A hotel's bitsets are loaded from RoomBookings the first time the hotel is
+ * asked about and reloaded once they are older than the refresh interval, so
+ * bookings written by other clients show up. Bookings made through this
+ * process are added with recordBooking as soon as they are inserted.
+ * Only one thread loads a hotel at a time, the others wait for its result;
+ * bookings recorded while a load runs are kept and replayed on the loaded
+ * bitsets before they are used, since the load may have read RoomBookings
+ * before they were committed.
+ *
+ * Only the nights from hotel.availability.historyDays before today on are
+ * loaded, so a load reads the latest partitions of RoomBookings rather than
+ * the hotel's whole history. Questions about earlier nights, which bookings
+ * rarely ask, are answered by a query on the nights asked about.
+ */
+public class AvailabilityIndex {
+
+   // days before today loaded into the bitsets; earlier nights are read from the database.
+   static final int HISTORY_DAYS = Integer.getInteger("hotel.availability.historyDays", 31);
+
+   private final Hotel _esql;
+   private final long _refreshMillis;
+   private final Map<Integer, HotelNights> _hotels = new ConcurrentHashMap<Integer, HotelNights>();
+   private final Map<Integer, Loading> _loading = new ConcurrentHashMap<Integer, Loading>();
+
+   /**
+    * Creates an empty index that loads hotels through the given Hotel.
+    *
+    * @param esql the data access object used to read rooms and bookings
+    * @param refreshMillis how long a loaded hotel is trusted before it is reloaded
+    */
+   public AvailabilityIndex(Hotel esql, long refreshMillis){
+      this._esql = esql;
+      this._refreshMillis = refreshMillis;
+   }//end AvailabilityIndex
+
+   /**
+    * @return the room numbers of a hotel in ascending order
+    */
+   public int[] roomNumbers(int hotelID) throws SQLException {
+      return hotel(hotelID).roomNumbers();
+   }
+
+   /**
+    * Method to list the rooms of a hotel that have no booking on a date.
+    *
+    * @return the free room numbers in ascending order
+    */
+   public int[] freeRooms(int hotelID, LocalDate date) throws SQLException {
+      return rooms(hotelID, date, false);
+   }
+
+   /**
+    * Method to list the rooms of a hotel that are booked on a date.
+    *
+    * @return the booked room numbers in ascending order
+    */
+   public int[] bookedRooms(int hotelID, LocalDate date) throws SQLException {
+      return rooms(hotelID, date, true);
+   }
+
+   private int[] rooms(int hotelID, LocalDate date, boolean booked) throws SQLException {
+      HotelNights nights = hotel(hotelID);
+      if (date.toEpochDay() >= nights.since)
+         return nights.rooms(date.toEpochDay(), booked);
+      TypedResult taken = _esql.executeQueryAndReturnTypedResult(
+         "SELECT roomNumber FROM RoomBookings WHERE hotelID = ? AND bookingDate = ? ORDER BY roomNumber",
+         hotelID, java.sql.Date.valueOf(date));
+      int[] numbers = nights.roomNumbers;
+      int[] result = new int[numbers.length];
+      int n = 0;
+      for (int i = 0, t = 0; i < numbers.length; ++i){
+         while (t < taken.rowCount() && taken.getInt(t, 0) < numbers[i])
+            ++t;
+         if ((t < taken.rowCount() && taken.getInt(t, 0) == numbers[i]) == booked)
+            result[n++] = numbers[i];
+      }
+      return Arrays.copyOf(result, n);
+   }//end rooms
+
+   /**
+    * Method to check whether a room is free for every night from first to
+    * last, both included.
+    */
+   public boolean isFree(int hotelID, int roomNumber, LocalDate first, LocalDate last) throws SQLException {
+      HotelNights nights = hotel(hotelID);
+      if (!nights.isFree(roomNumber, Math.max(first.toEpochDay(), nights.since), last.toEpochDay()))
+         return false;
+      if (first.toEpochDay() >= nights.since)
+         return true;
+      // the nights before the loaded ones.
+      LocalDate end = LocalDate.ofEpochDay(Math.min(last.toEpochDay(), nights.since - 1));
+      return _esql.executeQueryAndReturnTypedResult(
+         "SELECT 1 FROM RoomBookings WHERE hotelID = ? AND roomNumber = ? AND bookingDate BETWEEN ? AND ? LIMIT 1",
+         hotelID, roomNumber, java.sql.Date.valueOf(first), java.sql.Date.valueOf(end)).rowCount() == 0;
+   }//end isFree
+
+   /**
+    * Method to mark a night as booked after the booking has been inserted.
+    * Hotels that are not loaded yet are left alone; they read the booking
+    * from the database when they are loaded.
+    */
+   public void recordBooking(int hotelID, int roomNumber, LocalDate date){
+      record(hotelID, roomNumber, date, true);
+   }//end recordBooking
+
+   /**
+    * Method to unmark a night after its booking has been removed.
+    */
+   public void recordCancellation(int hotelID, int roomNumber, LocalDate date){
+      record(hotelID, roomNumber, date, false);
+   }//end recordCancellation
+
+   // a load running is told first, so the change reaches the hotel whichever bitsets end up in the map.
+   private void record(int hotelID, int roomNumber, LocalDate date, boolean booked){
+      Loading loading = _loading.get(hotelID);
+      if (loading != null)
+         loading.record(roomNumber, date.toEpochDay(), booked);
+      HotelNights nights = _hotels.get(hotelID);
+      if (nights != null)
+         nights.set(roomNumber, date.toEpochDay(), booked);
+   }//end record
+
+   /**
+    * Method to drop a hotel so it is reloaded on next use.
+    */
+   public void invalidate(int hotelID){
+      Loading loading = _loading.get(hotelID);
+      if (loading != null)
+         loading.stale = true;
+      _hotels.remove(hotelID);
+   }
+
+   /**
+    * Method to drop every loaded hotel.
+    */
+   public void invalidateAll(){
+      for (Loading loading : _loading.values())
+         loading.stale = true;
+      _hotels.clear();
+   }
+
+   private HotelNights hotel(int hotelID) throws SQLException {
+      HotelNights nights = _hotels.get(hotelID);
+      if (nights != null && System.currentTimeMillis() - nights.loadedAt <= _refreshMillis)
+         return nights;
+
+      Loading loading = new Loading();
+      Loading running = _loading.putIfAbsent(hotelID, loading);
+      if (running != null)
+         return running.await();
+      try{
+         nights = load(hotelID);
+         loading.finish(hotelID, nights, null);
+         return nights;
+      }catch (SQLException e){
+         loading.finish(hotelID, null, e);
+         throw e;
+      }finally{
+         _loading.remove(hotelID, loading);
+      }
+   }//end hotel
+
+   /*
+    * A load of one hotel in progress: the nights recorded while it runs, as
+    * roomNumber, day and 1 for booked or 0 for free, and its outcome for the
+    * threads waiting on it.
+    */
+   private final class Loading {
+      private final List<long[]> recorded = new ArrayList<long[]>();
+      private boolean done = false;
+      private HotelNights result = null;
+      private SQLException failure = null;
+      // set when the hotel is invalidated during the load, which then keeps its result out of the map.
+      volatile boolean stale = false;
+
+      synchronized void record(int roomNumber, long day, boolean booked){
+         // once done, the loaded bitsets are in the map and take the change themselves.
+         if (!done)
+            recorded.add(new long[]{ roomNumber, day, booked ? 1 : 0 });
+      }
+
+      synchronized void finish(int hotelID, HotelNights nights, SQLException e){
+         if (nights != null){
+            for (long[] r : recorded)
+               nights.set((int) r[0], r[1], r[2] == 1);
+            if (!stale)
+               _hotels.put(hotelID, nights);
+         }
+         recorded.clear();
+         result = nights;
+         failure = e;
+         done = true;
+         notifyAll();
+      }
+
+      synchronized HotelNights await() throws SQLException {
+         while (!done){
+            try{
+               wait();
+            }catch (InterruptedException e){
+               Thread.currentThread().interrupt();
+               throw new SQLException("Interrupted while waiting for the rooms of a hotel to load");
+            }
+         }
+         if (failure != null)
+            throw new SQLException(failure.getMessage(), failure.getSQLState(), failure);
+         return result;
+      }
+   }//end Loading
+
+   // the booked nights of a hotel from a date on.
+   static final String LOAD_BOOKINGS =
+      "SELECT roomNumber, bookingDate FROM RoomBookings WHERE hotelID = ? AND bookingDate >= ?";
+
+   private HotelNights load(int hotelID) throws SQLException {
+      TypedResult rooms = _esql.executeQueryAndReturnTypedResult(
+         "SELECT roomNumber FROM Rooms WHERE hotelID = ? ORDER BY roomNumber", hotelID);
+      int[] numbers = Arrays.copyOf(rooms.intColumn(0), rooms.rowCount());
+      LocalDate since = LocalDate.now().minusDays(HISTORY_DAYS);
+      final HotelNights nights = new HotelNights(numbers, since.toEpochDay());
+
+      _esql.executeQueryAndStream(LOAD_BOOKINGS,
+         new RowHandler(){
+            public void handle(java.sql.ResultSet rs) throws SQLException {
+               nights.set(rs.getInt(1), rs.getDate(2).toLocalDate().toEpochDay(), true);
+            }
+         }, hotelID, java.sql.Date.valueOf(since));
+      return nights;
+   }//end load
+
+   /*
+    * The booked nights of every room of one hotel. Rooms are kept in sorted
+    * order so a room number is found with a binary search, and each room
+    * has its own bitset starting at the first week it was booked. Nights
+    * before since are not kept.
+    */
+   private static final class HotelNights {
+      final long loadedAt = System.currentTimeMillis();
+      final long since;
+      final int[] roomNumbers;
+      final Nights[] nights;
+
+      HotelNights(int[] roomNumbers, long since){
+         this.since = since;
+         this.roomNumbers = roomNumbers;
+         this.nights = new Nights[roomNumbers.length];
+         for (int i = 0; i < nights.length; ++i)
+            nights[i] = new Nights();
+      }
+
+      int[] roomNumbers(){
+         return roomNumbers.clone();
+      }
+
+      synchronized void set(int roomNumber, long day, boolean booked){
+         if (day < since)
+            return;
+         int i = Arrays.binarySearch(roomNumbers, roomNumber);
+         if (i >= 0)
+            nights[i].set(day, booked);
+      }
+
+      synchronized boolean isFree(int roomNumber, long first, long last){
+         int i = Arrays.binarySearch(roomNumbers, roomNumber);
+         return i >= 0 && !nights[i].anySet(first, last);
+      }
+
+      synchronized int[] rooms(long day, boolean booked){
+         int[] result = new int[roomNumbers.length];
+         int n = 0;
+         for (int i = 0; i < roomNumbers.length; ++i){
+            if (nights[i].get(day) == booked)
+               result[n++] = roomNumbers[i];
+         }
+         return Arrays.copyOf(result, n);
+      }
+   }//end HotelNights
+
+   /*
+    * A growable bitset over epoch days. Bit 0 of word 0 is day base; the
+    * array is extended in either direction as bookings arrive.
+    */
+   static final class Nights {
+      private long base = 0;
+      private long[] words = null;
+
+      boolean get(long day){
+         if (words == null)
+            return false;
+         long offset = day - base;
+         if (offset < 0 || offset >= 64L * words.length)
+            return false;
+         return (words[(int) (offset >>> 6)] & (1L << offset)) != 0;
+      }
+
+      void set(long day, boolean booked){
+         if (words == null){
+            if (!booked)
+               return;
+            base = Math.floorDiv(day, 64) * 64;
+            words = new long[1];
+         }
+         long offset = day - base;
+         if (offset < 0){
+            if (!booked)
+               return;
+            int extra = (int) ((-offset + 63) >>> 6);
+            long[] grown = new long[words.length + extra];
+            System.arraycopy(words, 0, grown, extra, words.length);
+            words = grown;
+            base -= 64L * extra;
+            offset = day - base;
+         }else if (offset >= 64L * words.length){
+            if (!booked)
+               return;
+            words = Arrays.copyOf(words, Math.max(words.length * 2, (int) (offset >>> 6) + 1));
+         }
+         if (booked)
+            words[(int) (offset >>> 6)] |= 1L << offset;
+         else
+            words[(int) (offset >>> 6)] &= ~(1L << offset);
+      }
+
+      // true when any day in [first, last] is set, tested a word at a time.
+      boolean anySet(long first, long last){
+         if (words == null || last < first)
+            return false;
+         long lo = Math.max(first - base, 0);
+         long hi = Math.min(last - base, 64L * words.length - 1);
+         if (lo > hi)
+            return false;
+         int w1 = (int) (lo >>> 6), w2 = (int) (hi >>> 6);
+         for (int w = w1; w <= w2; ++w){
+            long mask = -1L;
+            if (w == w1)
+               mask &= -1L << (lo & 63);
+            if (w == w2)
+               mask &= -1L >>> (63 - (hi & 63));
+            if ((words[w] & mask) != 0)
+               return true;
+         }
+         return false;
+      }
+   }//end Nights
+
+}//end AvailabilityIndex
@@ -0,0 +1,452 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class runs a file of operations against the database without the
+ * menus, for bulk jobs such as nightly price changes. It is started with
+ *
+ *    java Hotel <dbname> <port> <user> --batch <file, or - for stdin>
+ *
+ * Each line holds one operation, its fields separated by blanks; blank
+ * lines and lines starting with '#' are skipped:
+ *
+ *    book <customerID> <hotelID> <roomNumber> <yyyy-mm-dd>
+ *    stay <customerID> <hotelID> <roomNumber,roomNumber,...> <first yyyy-mm-dd> <last yyyy-mm-dd>
+ *    price <managerID> <hotelID> <roomNumber> <price>
+ *    repair <managerID> <companyID> <hotelID> <roomNumber> [<yyyy-mm-dd>]
+ *    report top <hotelID>
+ *    report rooms <hotelID> <yyyy-mm-dd>
+ *    report bookings <managerID> [<from yyyy-mm-dd> <to yyyy-mm-dd>]
+ *    report updates <managerID>
+ *    report repairs <managerID>
+ *    report occupancy <managerID> <from yyyy-mm-dd> <to yyyy-mm-dd>
+ *    detach <yyyy-mm-dd>
+ *
+ * Consecutive book, price and repair lines are collected into groups of
+ * hotel.batch.groupSize and each group is applied in one transaction by
+ * HotelService.applyChanges. While a group runs on the database the next
+ * one is read and parsed, and the results of the previous one written, so
+ * the database is kept busy. If a group fails it is rolled back and its
+ * changes are retried one at a time, so one bad line only fails itself.
+ * A report waits for every change before it, so it sees them, and so does a
+ * detach, which takes the months ending on or before its date out of
+ * RoomBookings and lists the tables they were renamed to as rows. A stay books
+ * every night from first to last in each of its rooms, all or nothing, in
+ * a transaction of its own.
+ *
+ * The results are written to stdout as tab separated lines, one or more
+ * per operation and in the order of the input, starting with the line
+ * number of the operation:
+ *
+ *    <line> ok <bookingID | repairID>     the change was applied
+ *    <line> conflict                      the night was already booked; for a stay,
+ *                                         after a row <roomNumber> <date> per taken night
+ *    <line> not_found                     the room of a price change does not exist
+ *    <line> error <message>               the line could not be parsed or applied, or a
+ *                                         price or repair line is not for a hotel of its manager
+ *    <line> row <column> ...              one row of a report, followed by
+ *    <line> ok <number of rows>
+ *
+ * A summary is printed to stderr at the end.
+ */
+public class BatchRunner {
+
+   // changes applied per transaction.
+   static final int GROUP_SIZE = Integer.getInteger("hotel.batch.groupSize", 500);
+
+   // groups applied at the same time; above 1, changes in different groups may commit out of order.
+   static final int THREADS = Integer.getInteger("hotel.batch.threads", 1);
+
+   // groups read ahead of the one whose results are being written.
+   static final int PIPELINE_DEPTH = Math.max(2, THREADS * 2);
+
+   private final HotelService _service;
+   private final PrintStream _out;
+   private final ExecutorService _executor;
+
+   // results not yet written, in the order of the input.
+   private final ArrayDeque<Future<Result>> _pending = new ArrayDeque<Future<Result>>();
+
+   private int _operations = 0;
+   private int _failed = 0;
+
+   // the line numbers and changes of the group being collected.
+   private List<Integer> _lines = new ArrayList<Integer>();
+   private List<HotelService.Change> _changes = new ArrayList<HotelService.Change>();
+
+   // the output of one group or report and how many of its operations failed.
+   private static final class Result {
+      final StringBuilder text = new StringBuilder();
+      int failed = 0;
+   }
+
+   /**
+    * Creates a runner writing its results to the given stream.
+    *
+    * @param service the operations the batch runs
+    * @param out where the result lines are written
+    */
+   public BatchRunner(HotelService service, PrintStream out){
+      this._service = service;
+      this._out = out;
+      this._executor = Executors.newFixedThreadPool(Math.max(1, THREADS), new ThreadFactory(){
+         public Thread newThread(Runnable r){
+            Thread t = new Thread(r, "batch-group");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+   }//end BatchRunner
+
+   /**
+    * Method to run every operation read from the input and write their
+    * results.
+    *
+    * @param in the operations, one per line
+    * @return the number of operations that failed
+    * @throws java.io.IOException when the input cannot be read
+    */
+   public int run(BufferedReader in) throws IOException {
+      long start = System.currentTimeMillis();
+      try{
+         String line;
+         int number = 0;
+         while ((line = in.readLine()) != null){
+            ++number;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+               continue;
+            ++_operations;
+            String[] f = line.split("\\s+");
+            try{
+               if (f[0].equals("report")){
+                  flushGroup();
+                  // every change before the report has to be committed first.
+                  drain(0);
+                  submit(report(number, f));
+               }else if (f[0].equals("detach")){
+                  flushGroup();
+                  drain(0);
+                  submit(detach(number, f));
+               }else if (f[0].equals("stay")){
+                  flushGroup();
+                  submit(stay(number, f));
+               }else{
+                  HotelService.Change change = parseChange(f);
+                  _lines.add(number);
+                  _changes.add(change);
+                  if (_changes.size() >= GROUP_SIZE)
+                     flushGroup();
+               }
+            }catch (IllegalArgumentException e){
+               // a line that cannot be parsed fails on its own, in its place in the output.
+               flushGroup();
+               Result r = new Result();
+               error(r, number, e.getMessage());
+               submit(done(r));
+            }
+            drain(PIPELINE_DEPTH);
+         }
+         flushGroup();
+         drain(0);
+      }finally{
+         _executor.shutdown();
+      }
+      System.err.println(_operations + " operations, " + _failed + " failed, in "
+         + (System.currentTimeMillis() - start) + " ms");
+      return _failed;
+   }//end run
+
+   // parses a book, price or repair line.
+   static HotelService.Change parseChange(String[] f){
+      try{
+         if (f[0].equals("book") && f.length == 5)
+            return HotelService.Change.book(Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+               Integer.parseInt(f[3]), LocalDate.parse(f[4]));
+         if (f[0].equals("price") && f.length == 5)
+            return HotelService.Change.price(Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+               Integer.parseInt(f[3]), Integer.parseInt(f[4]));
+         if (f[0].equals("repair") && (f.length == 5 || f.length == 6))
+            return HotelService.Change.repair(Integer.parseInt(f[1]), Integer.parseInt(f[2]),
+               Integer.parseInt(f[3]), Integer.parseInt(f[4]), f.length == 6 ? LocalDate.parse(f[5]) : LocalDate.now());
+      }catch (RuntimeException e){
+         throw new IllegalArgumentException("Invalid value in '" + join(f) + "': " + e.getMessage());
+      }
+      throw new IllegalArgumentException("Unrecognized operation '" + join(f) + "'");
+   }//end parseChange
+
+   // hands the collected changes to the executor as one group.
+   private void flushGroup(){
+      if (_changes.isEmpty())
+         return;
+      final List<Integer> lines = _lines;
+      final List<HotelService.Change> changes = _changes;
+      _lines = new ArrayList<Integer>();
+      _changes = new ArrayList<HotelService.Change>();
+      submit(new Callable<Result>(){
+         public Result call(){
+            return applyGroup(lines, changes);
+         }
+      });
+   }//end flushGroup
+
+   private Result applyGroup(List<Integer> lines, List<HotelService.Change> changes){
+      Result r = new Result();
+      Metrics.Operation op = Metrics.begin("batch group");
+      try{
+         int[] results = _service.applyChanges(changes);
+         for (int i = 0; i < results.length; ++i)
+            changed(r, lines.get(i), changes.get(i), results[i]);
+      }catch (SQLException e){
+         // the group was rolled back; find the changes that fail on their own.
+         for (int i = 0; i < changes.size(); ++i){
+            try{
+               int result = _service.applyChanges(Collections.singletonList(changes.get(i)))[0];
+               changed(r, lines.get(i), changes.get(i), result);
+            }catch (SQLException single){
+               error(r, lines.get(i), message(single));
+            }
+         }
+      }finally{
+         op.end();
+      }
+      return r;
+   }//end applyGroup
+
+   private static void changed(Result r, int line, HotelService.Change change, int result){
+      if (result < 0 && change.kind == HotelService.Change.BOOK)
+         error(r, line, "The night " + change.date + " cannot be booked");
+      else if (result < 0)
+         error(r, line, "User " + change.userID + " does not manage hotel " + change.hotelID);
+      else if (change.kind == HotelService.Change.PRICE)
+         r.text.append(line).append(result == 0 ? "\tnot_found\n" : "\tok\n");
+      else if (result == 0)
+         r.text.append(line).append("\tconflict\n");
+      else
+         r.text.append(line).append("\tok\t").append(result).append('\n');
+   }//end changed
+
+   private static void error(Result r, int line, String message){
+      r.text.append(line).append("\terror\t").append(clean(message)).append('\n');
+      ++r.failed;
+   }//end error
+
+   // builds the work of a detach line.
+   private Callable<Result> detach(final int line, final String[] f){
+      if (f.length != 2)
+         throw new IllegalArgumentException("Unrecognized operation '" + join(f) + "'");
+      final LocalDate before;
+      try{
+         before = LocalDate.parse(f[1]);
+      }catch (RuntimeException e){
+         throw new IllegalArgumentException("Invalid value in '" + join(f) + "': " + e.getMessage());
+      }
+
+      return new Callable<Result>(){
+         public Result call(){
+            Result r = new Result();
+            Metrics.Operation op = Metrics.begin("batch detach");
+            try{
+               List<String> tables = _service.detachBookings(before);
+               for (String table : tables)
+                  r.text.append(line).append("\trow\t").append(table).append('\n');
+               r.text.append(line).append("\tok\t").append(tables.size()).append('\n');
+            }catch (SQLException e){
+               error(r, line, message(e));
+            }finally{
+               op.end();
+            }
+            return r;
+         }
+      };
+   }//end detach
+
+   // builds the work of a stay line.
+   private Callable<Result> stay(final int line, final String[] f){
+      final int customerID, hotelID;
+      final int[] rooms;
+      final LocalDate first, last;
+      if (f.length != 6)
+         throw new IllegalArgumentException("Unrecognized operation '" + join(f) + "'");
+      try{
+         customerID = Integer.parseInt(f[1]);
+         hotelID = Integer.parseInt(f[2]);
+         String[] numbers = f[3].split(",");
+         rooms = new int[numbers.length];
+         for (int i = 0; i < numbers.length; ++i)
+            rooms[i] = Integer.parseInt(numbers[i]);
+         first = LocalDate.parse(f[4]);
+         last = LocalDate.parse(f[5]);
+      }catch (RuntimeException e){
+         throw new IllegalArgumentException("Invalid value in '" + join(f) + "': " + e.getMessage());
+      }
+      if (last.isBefore(first))
+         throw new IllegalArgumentException("Invalid value in '" + join(f) + "': the last night is before the first");
+
+      return new Callable<Result>(){
+         public Result call(){
+            Result r = new Result();
+            Metrics.Operation op = Metrics.begin("batch stay");
+            try{
+               TypedResult taken = _service.bookStay(customerID, hotelID, rooms, first, last);
+               if (taken.rowCount() == 0){
+                  r.text.append(line).append("\tok\n");
+               }else{
+                  rows(r, line, taken);
+                  r.text.append(line).append("\tconflict\n");
+               }
+            }catch (SQLException e){
+               error(r, line, message(e));
+            }catch (IllegalArgumentException e){
+               error(r, line, e.getMessage());
+            }finally{
+               op.end();
+            }
+            return r;
+         }
+      };
+   }//end stay
+
+   // builds the work of a report line.
+   private Callable<Result> report(final int line, final String[] f){
+      if (f.length < 3)
+         throw new IllegalArgumentException("Unrecognized operation '" + join(f) + "'");
+      final String kind = f[1];
+      final int id;
+      final LocalDate from, to;
+      try{
+         id = Integer.parseInt(f[2]);
+         from = f.length > 3 ? LocalDate.parse(f[3]) : null;
+         to = f.length > 4 ? LocalDate.parse(f[4]) : null;
+      }catch (RuntimeException e){
+         throw new IllegalArgumentException("Invalid value in '" + join(f) + "': " + e.getMessage());
+      }
+      boolean valid = (kind.equals("top") && f.length == 3)
+         || (kind.equals("rooms") && f.length == 4)
+         || (kind.equals("bookings") && (f.length == 3 || f.length == 5))
+         || (kind.equals("updates") && f.length == 3)
+         || (kind.equals("repairs") && f.length == 3)
+         || (kind.equals("occupancy") && f.length == 5 && !to.isBefore(from));
+      if (!valid)
+         throw new IllegalArgumentException("Unrecognized operation '" + join(f) + "'");
+
+      return new Callable<Result>(){
+         public Result call(){
+            final Result r = new Result();
+            Metrics.Operation op = Metrics.begin("batch report " + kind);
+            try{
+               int rows;
+               if (kind.equals("top")){
+                  rows = rows(r, line, _service.topCustomers(id, HotelService.TOP_CUSTOMERS));
+               }else if (kind.equals("rooms")){
+                  List<HotelService.Room> rooms = _service.availableRooms(id, from);
+                  for (HotelService.Room room : rooms)
+                     r.text.append(line).append("\trow\t").append(room.roomNumber).append('\t')
+                        .append(room.price).append('\t').append(room.available).append('\n');
+                  rows = rooms.size();
+               }else if (kind.equals("bookings")){
+                  rows = _service.bookingHistory(id, from, to, new RowHandler(){
+                     public void handle(ResultSet rs) throws SQLException {
+                        r.text.append(line).append("\trow");
+                        for (int c = 1; c <= 5; ++c)
+                           r.text.append('\t').append(clean(rs.getString(c)));
+                        r.text.append('\n');
+                     }
+                  });
+               }else if (kind.equals("occupancy")){
+                  rows = rows(r, line, _service.occupancy(id, from, to));
+               }else if (kind.equals("updates")){
+                  rows = rows(r, line, _service.recentUpdates(id, HotelService.RECENT_PAGE_SIZE, null, 0));
+               }else{
+                  rows = rows(r, line, _service.repairHistory(id));
+               }
+               r.text.append(line).append("\tok\t").append(rows).append('\n');
+            }catch (SQLException e){
+               // rows written before the failure are kept; the error line ends them.
+               error(r, line, message(e));
+            }finally{
+               op.end();
+            }
+            return r;
+         }
+      };
+   }//end report
+
+   private static int rows(Result r, int line, TypedResult result){
+      for (int i = 0; i < result.rowCount(); ++i){
+         r.text.append(line).append("\trow");
+         for (int c = 0; c < result.columnCount(); ++c)
+            r.text.append('\t').append(clean(result.getString(i, c)));
+         r.text.append('\n');
+      }
+      return result.rowCount();
+   }//end rows
+
+   private void submit(Callable<Result> work){
+      _pending.add(_executor.submit(work));
+   }
+
+   private static Callable<Result> done(final Result r){
+      return new Callable<Result>(){
+         public Result call(){
+            return r;
+         }
+      };
+   }
+
+   // writes finished results in order until at most the given number are pending.
+   private void drain(int keep){
+      while (_pending.size() > keep){
+         Result r;
+         try{
+            r = _pending.poll().get();
+         }catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a group", e);
+         }catch (ExecutionException e){
+            throw new IllegalStateException(e.getCause());
+         }
+         _out.print(r.text);
+         _failed += r.failed;
+      }
+      _out.flush();
+   }//end drain
+
+   // the server's message; a failed JDBC batch puts it on the next exception.
+   private static String message(SQLException e){
+      SQLException cause = e.getNextException();
+      return cause != null ? cause.getMessage() : e.getMessage();
+   }
+
+   // keeps a value on one output field.
+   private static String clean(String value){
+      if (value == null)
+         return "";
+      return value.trim().replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+   }
+
+   private static String join(String[] f){
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < f.length; ++i){
+         if (i > 0)
+            sb.append(' ');
+         sb.append(f[i]);
+      }
+      return sb.toString();
+   }
+
+}//end BatchRunner
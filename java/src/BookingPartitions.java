@@ -0,0 +1,167 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class makes sure RoomBookings has a partition for the month of every
+ * night before the night is booked.
+ *
+ * RoomBookings is partitioned by bookingDate into one table per month,
+ * named roombookings_pYYYY_MM, with no default partition (see
+ * create_tables.sql), so inserting a night of a month without a partition
+ * fails. The months that have one are read from the catalog and kept in
+ * memory, so checking a booking costs a set lookup; a missing month is
+ * created with create_booking_partitions the first time a night in it is
+ * booked. Whenever the months are reloaded, every
+ * hotel.partitions.refreshMillis, the next hotel.partitions.aheadMonths
+ * months are created as well, so ordinary bookings never wait on the DDL.
+ *
+ * Months detached with detachBefore are forgotten at once. A detach run
+ * from outside the program, e.g. with psql, is only seen once the months
+ * are reloaded; until then a booking in a detached month fails for want
+ * of a partition, so call invalidate() or wait hotel.partitions.refreshMillis.
+ *
+ * On a database whose RoomBookings is not partitioned every check passes.
+ */
+public class BookingPartitions {
+
+   static final long REFRESH_MILLIS = Long.getLong("hotel.partitions.refreshMillis", 3600000L);
+   static final int AHEAD_MONTHS = Integer.getInteger("hotel.partitions.aheadMonths", 12);
+
+   // the months with a partition, by the name create_booking_partitions gives them.
+   static final String PARTITION_MONTHS =
+      "SELECT to_date(substr(c.relname, 15), 'YYYY_MM') FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+      "WHERE i.inhparent = 'roombookings'::regclass AND c.relname ~ '^roombookings_p[0-9]{4}_[0-9]{2}$'";
+
+   private final Hotel _esql;
+   private volatile Months _months = null;
+
+   // the months read from the catalog, as year * 12 + month - 1, and when they were read.
+   private static final class Months {
+      final long loadedAt = System.currentTimeMillis();
+      final boolean partitioned;
+      final Set<Integer> have = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+      Months(boolean partitioned){
+         this.partitioned = partitioned;
+      }
+   }//end Months
+
+   /**
+    * Creates the checker; the catalog is read on first use.
+    *
+    * @param esql the data access object used to read and create partitions
+    */
+   public BookingPartitions(Hotel esql){
+      this._esql = esql;
+   }//end BookingPartitions
+
+   /**
+    * Method to make sure the month of a night has a partition.
+    */
+   public void ensure(LocalDate night) throws SQLException {
+      ensure(night, night);
+   }
+
+   /**
+    * Method to make sure every month from first to last, both included,
+    * has a partition, creating the missing ones in one round trip.
+    *
+    * @throws java.sql.SQLException when the catalog cannot be read or a partition cannot be created
+    */
+   public void ensure(LocalDate first, LocalDate last) throws SQLException {
+      Months months = months();
+      if (!months.partitioned)
+         return;
+      int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+      for (int m = monthOf(first); m <= monthOf(last); ++m){
+         if (!months.have.contains(m)){
+            lo = Math.min(lo, m);
+            hi = Math.max(hi, m);
+         }
+      }
+      if (lo > hi)
+         return;
+      create(lo, hi);
+      for (int m = lo; m <= hi; ++m)
+         months.have.add(m);
+   }//end ensure
+
+   /**
+    * Method to detach every month ending on or before a date with
+    * detach_booking_partitions, then forget the months read so far so a
+    * later booking in one of them creates its partition again.
+    *
+    * @param before the day after the last month detached, e.g. the first of a month
+    * @return the names the detached tables were renamed to
+    * @throws java.sql.SQLException when the months cannot be detached
+    */
+   public List<String> detachBefore(LocalDate before) throws SQLException {
+      try{
+         TypedResult detached = _esql.executeQueryAndReturnTypedResult(
+            "SELECT detach_booking_partitions(?)", java.sql.Date.valueOf(before));
+         List<String> names = new ArrayList<String>();
+         for (int i = 0; i < detached.rowCount(); ++i)
+            names.add(detached.getString(i, 0));
+         return names;
+      }finally{
+         invalidate();
+      }
+   }//end detachBefore
+
+   /**
+    * Method to forget the months read so far, e.g. after partitions were
+    * detached from outside the program, so the next check reads the
+    * catalog again.
+    */
+   public void invalidate(){
+      _months = null;
+   }
+
+   private Months months() throws SQLException {
+      Months months = _months;
+      if (months == null || System.currentTimeMillis() - months.loadedAt > REFRESH_MILLIS){
+         synchronized (this){
+            months = _months;
+            if (months == null || System.currentTimeMillis() - months.loadedAt > REFRESH_MILLIS){
+               months = load();
+               _months = months;
+            }
+         }
+      }
+      return months;
+   }//end months
+
+   private Months load() throws SQLException {
+      TypedResult partitioned = _esql.executeQueryAndReturnTypedResult(
+         "SELECT 1 FROM pg_partitioned_table WHERE partrelid = to_regclass('roombookings')");
+      if (partitioned.rowCount() == 0)
+         return new Months(false);
+
+      int now = monthOf(LocalDate.now());
+      create(now, now + AHEAD_MONTHS);
+      TypedResult existing = _esql.executeQueryAndReturnTypedResult(PARTITION_MONTHS);
+      Months months = new Months(true);
+      for (int i = 0; i < existing.rowCount(); ++i)
+         months.have.add(monthOf(existing.getDate(i, 0)));
+      return months;
+   }//end load
+
+   private void create(int firstMonth, int lastMonth) throws SQLException {
+      _esql.executeQuery("SELECT create_booking_partitions(?, ?)",
+         java.sql.Date.valueOf(dateOf(firstMonth)), java.sql.Date.valueOf(dateOf(lastMonth)));
+   }//end create
+
+   static int monthOf(LocalDate date){
+      return date.getYear() * 12 + date.getMonthValue() - 1;
+   }
+
+   static LocalDate dateOf(int month){
+      return LocalDate.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1, 1);
+   }
+
+}//end BookingPartitions
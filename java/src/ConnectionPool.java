@@ -0,0 +1,330 @@
+import java.sql.DriverManager;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps a bounded set of physical connections to the database so
+ * that many sessions can share one Postgres without opening a new socket per
+ * session or queuing behind a single connection.
+ *
+ * Connections that sat idle for longer than hotel.pool.validateAfterMillis
+ * are validated when they are borrowed; one that was used a moment ago is
+ * handed out without the extra round trip. Connections are evicted when they
+ * sit idle for too long, and reported on standard error when a caller holds
+ * one longer than the leak threshold without giving it back. The report
+ * names the borrowing thread; with hotel.pool.leakTrace set it also shows
+ * the stack of the borrow, which costs a stack walk on every borrow.
+ */
+public class ConnectionPool {
+
+   // connection parameters used whenever a new physical connection is needed.
+   private final String _url;
+   private final Properties _properties;
+
+   private final int _maxSize;
+   private final long _borrowTimeoutMillis;
+   private final long _idleTimeoutMillis;
+   private final long _leakThresholdMillis;
+   private final String _validationQuery;
+   private final long _validateAfterMillis;
+   private final boolean _leakTrace;
+
+   // one permit per connection that may still be handed out.
+   private final Semaphore _permits;
+
+   // connections that are open but not lent to anybody; most recently used first.
+   private final LinkedBlockingDeque<Idle> _idle = new LinkedBlockingDeque<Idle>();
+
+   // connections that are currently lent out, with the place they were borrowed from.
+   private final Map<Connection, Lease> _leased = new ConcurrentHashMap<Connection, Lease>();
+
+   // prepared statements of each open connection.
+   private final Map<Connection, StatementCache> _statements = new ConcurrentHashMap<Connection, StatementCache>();
+   private final int _statementCacheSize;
+
+   private final ScheduledExecutorService _housekeeper;
+   private volatile boolean _closed = false;
+
+   private static final class Idle {
+      final Connection connection;
+      final long since;
+      Idle(Connection connection, long since){
+         this.connection = connection;
+         this.since = since;
+      }
+   }
+
+   private static final class Lease {
+      final long since;
+      final String thread;
+      // the stack of the borrow, or null unless hotel.pool.leakTrace is set.
+      final Throwable borrowSite;
+      volatile boolean reported = false;
+      Lease(long since, String thread, Throwable borrowSite){
+         this.since = since;
+         this.thread = thread;
+         this.borrowSite = borrowSite;
+      }
+   }
+
+   /**
+    * Creates a new pool. No connection is opened until the first borrow.
+    *
+    * @param url the JDBC connection URL
+    * @param user the user name used to login to the database
+    * @param passwd the user login password
+    * @param maxSize the maximum number of physical connections
+    * @param borrowTimeoutMillis how long borrow() waits for a free connection
+    * @param idleTimeoutMillis how long an unused connection is kept open
+    * @param leakThresholdMillis how long a connection may be held before it is reported
+    */
+   public ConnectionPool(String url, String user, String passwd, int maxSize,
+                         long borrowTimeoutMillis, long idleTimeoutMillis, long leakThresholdMillis){
+      if (maxSize < 1)
+         throw new IllegalArgumentException("pool size must be at least 1");
+      this._url = url;
+      this._properties = new Properties();
+      if (user != null)
+         this._properties.setProperty("user", user);
+      if (passwd != null)
+         this._properties.setProperty("password", passwd);
+      // executions of a statement after which the driver prepares it on the server; drivers without it ignore it.
+      this._properties.setProperty("prepareThreshold", Integer.toString(Integer.getInteger("hotel.stmt.prepareThreshold", 5)));
+      this._maxSize = maxSize;
+      this._borrowTimeoutMillis = borrowTimeoutMillis;
+      this._idleTimeoutMillis = idleTimeoutMillis;
+      this._leakThresholdMillis = leakThresholdMillis;
+      this._validationQuery = "SELECT 1";
+      this._validateAfterMillis = Long.getLong("hotel.pool.validateAfterMillis", 30000L);
+      this._leakTrace = Boolean.getBoolean("hotel.pool.leakTrace");
+      this._statementCacheSize = Integer.getInteger("hotel.stmt.cacheSize", 64);
+      this._permits = new Semaphore(maxSize, true);
+
+      this._housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+         public Thread newThread(Runnable r){
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      long period = Math.max(1000L, Math.min(idleTimeoutMillis, leakThresholdMillis) / 2);
+      this._housekeeper.scheduleWithFixedDelay(new Runnable(){
+         public void run(){
+            evictIdle();
+            detectLeaks();
+         }
+      }, period, period, TimeUnit.MILLISECONDS);
+   }//end ConnectionPool
+
+   /**
+    * Creates a pool whose limits are read from the hotel.pool.* system
+    * properties, falling back to defaults suited to an interactive client.
+    */
+   public static ConnectionPool fromSystemProperties(String url, String user, String passwd){
+      return new ConnectionPool(url, user, passwd,
+         Integer.getInteger("hotel.pool.maxSize", 10),
+         Long.getLong("hotel.pool.borrowTimeoutMillis", 30000L),
+         Long.getLong("hotel.pool.idleTimeoutMillis", 600000L),
+         Long.getLong("hotel.pool.leakThresholdMillis", 300000L));
+   }//end fromSystemProperties
+
+   /**
+    * Method to borrow a connection. The most recently used idle connection
+    * is reused, after validating it if it sat idle for longer than
+    * hotel.pool.validateAfterMillis; otherwise a new physical connection is
+    * opened.
+    *
+    * @return a connection that must be handed back through release()
+    * @throws java.sql.SQLException when no connection frees up in time or the connect fails
+    */
+   public Connection borrow() throws SQLException {
+      if (_closed)
+         throw new SQLException("Connection pool is closed");
+      try{
+         if (!_permits.tryAcquire(_borrowTimeoutMillis, TimeUnit.MILLISECONDS))
+            throw new SQLException("Timed out after " + _borrowTimeoutMillis +
+                                   " ms waiting for one of " + _maxSize + " database connections");
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+         throw new SQLException("Interrupted while waiting for a database connection");
+      }
+
+      try{
+         Connection conn = null;
+         Idle idle;
+         long now = System.currentTimeMillis();
+         while (conn == null && (idle = _idle.pollFirst()) != null){
+            if (now - idle.since < _validateAfterMillis ? !idle.connection.isClosed() : isValid(idle.connection))
+               conn = idle.connection;
+            else
+               closeQuietly(idle.connection);
+         }
+         if (conn == null)
+            conn = DriverManager.getConnection(_url, _properties);
+         _leased.put(conn, new Lease(now, Thread.currentThread().getName(),
+                                     _leakTrace ? new Throwable("Connection borrowed here") : null));
+         return conn;
+      }catch (SQLException e){
+         _permits.release();
+         throw e;
+      }catch (RuntimeException e){
+         _permits.release();
+         throw e;
+      }
+   }//end borrow
+
+   /**
+    * Method to hand a borrowed connection back to the pool. Any transaction
+    * left open by the caller is rolled back and autocommit is restored.
+    *
+    * @param conn the connection obtained from borrow(); null is ignored
+    */
+   public void release(Connection conn){
+      if (conn == null || _leased.remove(conn) == null)
+         return;
+      StatementCache cache = _statements.get(conn);
+      if (cache != null)
+         cache.release();
+      try{
+         boolean reusable = !_closed && !conn.isClosed();
+         if (reusable && !conn.getAutoCommit()){
+            conn.rollback();
+            conn.setAutoCommit(true);
+         }
+         if (reusable)
+            _idle.offerFirst(new Idle(conn, System.currentTimeMillis()));
+         else
+            closeQuietly(conn);
+      }catch (SQLException e){
+         closeQuietly(conn);
+      }finally{
+         _permits.release();
+      }
+   }//end release
+
+   /**
+    * Method to drop a borrowed connection that the caller knows is broken
+    * instead of returning it for reuse.
+    */
+   public void discard(Connection conn){
+      if (conn == null || _leased.remove(conn) == null)
+         return;
+      closeQuietly(conn);
+      _permits.release();
+   }//end discard
+
+   /**
+    * Method to get the PreparedStatement cache of a borrowed connection.
+    * The cache lives as long as the physical connection, so statements
+    * prepared by one borrower are reused by the next.
+    *
+    * @param conn a connection obtained from borrow()
+    * @return the statement cache of that connection
+    */
+   public StatementCache statementCache(Connection conn){
+      StatementCache cache = _statements.get(conn);
+      if (cache == null){
+         cache = new StatementCache(conn, _statementCacheSize);
+         _statements.put(conn, cache);
+      }
+      return cache;
+   }//end statementCache
+
+   /**
+    * @return the number of connections currently lent out
+    */
+   public int activeCount(){
+      return _leased.size();
+   }
+
+   /**
+    * @return the number of open connections waiting to be borrowed
+    */
+   public int idleCount(){
+      return _idle.size();
+   }
+
+   /**
+    * @return the maximum number of physical connections
+    */
+   public int maxSize(){
+      return _maxSize;
+   }
+
+   /**
+    * Method to close every idle connection and stop the housekeeping thread.
+    * Connections still lent out are closed when they are released.
+    */
+   public void close(){
+      _closed = true;
+      _housekeeper.shutdownNow();
+      Idle idle;
+      while ((idle = _idle.pollFirst()) != null)
+         closeQuietly(idle.connection);
+   }//end close
+
+   private boolean isValid(Connection conn){
+      try{
+         if (conn.isClosed())
+            return false;
+         Statement stmt = conn.createStatement();
+         try{
+            stmt.executeQuery(_validationQuery).close();
+         }finally{
+            stmt.close();
+         }
+         return true;
+      }catch (SQLException e){
+         return false;
+      }
+   }//end isValid
+
+   // closes connections that have been idle longer than the idle timeout.
+   private void evictIdle(){
+      long cutoff = System.currentTimeMillis() - _idleTimeoutMillis;
+      Iterator<Idle> it = _idle.descendingIterator();
+      while (it.hasNext()){
+         Idle idle = it.next();
+         if (idle.since < cutoff && _idle.remove(idle))
+            closeQuietly(idle.connection);
+      }
+   }//end evictIdle
+
+   // reports each connection held past the leak threshold once, with its borrow site.
+   private void detectLeaks(){
+      long cutoff = System.currentTimeMillis() - _leakThresholdMillis;
+      for (Lease lease : _leased.values()){
+         if (lease.since < cutoff && !lease.reported){
+            lease.reported = true;
+            System.err.println("Warning - database connection held for more than " +
+                               _leakThresholdMillis + " ms by thread " + lease.thread + ", possible leak" +
+                               (lease.borrowSite == null ? " (set hotel.pool.leakTrace to see where it was borrowed)" : ":"));
+            if (lease.borrowSite != null)
+               lease.borrowSite.printStackTrace();
+         }
+      }
+   }//end detectLeaks
+
+   private void closeQuietly(Connection conn){
+      StatementCache cache = _statements.remove(conn);
+      if (cache != null)
+         cache.close();
+      try{
+         conn.close();
+      }catch (SQLException e){
+         // ignored.
+      }
+   }
+
+}//end ConnectionPool
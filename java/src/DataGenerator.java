@@ -0,0 +1,467 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class writes a synthetic dataset in the layout of the files in
+ * data/, at any size, for finding out how the operations scale:
+ *
+ *    java DataGenerator <output directory> [scale] [<dbname> <port> <user> [<create_indexes.sql>]]
+ *
+ * Scale 1 is 100 hotels of about 100 rooms, 10,000 customers and 1,000,000
+ * bookings; scale 100 is 10,000 hotels, 1,000,000 rooms and 100,000,000
+ * bookings. Each count can also be set on its own with the hotel.gen
+ * system properties below. When a database is given the files are loaded
+ * into it with DataLoader as soon as they are written.
+ *
+ * The data is skewed the way bookings are:
+ *    - hotel popularity falls off with the hotelID (a Zipf distribution), so
+ *      the first hotels are nearly full and the last ones nearly empty;
+ *    - most of a hotel's bookings come from a few dozen regular customers,
+ *      and the rest from customers who book more the lower their userID;
+ *    - nights are busier in summer and over the holidays.
+ * No room is booked twice for the same night, as the UNIQUE constraint on
+ * RoomBookings requires.
+ *
+ * The output depends only on the seed and the counts. Every table is cut
+ * into segments generated in parallel, each from a random generator seeded
+ * by its table and position, and the segments are written in order.
+ */
+public class DataGenerator {
+
+   static final long SEED = Long.getLong ("hotel.gen.seed", 42L);
+
+   // segments generated at the same time.
+   static final int THREADS = Integer.getInteger ("hotel.gen.threads", Runtime.getRuntime ().availableProcessors ());
+
+   // rows per segment; a segment is held in memory until it is written.
+   static final int SEGMENT_ROWS = Integer.getInteger ("hotel.gen.segmentRows", 250000);
+
+   // bookings are spread over ten years of nights.
+   static final LocalDate FIRST_NIGHT = LocalDate.of (2015, 1, 1);
+   static final int NIGHTS = (int) (LocalDate.of (2025, 1, 1).toEpochDay () - FIRST_NIGHT.toEpochDay ());
+
+   // how fast popularity falls off with the hotelID, and the share of a room's nights that may be booked.
+   static final double HOTEL_SKEW = 0.7;
+   static final double MAX_OCCUPANCY = 0.8;
+
+   // regular customers per hotel and the share of its bookings they make.
+   static final int REGULARS = 30;
+   static final double REGULAR_SHARE = 0.6;
+
+   static final int COMPANIES = 50;
+
+   private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern ("M/d/yyyy");
+   private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern ("yyyy-MM-dd HH:mm:ss");
+
+   // the tables, numbered so each seeds its own random generators.
+   private static final int USERS = 1, HOTELS = 2, ROOMS = 3, BOOKINGS = 4, REPAIRS = 5, UPDATES = 6, COMPANY = 7;
+
+   private final int _hotels;
+   private final int _roomsPerHotel;
+   private final int _customers;
+   private final int _managers;
+   private final long _bookings;
+   private final int _repairs;
+   private final int _updates;
+
+   // per hotel, counting from 1: its rooms and its bookings.
+   private final int[] _rooms;
+   private final long[] _hotelBookings;
+
+   // the nights as they are written to the files, and how busy each one is.
+   private final String[] _nights = new String[NIGHTS];
+   private final double[] _season = new double[NIGHTS];
+
+   private final ExecutorService _executor;
+
+   /**
+    * Creates a generator for the given scale, with the counts given as
+    * system properties taking precedence.
+    *
+    * @param scale 1 for a million bookings
+    */
+   public DataGenerator (double scale){
+      this._hotels = Math.max (1, Integer.getInteger ("hotel.gen.hotels", (int) Math.round (100 * scale)));
+      this._roomsPerHotel = Math.max (1, Integer.getInteger ("hotel.gen.roomsPerHotel", 100));
+      this._customers = Math.max (REGULARS, Integer.getInteger ("hotel.gen.customers", (int) Math.round (10000 * scale)));
+      this._managers = Math.max (1, Integer.getInteger ("hotel.gen.managers", (_hotels + 3) / 4));
+      this._bookings = Math.max (0L, Long.getLong ("hotel.gen.bookings", Math.round (1000000 * scale)));
+      this._repairs = Math.max (0, Integer.getInteger ("hotel.gen.repairs", (int) Math.round (1000 * scale)));
+      this._updates = Math.max (0, Integer.getInteger ("hotel.gen.updates", (int) Math.round (10000 * scale)));
+
+      this._rooms = new int[_hotels + 1];
+      for (int h = 1; h <= _hotels; ++h)
+         _rooms[h] = Math.max (1, _roomsPerHotel / 2 + random (ROOMS, h).nextInt (_roomsPerHotel + 1));
+      this._hotelBookings = spreadBookings ();
+      for (int n = 0; n < NIGHTS; ++n){
+         _nights[n] = FIRST_NIGHT.plusDays (n).format (DATE);
+         _season[n] = season (FIRST_NIGHT.plusDays (n).getDayOfYear ());
+      }
+
+      this._executor = Executors.newFixedThreadPool (Math.max (1, THREADS), new ThreadFactory (){
+         public Thread newThread (Runnable r){
+            Thread t = new Thread (r, "data-generator");
+            t.setDaemon (true);
+            return t;
+         }
+      });
+   }//end DataGenerator
+
+   public static void main (String[] args) {
+      if (args.length < 1 || args.length == 3 || args.length == 4) {
+         System.err.println (
+            "Usage: java DataGenerator <output directory> [scale] [<dbname> <port> <user> [<create_indexes.sql>]]");
+         return;
+      }//end if
+
+      Hotel esql = null;
+      boolean done = false;
+      try{
+         File directory = new File (args[0]);
+         if (!directory.isDirectory () && !directory.mkdirs ())
+            throw new IOException ("Unable to create " + directory);
+         double scale = args.length > 1 ? Double.parseDouble (args[1]) : 1;
+         new DataGenerator (scale).generate (directory);
+
+         if (args.length > 2){
+            Class.forName ("org.postgresql.Driver").newInstance ();
+            esql = new Hotel (args[2], args[3], args[4], "");
+            List<String> indexes = args.length > 5
+               ? IndexBenchmark.readCreateIndexes (args[5]) : new ArrayList<String> ();
+            new DataLoader (esql, directory).load (indexes);
+         }
+         done = true;
+      }catch(Exception e){
+         System.err.println (e.getMessage ());
+      }finally{
+         if (esql != null)
+            esql.cleanup ();
+      }//end try
+      if (!done)
+         System.exit (1);
+   }//end main
+
+   /**
+    * Method to write every file into the given directory, replacing the
+    * files already there.
+    *
+    * @throws java.io.IOException when a file cannot be written
+    */
+   public void generate (File directory) throws IOException {
+      long start = System.currentTimeMillis ();
+      try{
+         write (new File (directory, "users.csv"), "userID,name,password,userType",
+                rowSegments (USERS, 1 + _managers + _customers));
+         write (new File (directory, "company.csv"), "companyID,name,address",
+                rowSegments (COMPANY, COMPANIES));
+         write (new File (directory, "hotels.csv"), "hotelID,hotelName,latitude,longitude,dateEstablished,managerUserID",
+                rowSegments (HOTELS, _hotels));
+         write (new File (directory, "rooms.csv"), "hotelID,roomNumber,price,imageURL",
+                hotelSegments (ROOMS, _rooms));
+         write (new File (directory, "bookings.csv"), "bookingID,customerID,hotelID,roomNumber,bookingDate",
+                hotelSegments (BOOKINGS, _hotelBookings));
+         write (new File (directory, "roomRepairs.csv"), "repairID,companyID,hotelID,roomNumber,repairDate",
+                rowSegments (REPAIRS, _repairs));
+         write (new File (directory, "roomRepairRequests.csv"), "requestNumber,managerID,repairID",
+                rowSegments (-REPAIRS, _repairs));
+         write (new File (directory, "roomUpdatesLog.csv"), "updateNumber,managerID,hotelID,roomNumber,updatedOn",
+                rowSegments (UPDATES, _updates));
+      }finally{
+         _executor.shutdownNow ();
+      }
+      System.out.println ("Generated " + _hotels + " hotels, " + total (_rooms) + " rooms, "
+         + _customers + " customers and " + total (_hotelBookings) + " bookings in "
+         + (System.currentTimeMillis () - start) + " ms");
+   }//end generate
+
+   /*
+    * Gives every hotel its share of the bookings by popularity, the share
+    * of hotel h falling off as 1 / h^HOTEL_SKEW. A hotel cannot take more
+    * than MAX_OCCUPANCY of its room nights; what it cannot take is shared
+    * out again among the hotels that still have room.
+    */
+   private long[] spreadBookings (){
+      long[] bookings = new long[_hotels + 1];
+      long[] capacity = new long[_hotels + 1];
+      for (int h = 1; h <= _hotels; ++h)
+         capacity[h] = (long) (MAX_OCCUPANCY * NIGHTS) * _rooms[h];
+      long left = Math.min (_bookings, total (capacity));
+      while (left > 0){
+         double weights = 0;
+         for (int h = 1; h <= _hotels; ++h)
+            if (bookings[h] < capacity[h])
+               weights += Math.pow (h, -HOTEL_SKEW);
+         long given = 0;
+         for (int h = 1; h <= _hotels && given < left; ++h){
+            if (bookings[h] >= capacity[h])
+               continue;
+            long share = Math.max (1, Math.round (left * Math.pow (h, -HOTEL_SKEW) / weights));
+            share = Math.min (Math.min (share, capacity[h] - bookings[h]), left - given);
+            bookings[h] += share;
+            given += share;
+         }
+         left -= given;
+      }
+      return bookings;
+   }//end spreadBookings
+
+   // a segment of a file: the rows it holds as CSV text.
+   private interface Segment {
+      String generate ();
+   }
+
+   // cuts a table whose rows are numbered 1..rows into segments.
+   private List<Segment> rowSegments (final int table, int rows){
+      List<Segment> segments = new ArrayList<Segment> ();
+      for (int from = 1; from <= rows; from += SEGMENT_ROWS){
+         final int first = from;
+         final int last = (int) Math.min ((long) from + SEGMENT_ROWS - 1, rows);
+         segments.add (new Segment (){
+            public String generate (){
+               StringBuilder out = new StringBuilder ();
+               SplittableRandom random = random (table, first);
+               for (int i = first; i <= last; ++i)
+                  row (table, i, random, out);
+               return out.toString ();
+            }
+         });
+      }
+      return segments;
+   }//end rowSegments
+
+   // cuts a table generated hotel by hotel into runs of hotels of about SEGMENT_ROWS rows.
+   private List<Segment> hotelSegments (final int table, int[] rowsPerHotel){
+      long[] rows = new long[rowsPerHotel.length];
+      for (int h = 1; h < rows.length; ++h)
+         rows[h] = rowsPerHotel[h];
+      return hotelSegments (table, rows);
+   }
+
+   private List<Segment> hotelSegments (final int table, long[] rowsPerHotel){
+      List<Segment> segments = new ArrayList<Segment> ();
+      long firstID = 1;
+      int from = 1;
+      while (from <= _hotels){
+         int to = from;
+         long rows = rowsPerHotel[from];
+         while (to < _hotels && rows + rowsPerHotel[to + 1] <= SEGMENT_ROWS){
+            ++to;
+            rows += rowsPerHotel[to];
+         }
+         final int first = from, last = to;
+         final long id = firstID;
+         segments.add (new Segment (){
+            public String generate (){
+               StringBuilder out = new StringBuilder ();
+               if (table == ROOMS)
+                  rooms (first, last, out);
+               else
+                  bookings (first, last, id, out);
+               return out.toString ();
+            }
+         });
+         firstID += rows;
+         from = to + 1;
+      }
+      return segments;
+   }//end hotelSegments
+
+   // writes one row of a table numbered row by row.
+   private void row (int table, int i, SplittableRandom random, StringBuilder out){
+      switch (table){
+         case USERS:
+            if (i == 1)
+               out.append ("1,Admin,xyz,admin\n");
+            else if (i <= 1 + _managers)
+               out.append (i).append (",Manager").append (i).append (",xyz,manager\n");
+            else
+               out.append (i).append (",Customer").append (i).append (",xyz,customer\n");
+            break;
+         case COMPANY:
+            out.append (i).append (",Company").append (i).append (",Address").append (i).append ('\n');
+            break;
+         case HOTELS:
+            out.append (i).append (",Hotel").append (i).append (',')
+               .append (String.format (Locale.ROOT, "%.6f", random.nextDouble () * 90)).append (',')
+               .append (String.format (Locale.ROOT, "%.6f", random.nextDouble () * 180)).append (',')
+               .append (LocalDate.of (1900, 1, 1).plusDays (random.nextInt (40000)).format (DATE)).append (',')
+               .append (managerOf (i)).append ('\n');
+            break;
+         case REPAIRS:
+         case -REPAIRS: {
+            // the request for repair i is generated from the same numbers as the repair.
+            SplittableRandom own = random (REPAIRS, i);
+            int hotel = 1 + own.nextInt (_hotels);
+            int room = 1 + own.nextInt (_rooms[hotel]);
+            int company = 1 + own.nextInt (COMPANIES);
+            if (table == REPAIRS)
+               out.append (i).append (',').append (company).append (',').append (hotel).append (',').append (room)
+                  .append (',').append (_nights[own.nextInt (NIGHTS)]).append ('\n');
+            else
+               out.append (i).append (',').append (managerOf (hotel)).append (',').append (i).append ('\n');
+            break;
+         }
+         case UPDATES: {
+            int hotel = popularHotel (random);
+            int room = 1 + random.nextInt (_rooms[hotel]);
+            LocalDateTime when = FIRST_NIGHT.atStartOfDay ().plusSeconds (random.nextLong (NIGHTS * 86400L));
+            out.append (i).append (',').append (managerOf (hotel)).append (',').append (hotel).append (',')
+               .append (room).append (',').append (when.format (TIMESTAMP)).append ('\n');
+            break;
+         }
+         default:
+            throw new IllegalArgumentException ("Unknown table " + table);
+      }
+   }//end row
+
+   private void rooms (int first, int last, StringBuilder out){
+      for (int h = first; h <= last; ++h){
+         SplittableRandom random = random (ROOMS, -h);
+         int base = 50 + random.nextInt (450);
+         for (int r = 1; r <= _rooms[h]; ++r)
+            out.append (h).append (',').append (r).append (',').append (base + random.nextInt (base))
+               .append (",img/h").append (h).append ("/r").append (r).append (".jpg\n");
+      }
+   }//end rooms
+
+   /*
+    * Writes the bookings of a run of hotels, room by room and night by
+    * night. Each room of a hotel gets an even part of the hotel's bookings
+    * on distinct nights, drawn with the seasonal weights.
+    */
+   private void bookings (int first, int last, long bookingID, StringBuilder out){
+      BitSet booked = new BitSet (NIGHTS);
+      for (int h = first; h <= last; ++h){
+         SplittableRandom random = random (BOOKINGS, h);
+         int rooms = _rooms[h];
+         for (int r = 1; r <= rooms; ++r){
+            long nights = _hotelBookings[h] / rooms + (r <= _hotelBookings[h] % rooms ? 1 : 0);
+            booked.clear ();
+            for (long n = 0; n < nights; ++n){
+               int night;
+               do{
+                  night = random.nextInt (NIGHTS);
+               }while (booked.get (night) || random.nextDouble () * 2 > _season[night]);
+               booked.set (night);
+            }
+            for (int night = booked.nextSetBit (0); night >= 0; night = booked.nextSetBit (night + 1))
+               out.append (bookingID++).append (',').append (customerOf (h, random)).append (',').append (h)
+                  .append (',').append (r).append (',').append (_nights[night]).append ('\n');
+         }
+      }
+   }//end bookings
+
+   // how busy a night is, between 0.5 and 2: a summer peak and the last two weeks of the year.
+   private static double season (int day){
+      double busy = 1 + 0.5 * Math.cos (2 * Math.PI * (day - 196) / 365.25);
+      return day >= 352 ? busy + 0.5 : busy;
+   }//end season
+
+   private int customerOf (int hotel, SplittableRandom random){
+      if (random.nextDouble () < REGULAR_SHARE){
+         // one of the hotel's regulars, the same ones for every room.
+         int regular = random.nextInt (REGULARS);
+         return firstCustomer () + (int) Math.floorMod (mix (SEED, hotel, regular), (long) _customers);
+      }
+      return firstCustomer () + (int) (_customers * Math.pow (random.nextDouble (), 2));
+   }//end customerOf
+
+   private int popularHotel (SplittableRandom random){
+      return 1 + (int) (_hotels * Math.pow (random.nextDouble (), 1 / (1 - HOTEL_SKEW)));
+   }
+
+   private int firstCustomer (){
+      return 2 + _managers;
+   }
+
+   // every manager runs about the same number of hotels, spread over the hotelIDs.
+   private int managerOf (int hotel){
+      return 2 + (hotel - 1) % _managers;
+   }
+
+   /*
+    * Writes the segments of a file in order after its header, generating
+    * up to THREADS * 2 of them ahead of the one being written.
+    */
+   private void write (File file, String header, List<Segment> segments) throws IOException {
+      OutputStream out = new FileOutputStream (file);
+      ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>> ();
+      try{
+         out.write ((header + "\n").getBytes (StandardCharsets.US_ASCII));
+         int next = 0;
+         while (next < segments.size () || !pending.isEmpty ()){
+            while (next < segments.size () && pending.size () < Math.max (2, THREADS * 2)){
+               final Segment segment = segments.get (next++);
+               pending.add (_executor.submit (new Callable<String> (){
+                  public String call (){
+                     return segment.generate ();
+                  }
+               }));
+            }
+            out.write (get (pending.poll ()).getBytes (StandardCharsets.US_ASCII));
+         }
+      }finally{
+         for (Future<String> f : pending)
+            f.cancel (true);
+         out.close ();
+      }
+      System.out.println ("Wrote " + file);
+   }//end write
+
+   private static String get (Future<String> segment) throws IOException {
+      try{
+         return segment.get ();
+      }catch (InterruptedException e){
+         Thread.currentThread ().interrupt ();
+         throw new IOException ("Interrupted while generating");
+      }catch (ExecutionException e){
+         throw new IOException (String.valueOf (e.getCause ()), e.getCause ());
+      }
+   }//end get
+
+   private static long total (long[] values){
+      long sum = 0;
+      for (long v : values)
+         sum += v;
+      return sum;
+   }
+
+   private static long total (int[] values){
+      long sum = 0;
+      for (int v : values)
+         sum += v;
+      return sum;
+   }
+
+   // a generator seeded by the table and a position in it, so the data does not depend on the threads.
+   private static SplittableRandom random (int table, long position){
+      return new SplittableRandom (mix (SEED, table, position));
+   }
+
+   // the finalizer of SplitMix64 over the three values.
+   private static long mix (long seed, long a, long b){
+      long z = seed + a * 0x9E3779B97F4A7C15L + b * 0xC2B2AE3D27D4EB4FL;
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      return z ^ (z >>> 31);
+   }
+
+}//end DataGenerator
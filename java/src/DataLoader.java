@@ -0,0 +1,556 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class reloads every table from the CSV files of a data directory,
+ * such as data/ in this repository, streaming them from the client so the
+ * files do not have to be readable by the database server:
+ *
+ *    java DataLoader <dbname> <port> <user> <data directory> [<create_indexes.sql>]
+ *
+ * The tables are emptied first. Each file is sent with COPY ... FROM STDIN
+ * when the driver has the CopyManager of newer Postgres drivers, and as
+ * batched INSERTs otherwise. Files larger than hotel.load.chunkBytes are
+ * split at line boundaries into chunks copied on separate connections.
+ * Up to hotel.load.threads chunks load at the same time; a table starts
+ * once the tables it references are loaded, so the foreign keys are
+ * checked as the rows arrive.
+ *
+ * The indexes of the given create_indexes.sql are dropped before the load
+ * and built afterwards, in parallel, and the booking triggers are off
+ * while RoomBookings loads; CustomerBookingCounts and HotelDailyStats are
+ * rebuilt from the bookings at the end instead. The bookings are copied
+ * into an unlogged staging table without partitions or foreign keys, so
+ * their chunks need not wait for the other tables; once Users and Rooms
+ * are loaded, the monthly partitions are created for the MIN and MAX
+ * bookingDate of the staged rows and the rows are moved into RoomBookings
+ * with one INSERT ... SELECT. Finally the serial sequences are moved past
+ * the largest key loaded and the tables are analyzed.
+ *
+ * If a load fails the tables are emptied again, the staging table dropped,
+ * the triggers turned back on and the indexes rebuilt, so no table is left
+ * half loaded; the load can then simply be run again.
+ */
+public class DataLoader {
+
+   // chunks loaded at the same time; each holds a pooled connection.
+   static final int THREADS = Integer.getInteger ("hotel.load.threads", 4);
+
+   // files larger than this are split into chunks of about this size.
+   static final long CHUNK_BYTES = Long.getLong ("hotel.load.chunkBytes", 64L * 1024 * 1024);
+
+   // rows per executeBatch when the driver cannot COPY.
+   static final int INSERT_BATCH = Integer.getInteger ("hotel.load.insertBatch", 1000);
+
+   // one table, the file it is loaded from and the tables its foreign keys reference.
+   static final class Table {
+      final String name;
+      final String file;
+      final String columns;
+      final String serial;
+      final Table[] references;
+
+      Table (String name, String file, String columns, String serial, Table... references){
+         this.name = name;
+         this.file = file;
+         this.columns = columns;
+         this.serial = serial;
+         this.references = references;
+      }
+   }//end Table
+
+   static final Table USERS = new Table ("Users", "users.csv",
+      "userID, name, password, userType", "userID");
+   static final Table COMPANY = new Table ("MaintenanceCompany", "company.csv",
+      "companyID, name, addrress", null);
+   static final Table HOTEL = new Table ("Hotel", "hotels.csv",
+      "hotelID, hotelName, latitude, longitude, dateEstablished, managerUserID", null, USERS);
+   static final Table ROOMS = new Table ("Rooms", "rooms.csv",
+      "hotelID, roomNumber, price, imageURL", null, HOTEL);
+   static final Table BOOKINGS = new Table ("RoomBookings", "bookings.csv",
+      "bookingID, customerID, hotelID, roomNumber, bookingDate", "bookingID", USERS, ROOMS);
+   static final Table REPAIRS = new Table ("RoomRepairs", "roomRepairs.csv",
+      "repairID, companyID, hotelID, roomNumber, repairDate", "repairID", COMPANY, ROOMS);
+   static final Table REQUESTS = new Table ("RoomRepairRequests", "roomRepairRequests.csv",
+      "requestNumber, managerID, repairID", "requestNumber", USERS, REPAIRS);
+   static final Table UPDATES = new Table ("RoomUpdatesLog", "roomUpdatesLog.csv",
+      "updateNumber, managerID, hotelID, roomNumber, updatedOn", "updateNumber", USERS, ROOMS);
+
+   // every table, each after the tables it references.
+   static final Table[] TABLES = { USERS, COMPANY, HOTEL, ROOMS, BOOKINGS, REPAIRS, REQUESTS, UPDATES };
+
+   // tables filled from the loaded ones rather than from a file, with the statements that rebuild them.
+   static final String[] DERIVED = {
+      "INSERT INTO CustomerBookingCounts (hotelID, customerID, bookings) " +
+      "SELECT hotelID, customerID, count(*) FROM RoomBookings GROUP BY hotelID, customerID",
+      "INSERT INTO HotelDailyStats (hotelID, day, bookedRooms, revenue) " +
+      "SELECT rb.hotelID, rb.bookingDate, count(*), sum(r.price) " +
+      "FROM RoomBookings rb JOIN Rooms r ON r.hotelID = rb.hotelID AND r.roomNumber = rb.roomNumber " +
+      "GROUP BY rb.hotelID, rb.bookingDate"
+   };
+
+   // where the bookings are copied before their partitions are known.
+   static final String STAGING = "roombookings_load";
+
+   // the files' dates are written month first, e.g. 5/12/2015.
+   static final String DATE_STYLE = "SET LOCAL DateStyle TO 'ISO, MDY'";
+
+   private final Hotel _esql;
+   private final File _directory;
+   private final ExecutorService _executor;
+
+   // the chunks of every table submitted so far.
+   private final Map<Table, List<Future<Long>>> _chunks = new LinkedHashMap<Table, List<Future<Long>>> ();
+
+   /**
+    * Creates a loader reading the files of the given directory.
+    *
+    * @param esql the database the tables are loaded into
+    * @param directory the directory holding users.csv, hotels.csv, ...
+    */
+   public DataLoader (Hotel esql, File directory){
+      this._esql = esql;
+      this._directory = directory;
+      this._executor = Executors.newFixedThreadPool (Math.max (1, THREADS), new ThreadFactory (){
+         public Thread newThread (Runnable r){
+            Thread t = new Thread (r, "data-loader");
+            t.setDaemon (true);
+            return t;
+         }
+      });
+   }//end DataLoader
+
+   public static void main (String[] args) {
+      if (args.length < 4) {
+         System.err.println (
+            "Usage: java DataLoader <dbname> <port> <user> <data directory> [<create_indexes.sql>]");
+         return;
+      }//end if
+
+      Hotel esql = null;
+      boolean loaded = false;
+      try{
+         Class.forName ("org.postgresql.Driver").newInstance ();
+         esql = new Hotel (args[0], args[1], args[2], "");
+         List<String> indexes = args.length > 4
+            ? IndexBenchmark.readCreateIndexes (args[4]) : new ArrayList<String> ();
+         new DataLoader (esql, new File (args[3])).load (indexes);
+         loaded = true;
+      }catch(Exception e){
+         System.err.println (e.getMessage ());
+      }finally{
+         if (esql != null)
+            esql.cleanup ();
+      }//end try
+      if (!loaded)
+         System.exit (1);
+   }//end main
+
+   /**
+    * Method to empty the tables and load every file into them.
+    *
+    * @param indexes the CREATE INDEX statements built after the load
+    * @throws java.sql.SQLException when a statement or a file fails to load
+    * @throws java.io.IOException when a file cannot be read
+    */
+   public void load (List<String> indexes) throws SQLException, IOException {
+      long start = System.currentTimeMillis ();
+      boolean loaded = false;
+      try{
+         prepare (indexes);
+         for (Table table : TABLES)
+            submit (table);
+         for (Table table : TABLES){
+            long rows = 0;
+            for (Future<Long> chunk : _chunks.get (table))
+               rows += get (chunk);
+            System.out.println (table.name + ": " + rows + " rows");
+         }
+         finish (indexes);
+         loaded = true;
+      }finally{
+         _executor.shutdownNow ();
+         if (!loaded)
+            undo (indexes);
+      }
+      System.out.println ("Loaded in " + (System.currentTimeMillis () - start) + " ms");
+   }//end load
+
+   // empties the tables, drops the deferred indexes, turns off the booking triggers
+   // and creates the staging table of the bookings.
+   private void prepare (List<String> indexes) throws SQLException {
+      _esql.executeUpdate (truncate ());
+      for (String create : indexes)
+         _esql.executeUpdate ("DROP INDEX IF EXISTS " + IndexBenchmark.indexName (create));
+      // only the user triggers; the foreign key checks stay on.
+      _esql.executeUpdate ("ALTER TABLE RoomBookings DISABLE TRIGGER USER");
+      _esql.executeUpdate ("DROP TABLE IF EXISTS " + STAGING);
+      _esql.executeUpdate ("CREATE UNLOGGED TABLE " + STAGING + " (LIKE RoomBookings INCLUDING DEFAULTS)");
+   }//end prepare
+
+   private static String truncate (){
+      StringBuilder tables = new StringBuilder ("TRUNCATE CustomerBookingCounts, HotelDailyStats");
+      for (Table table : TABLES)
+         tables.append (", ").append (table.name);
+      return tables.toString ();
+   }//end truncate
+
+   /*
+    * Empties the tables after a failed load and puts back what prepare
+    * took away. Chunks still running are waited for first, since the
+    * TRUNCATE cannot take its lock while they hold theirs.
+    */
+   private void undo (List<String> indexes){
+      try{
+         _executor.awaitTermination (10, TimeUnit.MINUTES);
+         _esql.executeUpdate (truncate ());
+         _esql.executeUpdate ("DROP TABLE IF EXISTS " + STAGING);
+         _esql.executeUpdate ("ALTER TABLE RoomBookings ENABLE TRIGGER USER");
+         for (String create : indexes){
+            _esql.executeUpdate ("DROP INDEX IF EXISTS " + IndexBenchmark.indexName (create));
+            _esql.executeUpdate (create);
+         }
+         System.err.println ("The load failed; the tables were emptied again");
+      }catch (InterruptedException e){
+         Thread.currentThread ().interrupt ();
+      }catch (SQLException e){
+         System.err.println ("Could not empty the tables after the failed load: " + e.getMessage ());
+      }
+   }//end undo
+
+   // rebuilds what the load skipped, moves the sequences on and analyzes.
+   private void finish (List<String> indexes) throws SQLException {
+      _esql.executeUpdate ("ALTER TABLE RoomBookings ENABLE TRIGGER USER");
+      for (String derived : DERIVED)
+         _esql.executeUpdate (derived);
+      for (Table table : TABLES){
+         if (table.serial == null)
+            continue;
+         // pg_get_serial_sequence takes the column name as it is stored, in lower case.
+         _esql.executeQuery (
+            "SELECT setval(pg_get_serial_sequence(?, ?), COALESCE(MAX(" + table.serial + "), 0) + 1, false) FROM " + table.name,
+            table.name, table.serial.toLowerCase ());
+      }
+      List<Future<Long>> builds = new ArrayList<Future<Long>> ();
+      for (final String create : indexes){
+         builds.add (_executor.submit (new Callable<Long> (){
+            public Long call () throws SQLException {
+               return (long) _esql.executeUpdate (create);
+            }
+         }));
+      }
+      for (Future<Long> build : builds)
+         get (build);
+      _esql.executeUpdate ("ANALYZE");
+   }//end finish
+
+   // splits a table's file into chunks and queues them behind the tables it references.
+   private void submit (final Table table) throws IOException {
+      final File file = new File (_directory, table.file);
+      long[] bounds = chunks (file);
+      final List<Future<Long>> waitFor = new ArrayList<Future<Long>> ();
+      for (Table referenced : table.references)
+         waitFor.addAll (_chunks.get (referenced));
+      // the staging table has no foreign keys, so the bookings copy at once and only the move waits.
+      final boolean staged = table == BOOKINGS;
+      final String into = staged ? STAGING : table.name;
+
+      List<Future<Long>> chunks = new ArrayList<Future<Long>> ();
+      for (int i = 0; i + 1 < bounds.length; ++i){
+         final long from = bounds[i];
+         final long to = bounds[i + 1];
+         // the pool takes chunks in order, so every chunk waited for is running or done.
+         chunks.add (_executor.submit (new Callable<Long> (){
+            public Long call () throws Exception {
+               if (!staged)
+                  for (Future<Long> referenced : waitFor)
+                     get (referenced);
+               return loadChunk (table, into, file, from, to);
+            }
+         }));
+      }
+      if (staged){
+         final List<Future<Long>> copied = chunks;
+         chunks = new ArrayList<Future<Long>> ();
+         chunks.add (_executor.submit (new Callable<Long> (){
+            public Long call () throws Exception {
+               for (Future<Long> chunk : copied)
+                  get (chunk);
+               for (Future<Long> referenced : waitFor)
+                  get (referenced);
+               return moveBookings ();
+            }
+         }));
+      }
+      _chunks.put (table, chunks);
+   }//end submit
+
+   // creates the months of the staged bookings and moves them into RoomBookings.
+   private long moveBookings () throws SQLException {
+      TypedResult range = _esql.executeQueryAndReturnTypedResult (
+         "SELECT MIN(bookingDate), MAX(bookingDate) FROM " + STAGING);
+      if (range.rowCount () > 0 && range.getDate (0, 0) != null)
+         _esql.partitions ().ensure (range.getDate (0, 0), range.getDate (0, 1));
+      long rows = _esql.executeUpdate ("INSERT INTO RoomBookings (" + BOOKINGS.columns + ") " +
+         "SELECT " + BOOKINGS.columns + " FROM " + STAGING);
+      _esql.executeUpdate ("DROP TABLE " + STAGING);
+      return rows;
+   }//end moveBookings
+
+   /*
+    * Finds where the chunks of a file start: after the header line, then
+    * every CHUNK_BYTES moved on to the start of the next line, and the end
+    * of the file last. Lines are never split, so the files must not hold
+    * line breaks inside quoted values.
+    */
+   static long[] chunks (File file) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile (file, "r");
+      try{
+         long length = raf.length ();
+         long header = nextLine (raf, 0);
+         List<Long> bounds = new ArrayList<Long> ();
+         bounds.add (header);
+         long next = header + CHUNK_BYTES;
+         while (next < length){
+            long bound = nextLine (raf, next);
+            if (bound >= length)
+               break;
+            bounds.add (bound);
+            next = bound + CHUNK_BYTES;
+         }
+         bounds.add (length);
+         long[] result = new long[bounds.size ()];
+         for (int i = 0; i < result.length; ++i)
+            result[i] = bounds.get (i);
+         return result;
+      }finally{
+         raf.close ();
+      }
+   }//end chunks
+
+   // the offset just past the first line break at or after the position.
+   private static long nextLine (RandomAccessFile raf, long position) throws IOException {
+      raf.seek (position);
+      byte[] buffer = new byte[8192];
+      int n;
+      while ((n = raf.read (buffer)) > 0){
+         for (int i = 0; i < n; ++i)
+            if (buffer[i] == '\n')
+               return position + i + 1;
+         position += n;
+      }
+      return position;
+   }//end nextLine
+
+   // loads the lines between two offsets of a file into a table in one transaction.
+   private long loadChunk (final Table table, final String into, final File file, final long from, final long to) throws SQLException {
+      if (from >= to)
+         return 0;
+      return _esql.executeInTransaction (new TransactionWork<Long> (){
+         public Long run (Connection conn, StatementCache statements) throws SQLException {
+            statements.prepare (DATE_STYLE).execute ();
+            try{
+               Reader in = new InputStreamReader (new Slice (file, from, to), StandardCharsets.UTF_8);
+               try{
+                  Long copied = copy (conn, "COPY " + into + " (" + table.columns + ") FROM STDIN WITH CSV", in);
+                  if (copied != null)
+                     return copied;
+               }finally{
+                  in.close ();
+               }
+               // no CopyManager; read the lines again and insert them.
+               BufferedReader lines = new BufferedReader (
+                  new InputStreamReader (new Slice (file, from, to), StandardCharsets.UTF_8));
+               try{
+                  return insert (statements, table, into, lines);
+               }finally{
+                  lines.close ();
+               }
+            }catch (IOException e){
+               throw new SQLException ("Unable to read " + file + ": " + e.getMessage (), e);
+            }
+         }
+      });
+   }//end loadChunk
+
+   /*
+    * Streams the rows through the driver's CopyManager. It is reached
+    * through reflection, like the driver switches in StatementCache, so the
+    * loader compiles and runs with the bundled 7.3 driver, which has none.
+    *
+    * @return the number of rows copied, or null when the driver cannot COPY
+    */
+   private static Long copy (Connection conn, String sql, Reader in) throws SQLException {
+      Method copyIn;
+      Object copyApi;
+      try{
+         copyApi = conn.getClass ().getMethod ("getCopyAPI").invoke (conn);
+         copyIn = copyApi.getClass ().getMethod ("copyIn", String.class, Reader.class);
+      }catch (Exception e){
+         return null;
+      }
+      try{
+         return ((Number) copyIn.invoke (copyApi, sql, in)).longValue ();
+      }catch (InvocationTargetException e){
+         if (e.getCause () instanceof SQLException)
+            throw (SQLException) e.getCause ();
+         throw new SQLException ("COPY failed: " + e.getCause (), e.getCause ());
+      }catch (IllegalAccessException e){
+         throw new SQLException ("COPY failed: " + e, e);
+      }
+   }//end copy
+
+   // inserts CSV lines in batches, letting the server convert every value from text.
+   private static long insert (StatementCache statements, Table table, String into, BufferedReader lines)
+         throws SQLException, IOException {
+      int columns = table.columns.split (",").length;
+      StringBuilder sql = new StringBuilder ("INSERT INTO " + into + " (" + table.columns + ") VALUES (?");
+      for (int i = 1; i < columns; ++i)
+         sql.append (", ?");
+      PreparedStatement stmt = statements.prepare (sql.append (')').toString ());
+      long rows = 0;
+      int batched = 0;
+      String line;
+      while ((line = lines.readLine ()) != null){
+         if (line.isEmpty ())
+            continue;
+         List<String> values = parseCsv (line);
+         if (values.size () != columns)
+            throw new SQLException ("Expected " + columns + " values for " + table.name + " but got: " + line);
+         for (int i = 0; i < columns; ++i){
+            if (values.get (i) == null)
+               stmt.setNull (i + 1, Types.NULL);
+            else
+               stmt.setObject (i + 1, values.get (i), Types.OTHER);
+         }
+         stmt.addBatch ();
+         ++rows;
+         if (++batched == INSERT_BATCH){
+            stmt.executeBatch ();
+            batched = 0;
+         }
+      }
+      if (batched > 0)
+         stmt.executeBatch ();
+      return rows;
+   }//end insert
+
+   // splits one CSV line the way COPY ... CSV does: an unquoted empty value is NULL.
+   static List<String> parseCsv (String line){
+      List<String> values = new ArrayList<String> ();
+      StringBuilder value = new StringBuilder ();
+      boolean quoted = false, wasQuoted = false;
+      for (int i = 0; i < line.length (); ++i){
+         char c = line.charAt (i);
+         if (quoted){
+            if (c == '"' && i + 1 < line.length () && line.charAt (i + 1) == '"'){
+               value.append ('"');
+               ++i;
+            }else if (c == '"'){
+               quoted = false;
+            }else{
+               value.append (c);
+            }
+         }else if (c == '"'){
+            quoted = true;
+            wasQuoted = true;
+         }else if (c == ','){
+            values.add (value.length () == 0 && !wasQuoted ? null : value.toString ());
+            value.setLength (0);
+            wasQuoted = false;
+         }else if (c != '\r'){
+            value.append (c);
+         }
+      }
+      values.add (value.length () == 0 && !wasQuoted ? null : value.toString ());
+      return values;
+   }//end parseCsv
+
+   private static long get (Future<Long> future) throws SQLException {
+      try{
+         return future.get ();
+      }catch (InterruptedException e){
+         Thread.currentThread ().interrupt ();
+         throw new SQLException ("Interrupted while loading");
+      }catch (ExecutionException e){
+         if (e.getCause () instanceof SQLException)
+            throw (SQLException) e.getCause ();
+         throw new SQLException (String.valueOf (e.getCause ()), e.getCause ());
+      }
+   }//end get
+
+   // the bytes of a file between two offsets.
+   private static final class Slice extends FilterInputStream {
+      private long _remaining;
+
+      Slice (File file, long from, long to) throws IOException {
+         super (open (file, from));
+         this._remaining = to - from;
+      }
+
+      private static InputStream open (File file, long from) throws IOException {
+         FileInputStream in = new FileInputStream (file);
+         try{
+            in.getChannel ().position (from);
+            return in;
+         }catch (IOException e){
+            in.close ();
+            throw e;
+         }
+      }
+
+      public int read () throws IOException {
+         if (_remaining <= 0)
+            return -1;
+         int b = super.read ();
+         if (b >= 0)
+            --_remaining;
+         return b;
+      }
+
+      public int read (byte[] b, int off, int len) throws IOException {
+         if (_remaining <= 0)
+            return -1;
+         int n = super.read (b, off, (int) Math.min (len, _remaining));
+         if (n > 0)
+            _remaining -= n;
+         return n;
+      }
+
+      public long skip (long n) throws IOException {
+         long skipped = super.skip (Math.min (n, _remaining));
+         _remaining -= skipped;
+         return skipped;
+      }
+
+      public int available () throws IOException {
+         return (int) Math.min (super.available (), _remaining);
+      }
+   }//end Slice
+
+}//end DataLoader
@@ -11,9 +11,10 @@
  */
 
 
-import java.sql.DriverManager;
 import java.sql.Connection;
 import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.sql.Types;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -21,15 +22,20 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.List;
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;//added this
 import java.lang.Math;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.sql.Timestamp; //added this
 import java.util.Date; //added this
 import java.text.SimpleDateFormat; //added this
 import java.time.LocalDate; //added this
+import java.time.format.DateTimeParseException;
 
 /**
  * This class defines a simple embedded SQL utility class that is designed to
@@ -38,8 +44,32 @@ import java.time.LocalDate; //added this
  */
 public class Hotel {
 
-   // reference to physical database connection.
-   private Connection _connection = null;
+   // pool of physical database connections shared by every operation.
+   private ConnectionPool _pool = null;
+
+   // statements slower than hotel.slowQuery.millis, or null when that is not set.
+   private SlowQueryLog _slowQueries = null;
+
+   // spatial index over hotel locations, rebuilt after hotel.locator.refreshMillis.
+   private volatile HotelLocator _locator = null;
+   static final long LOCATOR_REFRESH_MILLIS = Long.getLong("hotel.locator.refreshMillis", 300000L);
+
+   // booked nights of every room, used to answer availability without scanning bookings.
+   private final AvailabilityIndex _availability =
+      new AvailabilityIndex(this, Long.getLong("hotel.availability.refreshMillis", 60000L));
+
+   // the monthly partitions of RoomBookings known to exist, created ahead of the bookings that need them.
+   private final BookingPartitions _partitions = new BookingPartitions(this);
+
+   // key allocators by sequence name, each reserving hotel.ids.blockSize values per round trip.
+   private final ConcurrentHashMap<String, IdAllocator> _ids = new ConcurrentHashMap<String, IdAllocator>();
+   static final int ID_BLOCK_SIZE = Integer.getInteger("hotel.ids.blockSize", 100);
+
+   // the application's operations without the terminal, used by the menus below.
+   private final HotelService _service = new HotelService(this);
+
+   // rows fetched per round trip by executeQueryAndStream.
+   static final int DEFAULT_FETCH_SIZE = Integer.getInteger("hotel.fetchSize", 500);
 
    // handling the keyboard inputs through a BufferedReader
    // This variable can be global for convenience.
@@ -63,8 +93,11 @@ public class Hotel {
          String url = "jdbc:postgresql://localhost:" + dbport + "/" + dbname;
          System.out.println ("Connection URL: " + url + "\n");
 
-         // obtain a physical connection
-         this._connection = DriverManager.getConnection(url, user, passwd);
+         // create the connection pool and check out one connection so a
+         // database that is not running is reported right away.
+         this._pool = ConnectionPool.fromSystemProperties(url, user, passwd);
+         this._pool.release(this._pool.borrow());
+         this._slowQueries = SlowQueryLog.fromSystemProperties(this._pool);
          System.out.println("Done");
       }catch (Exception e){
          System.err.println("Error - Unable to Connect to Database: " + e.getMessage() );
@@ -80,24 +113,6 @@ public class Hotel {
       return Math.sqrt(t1 + t2); 
    }
 
-   /**
-    * Method to execute an update SQL statement.  Update SQL instructions
-    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.
-    *
-    * @param sql the input SQL string
-    * @throws java.sql.SQLException when update failed
-    */
-   public void executeUpdate (String sql) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the update instruction
-      stmt.executeUpdate (sql);
-
-      // close the instruction
-      stmt.close ();
-   }//end executeUpdate
-
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and outputs the results to
@@ -108,8 +123,22 @@ public class Hotel {
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int executeQueryAndPrintResult (String query) throws SQLException {
+      long started = System.nanoTime ();
+      int rows = -1;
+      Connection conn = this._pool.borrow ();
+      try{
+         rows = printResult (conn, query);
+         return rows;
+      }finally{
+         this._pool.release (conn);
+         observe (query, new Object[0], started, rows, 0, 1);
+      }
+   }//end executeQuery
+
+   // runs a query on a borrowed connection and prints its rows.
+   private static int printResult (Connection conn, String query) throws SQLException {
       // creates a statement object
-      Statement stmt = this._connection.createStatement ();
+      Statement stmt = conn.createStatement ();
 
       // issues the query instruction
       ResultSet rs = stmt.executeQuery (query);
@@ -139,106 +168,413 @@ public class Hotel {
       }//end while
       stmt.close ();
       return rowCount;
-   }//end executeQuery
+   }//end printResult
+
+   /**
+    * Method to execute an update SQL statement.  Update SQL instructions
+    * includes CREATE, INSERT, UPDATE, DELETE, and DROP.  Each '?' in the
+    * statement is bound, in order, to one of the given parameters, and the
+    * statement is kept in the connection's PreparedStatement cache so the
+    * next call with the same SQL text skips parsing and planning.
+    *
+    * @param sql the input SQL string with '?' placeholders
+    * @param params the values bound to the placeholders
+    * @return the number of rows affected
+    * @throws java.sql.SQLException when update failed
+    */
+   public int executeUpdate (String sql, Object... params) throws SQLException {
+      long started = System.nanoTime ();
+      int rows = -1;
+      Connection conn = this._pool.borrow ();
+      try{
+         PreparedStatement stmt = this._pool.statementCache (conn).prepare (sql);
+         bind (stmt, params);
+         rows = stmt.executeUpdate ();
+         return rows;
+      }finally{
+         this._pool.release (conn);
+         observe (sql, params, started, rows, 0, 1);
+      }
+   }//end executeUpdate
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
     * method issues the query to the DBMS and returns the results as
-    * a list of records. Each record in turn is a list of attribute values
+    * a list of records. Each record in turn is a list of attribute values.
+    * The query is parameterized and cached like in executeUpdate.
     *
-    * @param query the input query string
+    * @param query the input query string with '?' placeholders
+    * @param params the values bound to the placeholders
     * @return the query result as a list of records
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public List<List<String>> executeQueryAndReturnResult (String query) throws SQLException {
-      // creates a statement object
-      Statement stmt = this._connection.createStatement ();
-
-      // issues the query instruction
-      ResultSet rs = stmt.executeQuery (query);
-
-      /*
-       ** obtains the metadata object for the returned result set.  The metadata
-       ** contains row and column info.
-       */
-      ResultSetMetaData rsmd = rs.getMetaData ();
-      int numCol = rsmd.getColumnCount ();
-      int rowCount = 0;
-
-      // iterates through the result set and saves the data returned by the query.
-      boolean outputHeader = false;
-      List<List<String>> result  = new ArrayList<List<String>>();
-      while (rs.next()){
-        List<String> record = new ArrayList<String>();
-		for (int i=1; i<=numCol; ++i)
-			record.add(rs.getString (i));
-        result.add(record);
-      }//end while
-      stmt.close ();
-      return result;
+   public List<List<String>> executeQueryAndReturnResult (String query, Object... params) throws SQLException {
+      long started = System.nanoTime ();
+      int rows = -1;
+      long bytes = 0;
+      Connection conn = this._pool.borrow ();
+      try{
+         PreparedStatement stmt = this._pool.statementCache (conn).prepare (query);
+         bind (stmt, params);
+         ResultSet rs = stmt.executeQuery ();
+         int numCol = rs.getMetaData ().getColumnCount ();
+         List<List<String>> result  = new ArrayList<List<String>>();
+         while (rs.next()){
+            List<String> record = new ArrayList<String>(numCol);
+            for (int i=1; i<=numCol; ++i){
+               String value = rs.getString (i);
+               if (value != null)
+                  bytes += 2L * value.length ();
+               record.add(value);
+            }
+            result.add(record);
+         }//end while
+         rs.close ();
+         rows = result.size ();
+         return result;
+      }finally{
+         this._pool.release (conn);
+         observe (query, params, started, rows, bytes, 1);
+      }
    }//end executeQueryAndReturnResult
 
    /**
     * Method to execute an input query SQL instruction (i.e. SELECT).  This
-    * method issues the query to the DBMS and returns the number of results
+    * method issues the query to the DBMS and returns the number of results.
+    * The query is parameterized and cached like in executeUpdate.
     *
-    * @param query the input query string
+    * @param query the input query string with '?' placeholders
+    * @param params the values bound to the placeholders
     * @return the number of rows returned
     * @throws java.sql.SQLException when failed to execute the query
     */
-   public int executeQuery (String query) throws SQLException {
-       // creates a statement object
-       Statement stmt = this._connection.createStatement ();
+   public int executeQuery (String query, Object... params) throws SQLException {
+      long started = System.nanoTime ();
+      int rows = -1;
+      Connection conn = this._pool.borrow ();
+      try{
+         PreparedStatement stmt = this._pool.statementCache (conn).prepare (query);
+         bind (stmt, params);
+         ResultSet rs = stmt.executeQuery ();
+         int rowCount = 0;
+         while (rs.next()){
+            rowCount++;
+         }//end while
+         rs.close ();
+         rows = rowCount;
+         return rowCount;
+      }finally{
+         this._pool.release (conn);
+         observe (query, params, started, rows, 0, 1);
+      }
+   }//end executeQuery
 
-       // issues the query instruction
-       ResultSet rs = stmt.executeQuery (query);
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT).  This
+    * method issues the query to the DBMS and returns the results column by
+    * column in primitive arrays, so numeric columns are read with getInt,
+    * getLong or getDouble once instead of as one String per cell.
+    *
+    * @param query the input query string with '?' placeholders
+    * @param params the values bound to the placeholders
+    * @return the query result as a TypedResult
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public TypedResult executeQueryAndReturnTypedResult (String query, Object... params) throws SQLException {
+      long started = System.nanoTime ();
+      TypedResult result = null;
+      Connection conn = this._pool.borrow ();
+      try{
+         PreparedStatement stmt = this._pool.statementCache (conn).prepare (query);
+         bind (stmt, params);
+         ResultSet rs = stmt.executeQuery ();
+         try{
+            result = TypedResult.read (rs);
+            return result;
+         }finally{
+            rs.close ();
+         }
+      }finally{
+         this._pool.release (conn);
+         if (result == null)
+            observe (query, params, started, -1, 0, 1);
+         else
+            observe (query, params, started, result.rowCount (), result.estimatedBytes (), 1);
+      }
+   }//end executeQueryAndReturnTypedResult
 
-       int rowCount = 0;
+   /**
+    * Method to execute an input query SQL instruction (i.e. SELECT) and hand
+    * each row to a callback as it arrives.  Autocommit is turned off for the
+    * duration of the query so Postgres keeps a server-side cursor open and
+    * only fetchSize rows are held on the client at a time, whatever the size
+    * of the result.
+    *
+    * @param query the input query string with '?' placeholders
+    * @param fetchSize the number of rows fetched from the server per round trip
+    * @param handler the callback receiving every row
+    * @param params the values bound to the placeholders
+    * @return the number of rows delivered to the handler
+    * @throws java.sql.SQLException when failed to execute the query
+    */
+   public int executeQueryAndStream (String query, int fetchSize, RowHandler handler, Object... params) throws SQLException {
+      long started = System.nanoTime ();
+      int rows = -1;
+      Connection conn = this._pool.borrow ();
+      try{
+         conn.setAutoCommit (false);
+         PreparedStatement stmt = this._pool.statementCache (conn).prepare (query);
+         bind (stmt, params);
+         stmt.setFetchSize (fetchSize);
+         ResultSet rs = stmt.executeQuery ();
+         int rowCount = 0;
+         try{
+            while (rs.next()){
+               handler.handle (rs);
+               ++rowCount;
+            }//end while
+         }finally{
+            rs.close ();
+            stmt.setFetchSize (0);
+         }
+         conn.commit ();
+         rows = rowCount;
+         return rowCount;
+      }finally{
+         // the pool rolls back anything left open and restores autocommit.
+         this._pool.release (conn);
+         // the rows were handed on, not kept; one fetch per fetchSize rows plus the commit.
+         observe (query, params, started, rows, 0, 2 + Math.max (rows, 0) / Math.max (fetchSize, 1));
+      }
+   }//end executeQueryAndStream
 
-       // iterates through the result set and count nuber of results.
-       while (rs.next()){
-          rowCount++;
-       }//end while
-       stmt.close ();
-       return rowCount;
-   }
+   /**
+    * Method to stream a query with the default fetch size, read from the
+    * hotel.fetchSize system property.
+    */
+   public int executeQueryAndStream (String query, RowHandler handler, Object... params) throws SQLException {
+      return executeQueryAndStream (query, DEFAULT_FETCH_SIZE, handler, params);
+   }//end executeQueryAndStream
+
+   /**
+    * Method to run several statements as one transaction on a single pooled
+    * connection.  The transaction commits when the work returns and rolls
+    * back when it throws.
+    *
+    * @param work the statements to run
+    * @return whatever the work returns
+    * @throws java.sql.SQLException when a statement or the commit fails
+    */
+   public <T> T executeInTransaction (TransactionWork<T> work) throws SQLException {
+      long started = System.nanoTime ();
+      boolean committed = false;
+      Connection conn = this._pool.borrow ();
+      StatementCache statements = this._pool.statementCache (conn);
+      long prepared = statements.prepared ();
+      try{
+         conn.setAutoCommit (false);
+         T result = work.run (conn, statements);
+         conn.commit ();
+         committed = true;
+         return result;
+      }catch (SQLException e){
+         conn.rollback ();
+         throw e;
+      }catch (RuntimeException e){
+         conn.rollback ();
+         throw e;
+      }finally{
+         long statementsRun = statements.prepared () - prepared;
+         this._pool.release (conn);
+         // recorded as a whole under the operation that ran it; its statements are not timed one by one.
+         String operation = Metrics.currentOperation ();
+         observe ("transaction" + (operation == null ? "" : " (" + operation + ")"), null,
+                  started, committed ? statementsRun : -1, 0, statementsRun + 1);
+      }
+   }//end executeInTransaction
+
+   // records one statement with Metrics and the slow query log; rows is -1 when it failed.
+   private void observe (String sql, Object[] params, long started, long rows, long bytes, long roundTrips) {
+      long nanos = System.nanoTime () - started;
+      Metrics.statement (sql, nanos, rows < 0, Math.max (rows, 0), bytes, roundTrips);
+      if (this._slowQueries != null)
+         this._slowQueries.record (sql, params, nanos, rows);
+   }//end observe
+
+   // binds the parameters to the placeholders of a prepared statement in order.
+   static void bind (PreparedStatement stmt, Object[] params) throws SQLException {
+      for (int i = 0; i < params.length; ++i){
+         if (params[i] == null)
+            stmt.setNull (i + 1, Types.NULL);
+         else if (params[i] instanceof int[])
+            stmt.setString (i + 1, arrayLiteral ((int[]) params[i]));
+         else
+            stmt.setObject (i + 1, params[i]);
+      }
+   }//end bind
+
+   // an int[] parameter goes to the server as the text of an array, e.g. {1,2,3}, for the statement to cast with
+   // ?::integer[]; unlike createArrayOf this works with every driver, the bundled 7.3 one included.
+   static String arrayLiteral (int[] values){
+      StringBuilder sb = new StringBuilder ("{");
+      for (int i = 0; i < values.length; ++i){
+         if (i > 0)
+            sb.append (',');
+         sb.append (values[i]);
+      }
+      return sb.append ('}').toString ();
+   }//end arrayLiteral
 
    /**
     * Method to fetch the last value from sequence. This
     * method issues the query to the DBMS and returns the current
-    * value of sequence used for autogenerated keys
+    * value of sequence used for autogenerated keys. currval is kept per
+    * connection, so it only sees nextval calls made on the same pooled
+    * connection.
     *
     * @param sequence name of the DB sequence
     * @return current value of a sequence
     * @throws java.sql.SQLException when failed to execute the query
     */
    public int getCurrSeqVal(String sequence) throws SQLException {
-      Statement stmt = this._connection.createStatement ();
+      Connection conn = this._pool.borrow ();
+      try{
+         return currSeqVal (conn, sequence);
+      }finally{
+         this._pool.release (conn);
+      }
+   }
+
+   private static int currSeqVal (Connection conn, String sequence) throws SQLException {
+      Statement stmt = conn.createStatement ();
 
       ResultSet rs = stmt.executeQuery (String.format("Select currval('%s')", sequence));
-      if (rs.next())
-         return rs.getInt(1);
-      return -1;
+      int value = rs.next() ? rs.getInt(1) : -1;
+      stmt.close ();
+      return value;
+   }
+
+
+   /**
+    * Method to execute an INSERT that ends with a RETURNING clause and read
+    * back the generated key in the same round trip, instead of querying the
+    * table or its sequence afterwards.
+    *
+    * @param sql the INSERT ... RETURNING statement with '?' placeholders
+    * @param params the values bound to the placeholders
+    * @return the first column of the returned row
+    * @throws java.sql.SQLException when the insert fails or returns no row
+    */
+   public int executeInsertReturningKey (String sql, Object... params) throws SQLException {
+      long started = System.nanoTime ();
+      int rows = -1;
+      Connection conn = this._pool.borrow ();
+      try{
+         int key = insertReturningKey (this._pool.statementCache (conn), sql, params);
+         rows = 1;
+         return key;
+      }finally{
+         this._pool.release (conn);
+         observe (sql, params, started, rows, 0, 1);
+      }
+   }//end executeInsertReturningKey
+
+   // runs an INSERT ... RETURNING on a borrowed connection's statements and reads the key.
+   static int insertReturningKey (StatementCache statements, String sql, Object[] params) throws SQLException {
+      PreparedStatement stmt = statements.prepare (sql);
+      bind (stmt, params);
+      ResultSet rs = stmt.executeQuery ();
+      try{
+         if (!rs.next ())
+            throw new SQLException ("The insert returned no key: " + sql);
+         return rs.getInt (1);
+      }finally{
+         rs.close ();
+      }
+   }//end insertReturningKey
+
+   /**
+    * Method to get the spatial index over every hotel's location. The index
+    * is loaded on first use and rebuilt once it is older than the refresh
+    * interval or after invalidateHotelLocator().
+    *
+    * @return the current hotel locator
+    * @throws java.sql.SQLException when the hotels cannot be loaded
+    */
+   public HotelLocator hotelLocator() throws SQLException {
+      HotelLocator locator = this._locator;
+      if (locator == null || System.currentTimeMillis() - locator.builtAt() > LOCATOR_REFRESH_MILLIS){
+         synchronized (this){
+            locator = this._locator;
+            if (locator == null || System.currentTimeMillis() - locator.builtAt() > LOCATOR_REFRESH_MILLIS){
+               locator = HotelLocator.fromResult(executeQueryAndReturnTypedResult(
+                  "SELECT hotelID, hotelName, latitude, longitude FROM Hotel"));
+               this._locator = locator;
+            }
+         }
+      }
+      return locator;
+   }//end hotelLocator
+
+   /**
+    * Method to drop the hotel locator so the next search rebuilds it. The
+    * application never writes to Hotel, so the locator is only refreshed
+    * after hotel.locator.refreshMillis; code that adds, moves or removes
+    * hotels should call this so searches see the change at once.
+    */
+   public void invalidateHotelLocator(){
+      this._locator = null;
+   }//end invalidateHotelLocator
+
+   /**
+    * @return the room availability index shared by every operation
+    */
+   public AvailabilityIndex availability(){
+      return this._availability;
    }
 
-   public int getNewUserID(String sql) throws SQLException {
-      Statement stmt = this._connection.createStatement ();
-      ResultSet rs = stmt.executeQuery (sql);
-      if (rs.next())
-         return rs.getInt(1);
-      return -1;
+   /**
+    * @return the partition checker run before bookings are inserted
+    */
+   public BookingPartitions partitions(){
+      return this._partitions;
    }
+
    /**
-    * Method to close the physical connection if it is open.
+    * @return the operations of the application, callable without the menus
+    */
+   public HotelService service(){
+      return this._service;
+   }
+
+   /**
+    * Method to get the allocator that hands out values of a sequence from
+    * reserved blocks, creating it on first use.
+    *
+    * @param sequence the name of the sequence, e.g. roombookings_bookingid_seq
+    * @return the allocator shared by every caller of this sequence
+    */
+   public IdAllocator ids(String sequence){
+      IdAllocator allocator = this._ids.get (sequence);
+      if (allocator == null){
+         IdAllocator created = new IdAllocator (this, sequence, ID_BLOCK_SIZE);
+         allocator = this._ids.putIfAbsent (sequence, created);
+         if (allocator == null)
+            allocator = created;
+      }
+      return allocator;
+   }//end ids
+
+   /**
+    * Method to close the pooled physical connections if they are open.
     */
    public void cleanup(){
-      try{
-         if (this._connection != null){
-            this._connection.close ();
-         }//end if
-      }catch (SQLException e){
-         // ignored.
-      }//end try
+      if (this._slowQueries != null){
+         this._slowQueries.close ();
+      }//end if
+      if (this._pool != null){
+         this._pool.close ();
+      }//end if
    }//end cleanup
 
    /**
@@ -247,16 +583,22 @@ public class Hotel {
     * @param args the command line arguments this inclues the <mysql|pgsql> <login file>
     */
 
-   static String currentUserID = ""; //added this
-   static String currentUserType = ""; //added this
-
    public static void main (String[] args) {
-      if (args.length != 3) {
+      boolean batch = args.length == 5 && args[3].equals ("--batch");
+      boolean serve = args.length == 5 && args[3].equals ("--serve");
+      if (args.length != 3 && !batch && !serve) {
          System.err.println (
             "Usage: " +
             "java [-classpath <classpath>] " +
             Hotel.class.getName () +
-            " <dbname> <port> <user>");
+            " <dbname> <port> <user> [--batch <file|-> | --serve <http port>]");
+         return;
+      }//end if
+      if (batch) {
+         System.exit (runBatch (args[0], args[1], args[2], args[4]));
+      }//end if
+      if (serve) {
+         serve (args[0], args[1], args[2], Integer.parseInt (args[4]));
          return;
       }//end if
 
@@ -287,16 +629,16 @@ public class Hotel {
             System.out.println("1. Are you a New User? Create a New User profile to access our application.");
             System.out.println("2. Are you an Existing User? Log in using this option.");
             System.out.println("3. < EXIT");
-            String authorisedUser = null;
+            Session session = null;
             switch (readChoice()){
                case 1: CreateUser(esql); break;
-               case 2: authorisedUser = LogIn(esql); break;
+               case 2: session = LogIn(esql); break;
                case 3: keepon = false; break;
                default : System.out.println("\nUnrecognized choice! Please try again.\n"); break;
             }//end switch
-            if (authorisedUser != null) {
+            if (session != null) {
 		
-	      if(currentUserType.trim().equals("Customer")){
+	      if(session.isCustomer()){
               	boolean usermenu = true;
               	while(usermenu) {
 			System.out.print("******************************************************************************\n\n");
@@ -306,15 +648,17 @@ public class Hotel {
                 	System.out.println("2. View Rooms");
                 	System.out.println("3. Book a Room");
                 	System.out.println("4. View recent booking history");
+                	System.out.println("5. View nearest Hotels");
 			System.out.println(".........................");
-			System.out.println("5. Log out");
+			System.out.println("6. Log out");
 
 			switch (readChoice()){
-                   	 case 1: viewHotels(esql); break;
-                   	 case 2: viewRooms(esql); break;
-                   	 case 3: bookRooms(esql); break;
-                   	 case 4: viewRecentBookingsfromCustomer(esql); break;
-	           	 case 5: usermenu = false; break;
+                   	 case 1: viewHotels(esql, session); break;
+                   	 case 2: viewRooms(esql, session); break;
+                   	 case 3: bookRooms(esql, session); break;
+                   	 case 4: viewRecentBookingsfromCustomer(esql, session); break;
+                   	 case 5: viewNearestHotels(esql, session); break;
+	           	 case 6: usermenu = false; break;
 		   	 default : System.out.println("\nUnrecognized choice! Please try again!\n"); break;
 			}	 
 		}
@@ -342,21 +686,25 @@ public class Hotel {
                 	System.out.println("8. View 5 regular Customers");
                 	System.out.println("9. Place room repair Request to a company");
                 	System.out.println("10. View room repair Requests history");
+                	System.out.println("11. View nearest Hotels");
+                	System.out.println("12. View occupancy and revenue of your hotels");
 
                 	System.out.println(".........................");
-                	System.out.println("11. Log out");
+                	System.out.println("13. Log out");
                 	switch (readChoice()){
-			 case 1: viewHotels(esql); break;
-                         case 2: viewRooms(esql); break;
-                         case 3: bookRooms(esql); break;
-                         case 4: viewRecentBookingsfromCustomer(esql); break;
-                   	 case 5: updateRoomInfo(esql); break;
-                   	 case 6: viewRecentUpdates(esql); break;
-                  	 case 7: viewBookingHistoryofHotel(esql); break;
-                   	 case 8: viewRegularCustomers(esql); break;
-                   	 case 9: placeRoomRepairRequests(esql); break;
-                   	 case 10: viewRoomRepairHistory(esql); break;
-                   	 case 11: usermenu = false; break;
+			 case 1: viewHotels(esql, session); break;
+                         case 2: viewRooms(esql, session); break;
+                         case 3: bookRooms(esql, session); break;
+                         case 4: viewRecentBookingsfromCustomer(esql, session); break;
+                   	 case 5: updateRoomInfo(esql, session); break;
+                   	 case 6: viewRecentUpdates(esql, session); break;
+                  	 case 7: viewBookingHistoryofHotel(esql, session); break;
+                   	 case 8: viewRegularCustomers(esql, session); break;
+                   	 case 9: placeRoomRepairRequests(esql, session); break;
+                   	 case 10: viewRoomRepairHistory(esql, session); break;
+                   	 case 11: viewNearestHotels(esql, session); break;
+                   	 case 12: viewOccupancy(esql, session); break;
+                   	 case 13: usermenu = false; break;
                    	 default : System.out.println("\nUnrecognized choice! Please try again!\n"); break;
                 	}
 	    	}
@@ -366,9 +714,6 @@ public class Hotel {
                 System.out.print("Success.\n\n");
 	    }
 	
-
-		currentUserID = "";
-		currentUserType = "";
             }
          }//end while
       }catch(Exception e) {
@@ -389,6 +734,61 @@ public class Hotel {
       }//end try
    }//end main
 
+   /**
+    * Runs the operations in a file, or stdin for "-", with BatchRunner.
+    *
+    * @return the exit status: 0 when every operation succeeded, 1 when some
+    *         failed, 2 when the batch could not be run
+    */
+   static int runBatch (String dbname, String dbport, String user, String file) {
+      Hotel esql = null;
+      BufferedReader ops = null;
+      try{
+         Class.forName ("org.postgresql.Driver").newInstance ();
+         // stdout carries only results, so the connection messages go to stderr.
+         PrintStream results = System.out;
+         System.setOut (System.err);
+         esql = new Hotel (dbname, dbport, user, "");
+         ops = file.equals ("-") ? in : new BufferedReader (new FileReader (file));
+         return new BatchRunner (esql.service (), results).run (ops) == 0 ? 0 : 1;
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+         return 2;
+      }finally{
+         try{
+            if (ops != null && ops != in)
+               ops.close ();
+         }catch (IOException e) {
+            // ignored.
+         }//end try
+         if (esql != null)
+            esql.cleanup ();
+      }//end try
+   }//end runBatch
+
+   /**
+    * Serves the JSON API with HotelServer until the process is stopped.
+    */
+   static void serve (String dbname, String dbport, String user, int httpPort) {
+      try{
+         Class.forName ("org.postgresql.Driver").newInstance ();
+         final Hotel esql = new Hotel (dbname, dbport, user, "");
+         final HotelServer server = new HotelServer (esql.service (), httpPort);
+         Runtime.getRuntime ().addShutdownHook (new Thread (){
+            public void run (){
+               server.stop (2);
+               esql.cleanup ();
+            }
+         });
+         server.start ();
+         System.out.println ("Serving the hotel API on port " + httpPort
+            + (server.virtualThreads () ? " with virtual threads" : " with " + HotelServer.THREADS + " threads"));
+      }catch(Exception e) {
+         System.err.println (e.getMessage ());
+         System.exit (2);
+      }//end try
+   }//end serve
+
    public static void Greeting(){
       System.out.println(
          "\n\n*******************************************************\n" +
@@ -421,6 +821,7 @@ public class Hotel {
     * Creates a new user
     **/
    public static void CreateUser(Hotel esql){
+      Metrics.Operation op = Metrics.begin("CreateUser");
       try{
 	 System.out.println();
 	 System.out.print("******************************************************************************\n\n");
@@ -430,24 +831,26 @@ public class Hotel {
          System.out.print("\tPlease enter a password for your profile: ");
          String password = in.readLine(); 
          String type="Customer";
-			String query = String.format("INSERT INTO USERS (name, password, userType) VALUES ('%s','%s', '%s')", name, password, type);
-         esql.executeUpdate(query);
+         int userID = esql.service().createUser(name, password, type);
 	 System.out.println();
-         System.out.println ("Your New User profile has been successfully created! Your userID is " + esql.getNewUserID("SELECT last_value FROM users_userID_seq"));
+         System.out.println ("Your New User profile has been successfully created! Your userID is " + userID);
 	 System.out.println("Please remember your userID and password, as you will need both to log in to our application.");
          System.out.println();
 
       }catch(Exception e){
          System.err.println (e.getMessage ());
+      }finally{
+         op.end();
       }
    }//end CreateUser
 
 
    /*
     * Check log in credentials for an existing user
-    * @return User login or null if the user does not exist
+    * @return the session of the user or null if the user does not exist
     **/
-   public static String LogIn(Hotel esql){
+   public static Session LogIn(Hotel esql){
+      Metrics.Operation op = Metrics.begin("LogIn");
       try{
 	 System.out.println();
 	 System.out.print("******************************************************************************\n\n");
@@ -458,15 +861,11 @@ public class Hotel {
          String password = in.readLine();
 	 System.out.println();
 
-         String query = String.format("SELECT * FROM USERS WHERE userID = '%s' AND password = '%s'", userID, password);
-	 List<List<String>> typeUser = esql.executeQueryAndReturnResult(query);
-         int userNum = esql.executeQuery(query);
-         if (userNum > 0){
-	    currentUserID = userID;
-	    currentUserType = typeUser.get(0).get(3);
+         Session session = esql.service().logIn(Integer.parseInt(userID.trim()), password);
+         if (session != null){
 	    System.out.print("Logging you in...\n\n");
 	    System.out.print("You have successfully logged in to our application!\n\n");	
-            return userID;
+            return session;
 	}
 
 	System.out.print("Incorrect userID or password! Please try again.\n\n");
@@ -474,12 +873,15 @@ public class Hotel {
       }catch(Exception e){
          System.err.println (e.getMessage ());
          return null;
+      }finally{
+         op.end();
       }
    }//end
 
 // Rest of the functions definition go in here
 
-   public static void viewHotels(Hotel esql) {
+   public static void viewHotels(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewHotels");
 	try{
 		System.out.println();
 		System.out.print("******************************************************************************\n\n");
@@ -529,44 +931,187 @@ public class Hotel {
 		double long1 = Double.parseDouble(longg);
 		System.out.println();
 
-		String query = "SELECT * FROM Hotel";
-
-		List<List<String>> retrieve = esql.executeQueryAndReturnResult(query);
+		TypedResult retrieve = esql.service().searchHotels(lat1, long1);
 		
 		System.out.println();
 		System.out.print("The following is a list of hotels that are within 30 units distance from your given input location.\n");
 		System.out.println();
 
-		for(int i = 0; i < retrieve.size(); i++){
+		for(int i = 0; i < retrieve.rowCount(); i++){
 
-			double lat2 = Double.parseDouble(retrieve.get(i).get(2));
-			double long2 = Double.parseDouble(retrieve.get(i).get(3));
+			double lat2 = retrieve.getDouble(i, 2);
+			double long2 = retrieve.getDouble(i, 3);
 
-			
-			double result = calculateDistance(lat1, long1, lat2, long2);
-
-			if(result <= 30.0){
-				System.out.print("Hotel Name: ");
-				System.out.print(retrieve.get(i).get(1));
-				System.out.print("\nHotel ID: ");
-				System.out.print(retrieve.get(i).get(0));
-				System.out.print("\nHotel Latitude: ");
-				System.out.print(retrieve.get(i).get(2));
-				System.out.print("\nHotel Longitude: ");
-				System.out.print(retrieve.get(i).get(3).trim());
-				System.out.print("\nDate Established: ");
-				System.out.print(retrieve.get(i).get(4));
-				System.out.println("\n");
-			}
+			System.out.print("Hotel Name: ");
+			System.out.print(retrieve.getString(i, 1));
+			System.out.print("\nHotel ID: ");
+			System.out.print(retrieve.getInt(i, 0));
+			System.out.print("\nHotel Latitude: ");
+			System.out.print(lat2);
+			System.out.print("\nHotel Longitude: ");
+			System.out.print(long2);
+			System.out.print("\nDate Established: ");
+			System.out.print(retrieve.getString(i, 4));
+			System.out.println("\n");
 		}
 	}
 
 catch(Exception e){
 	System.err.println(e.getMessage());
 }
+finally{
+	op.end();
+}
 		
 }
-   public static void viewRooms(Hotel esql) {
+   public static void viewNearestHotels(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewNearestHotels");
+	try{
+		System.out.println();
+		System.out.print("******************************************************************************\n\n");
+		System.out.print("We will now give you the hotels closest to your given input location.\n\n");
+
+		double lat1 = Double.NaN;
+		while(Double.isNaN(lat1)){
+			System.out.print("\tPlease enter the latitude of your input location (-90 to 90): ");
+			try{
+				double value = Double.parseDouble(in.readLine());
+				if(value >= -90.0 && value <= 90.0){
+					lat1 = value;
+				}
+			}
+			catch(NumberFormatException e){
+				// asked again below.
+			}
+			if(Double.isNaN(lat1)){
+				System.out.println();
+				System.out.print("Invalid input for latitude! ");
+			}
+		}
+		System.out.println();
+
+		double long1 = Double.NaN;
+		while(Double.isNaN(long1)){
+			System.out.print("\tPlease enter the longitude of your input location (-180 to 180): ");
+			try{
+				double value = Double.parseDouble(in.readLine());
+				if(value >= -180.0 && value <= 180.0){
+					long1 = value;
+				}
+			}
+			catch(NumberFormatException e){
+				// asked again below.
+			}
+			if(Double.isNaN(long1)){
+				System.out.println();
+				System.out.print("Invalid input for longitude! ");
+			}
+		}
+		System.out.println();
+
+		List<HotelLocator.Match> nearest = esql.service().nearestHotels(lat1, long1, HotelService.NEAREST_HOTELS);
+
+		System.out.print("The following is a list of the " + nearest.size() + " hotels closest to your given input location.\n");
+		System.out.println();
+
+		for(HotelLocator.Match m : nearest){
+			System.out.print("Hotel Name: ");
+			System.out.print(m.hotelName);
+			System.out.print("\nHotel ID: ");
+			System.out.print(m.hotelID);
+			System.out.print("\nHotel Latitude: ");
+			System.out.print(m.latitude);
+			System.out.print("\nHotel Longitude: ");
+			System.out.print(m.longitude);
+			System.out.print("\nDistance: ");
+			System.out.print(String.format("%.1f km", m.distanceKm));
+			System.out.println("\n");
+		}
+	}
+
+catch(Exception e){
+	System.err.println(e.getMessage());
+}
+finally{
+	op.end();
+}
+
+}
+   public static void viewOccupancy(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewOccupancy");
+	try{
+		System.out.println();
+		System.out.print("******************************************************************************\n\n");
+		System.out.print("You will now see how full the hotels you manage were over a range of dates and the revenue of the booked nights.\n\n");
+
+		LocalDate first = null;
+		while(first == null){
+			System.out.print("\tPlease type in the starting date of the range (yyyy-mm-dd): ");
+			try{
+				first = LocalDate.parse(in.readLine().trim());
+			}
+			catch(DateTimeParseException e){
+				System.out.println();
+				System.out.print("The date you entered does not follow the correct format. ");
+			}
+		}
+		System.out.println();
+
+		LocalDate last = null;
+		while(last == null){
+			System.out.print("\tPlease type in the ending date of the range (yyyy-mm-dd): ");
+			try{
+				LocalDate value = LocalDate.parse(in.readLine().trim());
+				if(value.isBefore(first)){
+					System.out.println();
+					System.out.print("The ending date you entered falls before the starting date. ");
+				}
+				else{
+					last = value;
+				}
+			}
+			catch(DateTimeParseException e){
+				System.out.println();
+				System.out.print("The date you entered does not follow the correct format. ");
+			}
+		}
+		System.out.println();
+
+		TypedResult report = esql.service().occupancy(session.userID(), first, last);
+
+		System.out.print("--------------------------------------------------------------\n\n");
+		System.out.print("The following is the occupancy and revenue of the hotel(s) you manage between " + first + " and " + last + ".\n\n");
+
+		for(int i = 0; i < report.rowCount(); i++){
+			System.out.print("Hotel Name: ");
+			System.out.print(report.getString(i, 1).trim());
+			System.out.print("\nHotel ID: ");
+			System.out.print(report.getInt(i, 0));
+			System.out.print("\nRooms: ");
+			System.out.print(report.getInt(i, 2));
+			System.out.print("\nBooked Room Nights: ");
+			System.out.print(report.getLong(i, 3));
+			System.out.print("\nOccupancy: ");
+			System.out.print(report.getString(i, 4) + "%");
+			System.out.print("\nRevenue: ");
+			System.out.print(report.getLong(i, 5));
+			System.out.println("\n");
+		}
+		if(report.rowCount() == 0){
+			System.out.print("You do not manage any hotels.\n\n");
+		}
+	}
+
+catch(Exception e){
+	System.err.println(e.getMessage());
+}
+finally{
+	op.end();
+}
+
+}
+   public static void viewRooms(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewRooms");
 	try{
 		System.out.println();
                 System.out.print("******************************************************************************\n\n");
@@ -575,21 +1120,19 @@ catch(Exception e){
 
 		System.out.print("The following is a list of hotels with their corresponding hotelID.\n");
 		System.out.println();
-		String validIDS = "SELECT hotelName, hotelID FROM Hotel";
-
 		System.out.println();
-		List<List<String>> retrieve = esql.executeQueryAndReturnResult(validIDS);
+		TypedResult retrieve = esql.service().hotels();
 
-		for(int r = 0; r < retrieve.size() / 2; r++){
+		for(int r = 0; r < retrieve.rowCount() / 2; r++){
 		
 			System.out.print("Hotel Name: ");
-                        System.out.print(retrieve.get(r).get(0).trim());
+                        System.out.print(retrieve.getString(r, 0).trim());
                         System.out.print("\tHotel Name: ");
-                        System.out.print(retrieve.get(r + 10).get(0));
+                        System.out.print(retrieve.getString(r + 10, 0));
 			System.out.print("\nHotel ID: ");
-			System.out.print(retrieve.get(r).get(1));
+			System.out.print(retrieve.getString(r, 1));
 			System.out.print("\t        Hotel ID: ");
-			System.out.print(retrieve.get(r + 10).get(1));
+			System.out.print(retrieve.getString(r + 10, 1));
 			System.out.println("\n");
 				
 		}
@@ -598,8 +1141,8 @@ catch(Exception e){
 		String hotelID = in.readLine();
 
 		while(checker){
-			for(int i = 0; i < retrieve.size(); i++){
-				if(hotelID.equals(retrieve.get(i).get(1))){
+			for(int i = 0; i < retrieve.rowCount(); i++){
+				if(hotelID.equals(retrieve.getString(i, 1))){
 					checker = false;
 				}
 			}
@@ -633,121 +1176,27 @@ catch(Exception e){
 
 		System.out.println();
 
-		String query = "SELECT rb.hotelID, rb.roomNumber, p.price, rb.bookingDate ";
-		query += "FROM RoomBookings rb, Rooms p ";
-		query += "WHERE rb.hotelID = ";
-		query += hotelID;
-		query += " AND p.price = (SELECT r.price FROM Rooms r WHERE r.hotelID = rb.hotelID AND r.roomNumber = p.roomNumber)";
-		query += " ORDER BY rb.roomNumber";
-
-		String query2 = "SELECT DISTINCT roomNumber, price FROM Rooms ";
-		query2 += "WHERE hotelID = ";
-		query2 += hotelID;
-		query2 += " ORDER BY roomNumber";
-
-		List<List<String>> test = esql.executeQueryAndReturnResult(query2);
-
-		List<List<String>> retrieve2 = esql.executeQueryAndReturnResult(query);
+		List<HotelService.Room> test = esql.service().availableRooms(Integer.parseInt(hotelID), LocalDate.parse(theDate));
+		boolean anyBooked = false;
 
 		System.out.print("The following is a list of rooms that are available for the hotelID and date you entered.");
 		System.out.println();
 		System.out.print("-----------------------------------------------------------------------------------------");
 		System.out.println();
 
-		ArrayList<String> unavailableRooms = new ArrayList<String>();
-		ArrayList<String> alreadyPrinted = new ArrayList<String>();
-		ArrayList<Integer> indexPosition = new ArrayList<Integer>();
-		ArrayList<String> notBookedButAvailable = new ArrayList<String>();
-	//	ArrayList<String> noRoomsAvailable = new ArrayList<String>();
-		
-		notBookedButAvailable.add("1");
-		notBookedButAvailable.add("2");
-		notBookedButAvailable.add("3");
-		notBookedButAvailable.add("4");
-		notBookedButAvailable.add("5");
-		notBookedButAvailable.add("6");
-		notBookedButAvailable.add("7");
-		notBookedButAvailable.add("8");
-		notBookedButAvailable.add("9");
-		notBookedButAvailable.add("10");
-
-		for(int x = 0; x < retrieve2.size(); x++){
-			
-			if(theDate.equals(retrieve2.get(x).get(3))){
-				
-				unavailableRooms.add(retrieve2.get(x).get(1));
-				notBookedButAvailable.remove(String.valueOf(retrieve2.get(x).get(1)));
-
-			}
-		}
-
-		boolean checker2 = false;
-		String currVal = retrieve2.get(0).get(1);
-
-
-		for(int j = 0; j < retrieve2.size(); j++){
-
-			if(!currVal.equals(retrieve2.get(j).get(1))){
-				currVal = retrieve2.get(j).get(1);
-				checker2 = false;
-			}
-
-			if(unavailableRooms.contains(retrieve2.get(j).get(1)) && !(checker2)){
-						
-			//	printUnavailable(retrieve2.get(j).get(1), retrieve2.get(j).get(2));
-				checker2 = true;
-				currVal = retrieve2.get(j).get(1);
-				indexPosition.add(j);	
-			}	
-					
-			else if(unavailableRooms.contains(retrieve2.get(j).get(1)) && checker2){
-
-				continue;
-			}
-			else{
+		for(HotelService.Room room : test){
 
-			if(alreadyPrinted.contains(retrieve2.get(j).get(1))){
+			if(!room.available){
+				anyBooked = true;
 				continue;
 			}
-			else{	
 
 			System.out.print("Room Number: ");
-			System.out.print(retrieve2.get(j).get(1));
+			System.out.print(room.roomNumber);
 			System.out.println();
 
 			System.out.print("Room Price: $");
-			int row = Integer.parseInt(retrieve2.get(j).get(1));
-			System.out.print(test.get(row - 1).get(1));
-			System.out.println();
-
-			System.out.print("Status: Available");
-			System.out.println();
-
-			alreadyPrinted.add(retrieve2.get(j).get(1));
-			notBookedButAvailable.remove(String.valueOf(retrieve2.get(j).get(1)));
-			}
-			
-			}
-
-			System.out.println();
-		}
-
-		for(int y = 0; y < notBookedButAvailable.size(); y++){
-			
-			String foundPrice = "";
-
-			System.out.print("Room Number: ");
-			System.out.print(notBookedButAvailable.get(y));
-			System.out.println();
-			
-			System.out.print("Room Price: $");
-			for(int z = 0; z < test.size(); z++){
-				if(notBookedButAvailable.get(y).equals(test.get(z).get(0))){
-					foundPrice = test.get(z).get(1);
-					break;
-				}
-			} 
-			System.out.print(foundPrice);
+			System.out.print(room.price);
 			System.out.println();
 
 			System.out.print("Status: Available");
@@ -760,21 +1209,24 @@ catch(Exception e){
 		System.out.println();
 		System.out.println();
 
-		if(indexPosition.size() == 0){
+		if(!anyBooked){
 			
 			System.out.print("\tAll rooms for this hotel are currently available on the date you entered.");
 			System.out.println();
 		}else{
 	
-		for(int c = 0; c < indexPosition.size(); c++){
+		for(HotelService.Room room : test){
+
+			if(room.available){
+				continue;
+			}
 			
 			System.out.print("Room Number: ");
-			System.out.print(retrieve2.get(indexPosition.get(c)).get(1));
+			System.out.print(room.roomNumber);
 			System.out.println();
 
 			System.out.print("Room Price: $");
-			int row2 = Integer.parseInt(retrieve2.get(indexPosition.get(c)).get(1));
-			System.out.print(test.get(row2 - 1).get(1));
+			System.out.print(room.price);
 			System.out.println();
 
 			System.out.print("Status: Unavailable");
@@ -789,9 +1241,13 @@ catch(Exception e){
 catch(Exception e){
 	System.err.println(e.getMessage());
 }
+finally{
+	op.end();
+}
 			
 }
-   public static void bookRooms(Hotel esql) {
+   public static void bookRooms(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("bookRooms");
 	try{
 		System.out.println();
                 System.out.print("******************************************************************************\n\n");
@@ -803,19 +1259,18 @@ catch(Exception e){
 		while(!overallCheck){
                 System.out.print("The following is a list of hotels with their corresponding hotelID.\n");
                 System.out.println();
-                String validIDS = "SELECT hotelName, hotelID FROM Hotel";
-                List<List<String>> retrieveHotels = esql.executeQueryAndReturnResult(validIDS);
+                TypedResult retrieveHotels = esql.service().hotels();
 
-		for(int r = 0; r < retrieveHotels.size() / 2; r++){
+		for(int r = 0; r < retrieveHotels.rowCount() / 2; r++){
 
                         System.out.print("Hotel Name: ");
-                        System.out.print(retrieveHotels.get(r).get(0).trim());
+                        System.out.print(retrieveHotels.getString(r, 0).trim());
                         System.out.print("\tHotel Name: ");
-                        System.out.print(retrieveHotels.get(r + 10).get(0));
+                        System.out.print(retrieveHotels.getString(r + 10, 0));
                         System.out.print("\nHotel ID: ");
-                        System.out.print(retrieveHotels.get(r).get(1));
+                        System.out.print(retrieveHotels.getString(r, 1));
                         System.out.print("\t        Hotel ID: ");
-                        System.out.print(retrieveHotels.get(r + 10).get(1));
+                        System.out.print(retrieveHotels.getString(r + 10, 1));
                         System.out.println("\n");
 
                 }
@@ -824,8 +1279,8 @@ catch(Exception e){
                 String hotelID = in.readLine();
 
                 while(checker){
-                        for(int i = 0; i < retrieveHotels.size(); i++){
-                                if(hotelID.equals(retrieveHotels.get(i).get(1))){
+                        for(int i = 0; i < retrieveHotels.rowCount(); i++){
+                                if(hotelID.equals(retrieveHotels.getString(i, 1))){
                                         checker = false;
                                 }
                         }
@@ -840,19 +1295,14 @@ catch(Exception e){
 		System.out.print("The following is the list of room numbers for this hotel.\n ");
 		System.out.println();
 
-		String validRoomNums = "SELECT roomNumber ";
-		validRoomNums += "FROM Rooms r ";
-		validRoomNums += "WHERE hotelID = ";
-		validRoomNums += hotelID;
+		TypedResult retrieveRooms = esql.service().rooms(Integer.parseInt(hotelID));
 
-		List<List<String>> retrieveRooms = esql.executeQueryAndReturnResult(validRoomNums);
-
-		for(int q = 0; q < retrieveRooms.size() / 2; q++){
+		for(int q = 0; q < retrieveRooms.rowCount() / 2; q++){
 
 			System.out.print("Room Number: ");
-			System.out.print(retrieveRooms.get(q).get(0));
+			System.out.print(retrieveRooms.getString(q, 0));
 			System.out.print("\tRoom Number: ");
-			System.out.print(retrieveRooms.get(q + 5).get(0));
+			System.out.print(retrieveRooms.getString(q + 5, 0));
 			System.out.println("\n");
 
 		}
@@ -864,8 +1314,8 @@ catch(Exception e){
 		
 		while(!checkRoom){
 
-			for(int i = 0; i < retrieveRooms.size(); i++){
-				if(roomNum.equals(retrieveRooms.get(i).get(0))){
+			for(int i = 0; i < retrieveRooms.rowCount(); i++){
+				if(roomNum.equals(retrieveRooms.getString(i, 0))){
 					checkRoom = true;
 				}
 			}
@@ -901,19 +1351,9 @@ catch(Exception e){
 
 		System.out.println();
 
-		String query = "SELECT rb.hotelID, rb.roomNumber, rb.bookingDate ";
-		query += "FROM RoomBookings rb ";
-		query += "WHERE rb.hotelID = ";
-		query +=  hotelID;
-		query += " AND rb.roomNumber = ";
-		query += roomNum;
-		query += " AND rb.bookingDate = '";
-		query += theDate;
-		query += "'";
-
-		int booked = esql.executeQuery(query);
+		LocalDate checkIn = LocalDate.parse(theDate);
 
-		if(booked > 0){
+		if(!esql.service().isFree(Integer.parseInt(hotelID), Integer.parseInt(roomNum), checkIn, checkIn)){
 			System.out.print("This room is not available on the selected date. Please try again.");
 			System.out.println();
 			System.out.println();
@@ -948,22 +1388,18 @@ catch(Exception e){
 
                 if(users.equals("1")){
 
-		String query2 = String.format("INSERT INTO RoomBookings (customerID, hotelID, roomNumber, bookingDate) VALUES ('%s','%s','%s','%s')", currentUserID, hotelID, roomNum, theDate);
-
-		esql.executeUpdate(query2); 
+		if(!esql.service().bookRoom(session.userID(), Integer.parseInt(hotelID), Integer.parseInt(roomNum), checkIn)){
+			System.out.print("Sorry, this room was just booked by another customer for the selected date. Please try again.");
+			System.out.println();
+			System.out.println();
+			return;
+		}
 	
-		String query3 = "SELECT r.price ";
-		query3 += "FROM Rooms r, RoomBookings rb ";
-		query3 += "WHERE r.hotelID = ";
-		query3 += hotelID;
-		query3 += " AND r.roomNumber = ";
-		query3 += roomNum;
-
-		List<List<String>> retrieveResult = esql.executeQueryAndReturnResult(query3);
+		int price = esql.service().roomPrice(Integer.parseInt(hotelID), Integer.parseInt(roomNum));
 
 		System.out.println();
 		System.out.print("Your room was booked successfully. The price of this room is: $");
-		System.out.print(retrieveResult.get(0).get(0));
+		System.out.print(price);
 		System.out.println();
 		System.out.println();
 
@@ -1017,68 +1453,68 @@ catch(Exception e){
 
 		System.err.println(e.getMessage());
 	}
+	finally{
+		op.end();
+	}
 		
 }
-   public static void viewRecentBookingsfromCustomer(Hotel esql) {
+   public static void viewRecentBookingsfromCustomer(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewRecentBookingsfromCustomer");
 
 	try{
 
 		System.out.println();
 		System.out.print("******************************************************************************\n\n");
-                System.out.print("The following is a list of up to 5 of your last most recent bookings.");
-                System.out.println();
+		System.out.print("The following is a list of your most recent bookings, newest first.");
+		System.out.println();
 		System.out.println();
 
-                String bookings = "SELECT rb.hotelID, rb.roomNumber, r.price, rb.bookingDate ";
-                bookings += "FROM RoomBookings rb, Rooms r ";
-                bookings += "WHERE rb.hotelID = r.hotelID AND rb.roomNumber = r.roomNumber AND rb.customerID = ";
-                bookings += currentUserID;
-                bookings += " ORDER BY rb.bookingDate";
-
-                List<List<String>> retrieveBookings = esql.executeQueryAndReturnResult(bookings);
+		int customerID = session.userID();
+		LocalDate lastDate = null;
+		int lastID = 0;
 
-                int startLast5 = retrieveBookings.size() - 5;
+		while(true){
 
-                
-		if(retrieveBookings.size() == 0){
+			TypedResult retrieveBookings = esql.service().recentBookings(customerID, HotelService.RECENT_PAGE_SIZE, lastDate, lastID);
 
-                        System.out.println("You have no recent bookings on file.");
-                        System.out.println();
-                }
+			if(retrieveBookings.rowCount() == 0){
 
-		else if(startLast5 < 0){
+				if(lastDate == null)
+					System.out.println("You have no recent bookings on file.");
+				else
+					System.out.println("You have no older bookings on file.");
+				System.out.println();
+				break;
+			}
 
-                        for(int i = 0; i < retrieveBookings.size(); i++){
+			for(int i = 0; i < retrieveBookings.rowCount(); i++){
 
 				System.out.print("Hotel ID: ");
-                                System.out.print(retrieveBookings.get(i).get(0));
-                                System.out.print("\nRoom Number: ");
-				System.out.print(retrieveBookings.get(i).get(1));
+				System.out.print(retrieveBookings.getInt(i, 0));
+				System.out.print("\nRoom Number: ");
+				System.out.print(retrieveBookings.getInt(i, 1));
 				System.out.print("\nRoom Price: $");
-				System.out.print(retrieveBookings.get(i).get(2));
+				System.out.print(retrieveBookings.getInt(i, 2));
 				System.out.print("\nBooking Date: ");
-				System.out.print(retrieveBookings.get(i).get(3));
-                                System.out.println();
+				System.out.print(retrieveBookings.getDate(i, 3));
 				System.out.println();
-                        }
-                }
+				System.out.println();
+			}
 
-                else{
+			if(retrieveBookings.rowCount() < HotelService.RECENT_PAGE_SIZE)
+				break;
 
-                        for(int i = startLast5; i < retrieveBookings.size(); i++){
+			// the next page continues after the last booking shown.
+			int last = retrieveBookings.rowCount() - 1;
+			lastDate = retrieveBookings.getDate(last, 3);
+			lastID = retrieveBookings.getInt(last, 4);
 
-				System.out.print("Hotel ID: ");
-                                System.out.print(retrieveBookings.get(i).get(0));
-                                System.out.print("\nRoom Number: ");
-                                System.out.print(retrieveBookings.get(i).get(1));
-                                System.out.print("\nRoom Price: $");
-                                System.out.print(retrieveBookings.get(i).get(2));
-                                System.out.print("\nBooking Date: ");
-                                System.out.print(retrieveBookings.get(i).get(3));
-                                System.out.println();
-                                System.out.println();
-                        }
-                }
+			System.out.println("1. Show older bookings");
+			System.out.println("2. Return to menu");
+			if(readChoice() != 1)
+				break;
+			System.out.println();
+		}
 
 	}
 
@@ -1086,9 +1522,13 @@ catch(Exception e){
 
 		System.err.println(e.getMessage());
 	}
+	finally{
+		op.end();
+	}
 
 }
-   public static void updateRoomInfo(Hotel esql) {
+   public static void updateRoomInfo(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("updateRoomInfo");
 	try{
 
 		System.out.println();
@@ -1103,20 +1543,14 @@ catch(Exception e){
 		System.out.print("The following is a list of hotels that you have access to edit its information.");
 		System.out.println("\n");
 
-		String validIDS = "SELECT DISTINCT h.hotelName, h.hotelID ";
-		validIDS += "FROM Hotel h, Rooms r ";
-		validIDS += "WHERE h.hotelID = r.hotelID AND managerUserID = ";
-		validIDS += currentUserID;
-		validIDS += " ORDER BY h.hotelID";
-	
-                List<List<String>> retrieveHotels = esql.executeQueryAndReturnResult(validIDS);
+                TypedResult retrieveHotels = session.managedHotels();
 
-		for(int a = 0; a < retrieveHotels.size(); a++){
+		for(int a = 0; a < retrieveHotels.rowCount(); a++){
 
 			System.out.print("Hotel Name: ");
-			System.out.print(retrieveHotels.get(a).get(0));
+			System.out.print(retrieveHotels.getString(a, 0));
 			System.out.print("\nHotel ID: ");
-			System.out.print(retrieveHotels.get(a).get(1));
+			System.out.print(retrieveHotels.getString(a, 1));
 			System.out.println("\n");
 		}
                 
@@ -1124,8 +1558,8 @@ catch(Exception e){
                 String hotelID = in.readLine();
 
                 while(checker){
-                        for(int i = 0; i < retrieveHotels.size(); i++){
-                                if(hotelID.equals(retrieveHotels.get(i).get(1))){
+                        for(int i = 0; i < retrieveHotels.rowCount(); i++){
+                                if(hotelID.equals(retrieveHotels.getString(i, 1))){
                                         checker = false;
                                 }
                         }
@@ -1139,24 +1573,19 @@ catch(Exception e){
 		System.out.println();
 		System.out.print("--------------------------------------------------------------\n\n");		
 
-                String validRoomNums = "SELECT roomNumber, price, imageURL ";
-                validRoomNums += "FROM Rooms r ";
-                validRoomNums += "WHERE hotelID = ";
-                validRoomNums += hotelID;
-
-                List<List<String>> retrieveRooms = esql.executeQueryAndReturnResult(validRoomNums);
+                TypedResult retrieveRooms = esql.service().rooms(Integer.parseInt(hotelID));
 
 		System.out.print("The following is a list of rooms of the hotel you chose.");
 		System.out.println("\n");
 
-		for(int a = 0; a < retrieveRooms.size(); a++){
+		for(int a = 0; a < retrieveRooms.rowCount(); a++){
 
                         System.out.print("Room Number: ");
-                        System.out.print(retrieveRooms.get(a).get(0));
+                        System.out.print(retrieveRooms.getString(a, 0));
                         System.out.print("\nRoom Price: $");
-                        System.out.print(retrieveRooms.get(a).get(1));
+                        System.out.print(retrieveRooms.getString(a, 1));
 			System.out.print("\nImage URL: ");
-			System.out.print(retrieveRooms.get(a).get(2));
+			System.out.print(retrieveRooms.getString(a, 2));
                         System.out.println("\n");
                 }
                 boolean checkRoom = false;
@@ -1166,8 +1595,8 @@ catch(Exception e){
 
                 while(!checkRoom){
 
-                        for(int i = 0; i < retrieveRooms.size(); i++){
-                                if(roomNum.equals(retrieveRooms.get(i).get(0))){
+                        for(int i = 0; i < retrieveRooms.rowCount(); i++){
+                                if(roomNum.equals(retrieveRooms.getString(i, 0))){
                                         checkRoom = true;
                                 }
                         }
@@ -1212,22 +1641,7 @@ catch(Exception e){
 
 			System.out.println();
 			
-			String updatePrice = "UPDATE Rooms SET price = ";
-			updatePrice += newPrice;
-			updatePrice += " WHERE hotelID = ";
-			updatePrice += hotelID;
-			updatePrice += " AND roomNumber = ";
-			updatePrice += roomNum;
-
-			esql.executeUpdate(updatePrice);
-
-			Timestamp currentTime = new Timestamp(System.currentTimeMillis());
-			String updateTime = currentTime.toString();
-			java.util.Date theDate = new java.util.Date();
-	
-			String newUpdate = String.format("INSERT INTO RoomUpdatesLog (managerID, hotelID, roomNumber, updatedOn) VALUES ('%s', '%s', '%s', '%s');", currentUserID, hotelID, roomNum, theDate); 
-
-			esql.executeUpdate(newUpdate);
+			esql.service().updateRoom(session.userID(), Integer.parseInt(hotelID), Integer.parseInt(roomNum), Integer.parseInt(newPrice.trim()), null);
 
 			System.out.print("Price successfully updated.\n\n");
 			System.out.print("--------------------------------------------------------------\n");	
@@ -1240,22 +1654,7 @@ catch(Exception e){
 			
 			System.out.println();
 
-                        String updateImage = "UPDATE Rooms SET imageURL = '";
-                        updateImage += newImage;
-                        updateImage += "' WHERE hotelID = ";
-                        updateImage += hotelID;
-                        updateImage += " AND roomNumber = ";
-                        updateImage += roomNum;
-
-                        esql.executeUpdate(updateImage);
-
-                        Timestamp currentTime = new Timestamp(System.currentTimeMillis());
-                        String updateTime = currentTime.toString();
-                        java.util.Date theDate = new java.util.Date();
-
-                        String newUpdate = String.format("INSERT INTO RoomUpdatesLog (managerID, hotelID, roomNumber, updatedOn) VALUES ('%s', '%s', '%s', '%s');", currentUserID, hotelID, roomNum, theDate);
-
-                        esql.executeUpdate(newUpdate);
+                        esql.service().updateRoom(session.userID(), Integer.parseInt(hotelID), Integer.parseInt(roomNum), null, newImage);
 
                         System.out.print("Image URL successfully updated.");
 			System.out.print("\n\n--------------------------------------------------------------\n");
@@ -1301,8 +1700,12 @@ catch(Exception e){
 		
 		System.err.println(e.getMessage());
 	}
+	finally{
+		op.end();
+	}
 }
-   public static void viewRecentUpdates(Hotel esql) {
+   public static void viewRecentUpdates(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewRecentUpdates");
 	
 	try{
 		
@@ -1312,72 +1715,66 @@ catch(Exception e){
                 System.out.println();
 		System.out.println();
 
-                String validIDS = "SELECT DISTINCT h.hotelName, h.hotelID ";
-                validIDS += "FROM Hotel h, Rooms r ";
-                validIDS += "WHERE h.hotelID = r.hotelID AND managerUserID = ";
-                validIDS += currentUserID;
-		validIDS += " ORDER BY h.hotelID";
-
-                List<List<String>> retrieveHotels = esql.executeQueryAndReturnResult(validIDS);
+                TypedResult retrieveHotels = session.managedHotels();
 
-		for(int a = 0; a < retrieveHotels.size(); a++){
+		for(int a = 0; a < retrieveHotels.rowCount(); a++){
 
                         System.out.print("Hotel Name: ");
-                        System.out.print(retrieveHotels.get(a).get(0));
+                        System.out.print(retrieveHotels.getString(a, 0));
                         System.out.print("\nHotel ID: ");
-                        System.out.print(retrieveHotels.get(a).get(1));
+                        System.out.print(retrieveHotels.getString(a, 1));
                         System.out.println("\n");
                 }
 
-		String findUpdates = "SELECT * FROM RoomUpdatesLog ";
-		findUpdates += "WHERE managerID = ";
-		findUpdates += currentUserID;
+		System.out.print("--------------------------------------------------------------\n\n");
 
-                List<List<String>> retrieve = esql.executeQueryAndReturnResult(findUpdates);
+		System.out.print("Here are the most recent updates of your hotels, newest first.\n");
+		System.out.println();
 
-		 System.out.print("--------------------------------------------------------------\n\n");
+		int managerID = session.userID();
+		Timestamp lastUpdate = null;
+		int lastNumber = 0;
 
-                System.out.print("Here are the last 5 updates of your hotels.\n");
-		System.out.println();
+		while(true){
 
-		int startLast5 = retrieve.size() - 5;
+			TypedResult retrieve = esql.service().recentUpdates(managerID, HotelService.RECENT_PAGE_SIZE, lastUpdate, lastNumber);
+
+			if(retrieve.rowCount() == 0){
+
+				System.out.println(lastUpdate == null ? "There are no updates on file." : "There are no older updates on file.");
+				System.out.println();
+				break;
+			}
+
+			for(int i = 0; i < retrieve.rowCount(); i++){
 
-		if(startLast5 < 0){
-			
-			for(int i = 0; i < retrieve.size(); i++){
-			
 				System.out.print("Update Number: ");
-                                System.out.print(retrieve.get(i).get(0));
-                                System.out.print("  Manager ID: ");
-                                System.out.print(retrieve.get(i).get(1));
-                                System.out.print("  Hotel ID: ");
-                                System.out.print(retrieve.get(i).get(2));
-                                System.out.print("  Room Number: ");
-                                System.out.print(retrieve.get(i).get(3));
+				System.out.print(retrieve.getInt(i, 0));
+				System.out.print("  Manager ID: ");
+				System.out.print(retrieve.getInt(i, 1));
+				System.out.print("  Hotel ID: ");
+				System.out.print(retrieve.getInt(i, 2));
+				System.out.print("  Room Number: ");
+				System.out.print(retrieve.getInt(i, 3));
 				System.out.print("  Date Updated: ");
-				System.out.print(retrieve.get(i).get(4));
-                                System.out.println();
-                                System.out.println();
-				
-			}	
-		}
-		else{
+				System.out.print(retrieve.getString(i, 4));
+				System.out.println();
+				System.out.println();
+			}
 
-                	for(int i = startLast5; i < retrieve.size(); i++){
+			if(retrieve.rowCount() < HotelService.RECENT_PAGE_SIZE)
+				break;
 
-				System.out.print("Update Number: ");
-                                System.out.print(retrieve.get(i).get(0));
-                                System.out.print("  Manager ID: ");
-                                System.out.print(retrieve.get(i).get(1));
-                                System.out.print("  Hotel ID: ");
-                                System.out.print(retrieve.get(i).get(2));
-                                System.out.print("  Room Number: ");
-                                System.out.print(retrieve.get(i).get(3));
-                                System.out.print("  Date Updated: ");
-                                System.out.print(retrieve.get(i).get(4));
-                                System.out.println();
-                                System.out.println();
-                	}
+			// the next page continues after the last update shown.
+			int last = retrieve.rowCount() - 1;
+			lastUpdate = retrieve.getTimestamp(last, 4);
+			lastNumber = retrieve.getInt(last, 0);
+
+			System.out.println("1. Show older updates");
+			System.out.println("2. Return to menu");
+			if(readChoice() != 1)
+				break;
+			System.out.println();
 		}
 
 	}
@@ -1385,8 +1782,30 @@ catch(Exception e){
 
 		System.err.println(e.getMessage());
 	}
+	finally{
+		op.end();
+	}
 }
-   public static void viewBookingHistoryofHotel(Hotel esql) {
+   // prints one row of the booking history as it is streamed from the database.
+   private static final RowHandler printBooking = new RowHandler(){
+      public void handle (ResultSet rs) throws SQLException {
+         System.out.print("Booking ID: ");
+         System.out.print(rs.getString(1));
+         System.out.print("  Booking Date: ");
+         System.out.print(rs.getString(2));
+         System.out.print("  Hotel ID: ");
+         System.out.print(rs.getString(3));
+         System.out.print("  Room Number: ");
+         System.out.print(rs.getString(4).trim());
+         System.out.print("  Customer Name: ");
+         System.out.print(rs.getString(5).trim());
+         System.out.println();
+         System.out.println();
+      }
+   };
+
+   public static void viewBookingHistoryofHotel(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewBookingHistoryofHotel");
 
 	try{
 		System.out.println();
@@ -1474,42 +1893,14 @@ catch(Exception e){
                 	System.out.println();
                 	System.out.println();
 
-			String query = "SELECT rb.bookingID, rb.bookingDate, rb.hotelID, rb.roomNumber, u.name ";
-                	query += "FROM RoomBookings rb, Hotel h, Users u ";
-                	query += "WHERE rb.customerID = u.userID AND rb.hotelID = h.hotelID AND h.managerUserID = ";
-                	query += currentUserID;
-			query += " AND rb.bookingDate BETWEEN '";
-			query += firstDate;
-			query += "' AND '";
-			query += secondDate;
-                	query += "' ORDER BY rb.bookingDate";
+			int found = esql.service().bookingHistory(session.userID(), LocalDate.parse(firstDate), LocalDate.parse(secondDate), printBooking);
 
-			List<List<String>> retrieve = esql.executeQueryAndReturnResult(query);
-
-			if(retrieve.size() == 0){
+			if(found == 0){
 
                         	System.out.print("There is no booking information for the hotel(s) you manage for the dates you chose.");
                         	System.out.println();
                         	System.out.println();
                 	}
-                	else{
-
-                        	for(int i = 0; i < retrieve.size(); i++){
-
-                                	System.out.print("Booking ID: ");
-                                	System.out.print(retrieve.get(i).get(0));
-                                	System.out.print("  Booking Date: ");
-                                	System.out.print(retrieve.get(i).get(1));
-                                	System.out.print("  Hotel ID: ");
-                                	System.out.print(retrieve.get(i).get(2));
-                                	System.out.print("  Room Number: ");
-                                	System.out.print(retrieve.get(i).get(3).trim());
-                                	System.out.print("  Customer Name: ");
-                                	System.out.print(retrieve.get(i).get(4).trim());
-                                	System.out.println();
-                                	System.out.println();
-                        	}
-                	}
 
 		}
 		else{
@@ -1517,39 +1908,14 @@ catch(Exception e){
 		System.out.print("The following is the booking information of the hotel(s) you manage.\n\n");
 		System.out.println();
 
-		String query = "SELECT rb.bookingID, rb.bookingDate, rb.hotelID, rb.roomNumber, u.name ";
-		query += "FROM RoomBookings rb, Hotel h, Users u ";
-		query += "WHERE rb.customerID = u.userID AND rb.hotelID = h.hotelID AND h.managerUserID = ";
-		query += currentUserID;
-		query += " ORDER BY rb.bookingDate";
+		int found = esql.service().bookingHistory(session.userID(), null, null, printBooking);
 
-		//esql.executeQueryAndPrintResult(query);
-		List<List<String>> retrieve = esql.executeQueryAndReturnResult(query);
-
-		if(retrieve.size() == 0){
+		if(found == 0){
 			
 			System.out.print("There is no booking information for the hotel(s) you manage.");
 			System.out.println();
 			System.out.println();
 		}
-		else{
-
-			for(int i = 0; i < retrieve.size(); i++){
-				
-				System.out.print("Booking ID: ");
-                                System.out.print(retrieve.get(i).get(0));
-                                System.out.print("  Booking Date: ");
-                                System.out.print(retrieve.get(i).get(1));
-                                System.out.print("  Hotel ID: ");
-                                System.out.print(retrieve.get(i).get(2));
-                                System.out.print("  Room Number: ");
-                                System.out.print(retrieve.get(i).get(3).trim());
-                                System.out.print("  Customer Name: ");
-                                System.out.print(retrieve.get(i).get(4).trim());
-                                System.out.println();
-                                System.out.println();
-			}
-		}
 
 		}
 		System.out.println();
@@ -1560,8 +1926,12 @@ catch(Exception e){
 		System.err.println(e.getMessage());
 
 	}
+	finally{
+		op.end();
+	}
 }
-   public static void viewRegularCustomers(Hotel esql) {
+   public static void viewRegularCustomers(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewRegularCustomers");
 
 	try{
 
@@ -1571,20 +1941,14 @@ catch(Exception e){
                 System.out.println();
                 System.out.println();
 
-                String validIDS = "SELECT DISTINCT h.hotelName, h.hotelID ";
-                validIDS += "FROM Hotel h, Rooms r ";
-                validIDS += "WHERE h.hotelID = r.hotelID AND managerUserID = ";
-                validIDS += currentUserID;
-                validIDS += " ORDER BY h.hotelID";
-
-		List<List<String>> retrieveHotels = esql.executeQueryAndReturnResult(validIDS);
+		TypedResult retrieveHotels = session.managedHotels();
 
-		for(int a = 0; a < retrieveHotels.size(); a++){
+		for(int a = 0; a < retrieveHotels.rowCount(); a++){
 
                         System.out.print("Hotel Name: ");
-                        System.out.print(retrieveHotels.get(a).get(0));
+                        System.out.print(retrieveHotels.getString(a, 0));
                         System.out.print("\nHotel ID: ");
-                        System.out.print(retrieveHotels.get(a).get(1));
+                        System.out.print(retrieveHotels.getString(a, 1));
                         System.out.println("\n");
                 }
 
@@ -1595,8 +1959,8 @@ catch(Exception e){
 
                 while(checker){
 
-                        for(int i = 0; i < retrieveHotels.size(); i++){
-                                if(hotelID.equals(retrieveHotels.get(i).get(1))){
+                        for(int i = 0; i < retrieveHotels.rowCount(); i++){
+                                if(hotelID.equals(retrieveHotels.getString(i, 1))){
                                         checker = false;
                                 }
                         }
@@ -1607,72 +1971,16 @@ catch(Exception e){
                         }
                 }
 
-		String query = "SELECT COUNT(rb.customerID), u.name ";
-		query += "FROM RoomBookings rb, Users u ";
-		query += "WHERE rb.customerID = u.userID AND rb.hotelID = ";
-		query += hotelID;
-		query += " GROUP BY u.name";
-
-		
-		List<List<String>> retrieve = esql.executeQueryAndReturnResult(query);
-
-		ArrayList<String> potentialNames = new ArrayList<String>();
-		ArrayList<String> customerID = new ArrayList<String>();
-		ArrayList<String> numBookings = new ArrayList<String>();
-		ArrayList<String> top5 = new ArrayList<String>();
-
-		int currMax = Integer.parseInt(retrieve.get(0).get(0));
-
-		for(int k = 0; k < retrieve.size(); k++){
-
-			int currCount = Integer.parseInt(retrieve.get(k).get(0));
-			
-			if(currCount >= currMax){
-
-				potentialNames.add(retrieve.get(k).get(1));
-				numBookings.add(retrieve.get(k).get(0));
-				currMax = currCount;
-			}
-		}
-
-		String query1 = "SELECT DISTINCT rb.customerID, u.name ";
-                query1 += "FROM RoomBookings rb, Users u ";
-                query1 += "WHERE rb.customerID = u.userID AND rb.hotelID = ";
-                query1 += hotelID;
-		query1 += " ORDER BY rb.customerID";
-
-                List<List<String>> retrieve2 = esql.executeQueryAndReturnResult(query1);
-
-		int endIndex = potentialNames.size() - 5;
-		List<String> necessBookings = numBookings.subList(endIndex, numBookings.size());
-	
-		for(int l = endIndex; l < potentialNames.size(); l++){
-			
-			top5.add(potentialNames.get(l));
-		}
+		TypedResult top5 = esql.service().topCustomers(Integer.parseInt(hotelID), HotelService.TOP_CUSTOMERS);
 
 		System.out.println();
 	        System.out.print("--------------------------------------------------------------\n\n");
 		System.out.print("The following is a list of the top 5 customers who made the most bookings in this hotel.\n\n\n");
 
-		for(int e = 0; e < top5.size(); e++){
-
-			for(int f = 0; f < retrieve2.size(); f++){
-
-				if(top5.get(e).equals(retrieve2.get(f).get(1))){
-
-					customerID.add(retrieve2.get(f).get(0));
-				}
-
-			}	
+		for(int p = 0; p < top5.rowCount(); p++){
 
-			
-		}
-
-
-		for(int p = top5.size() - 1; p >= 0; p--){
-
-			System.out.print("Customer ID: " + customerID.get(p) + "  Customer Name: " + top5.get(p).trim() + "  Number Bookings: " + necessBookings.get(p));
+			String name = top5.isNull(p, 1) ? "" : top5.getString(p, 1).trim();
+			System.out.print("Customer ID: " + top5.getInt(p, 0) + "  Customer Name: " + name + "  Number Bookings: " + top5.getInt(p, 2));
 			System.out.println();
 			System.out.println();
 		}
@@ -1685,8 +1993,12 @@ catch(Exception e){
 	
 		System.err.println(e.getMessage());	
 	}
+	finally{
+		op.end();
+	}
 }
-   public static void placeRoomRepairRequests(Hotel esql) {
+   public static void placeRoomRepairRequests(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("placeRoomRepairRequests");
 
 	try{
 
@@ -1696,20 +2008,14 @@ catch(Exception e){
                 System.out.println();
                 System.out.println();
 
-                String validIDS = "SELECT DISTINCT h.hotelName, h.hotelID ";
-                validIDS += "FROM Hotel h, Rooms r ";
-                validIDS += "WHERE h.hotelID = r.hotelID AND managerUserID = ";
-                validIDS += currentUserID;
-                validIDS += " ORDER BY h.hotelID";
+                TypedResult retrieveHotels = session.managedHotels();
 
-                List<List<String>> retrieveHotels = esql.executeQueryAndReturnResult(validIDS);
-
-		for(int a = 0; a < retrieveHotels.size(); a++){
+		for(int a = 0; a < retrieveHotels.rowCount(); a++){
 
                         System.out.print("Hotel Name: ");
-                        System.out.print(retrieveHotels.get(a).get(0));
+                        System.out.print(retrieveHotels.getString(a, 0));
                         System.out.print("\nHotel ID: ");
-                        System.out.print(retrieveHotels.get(a).get(1));
+                        System.out.print(retrieveHotels.getString(a, 1));
                         System.out.println("\n");
                 }
 
@@ -1720,8 +2026,8 @@ catch(Exception e){
 
                 while(checker){
 
-                        for(int i = 0; i < retrieveHotels.size(); i++){
-                                if(hotelID.equals(retrieveHotels.get(i).get(1))){
+                        for(int i = 0; i < retrieveHotels.rowCount(); i++){
+                                if(hotelID.equals(retrieveHotels.getString(i, 1))){
                                         checker = false;
                                 }
                         }
@@ -1737,20 +2043,14 @@ catch(Exception e){
 		System.out.print("The following is a list of rooms of the hotel you chose.");
                 System.out.println("\n");		
 
-                String validRoomNums = "SELECT roomNumber, price ";
-                validRoomNums += "FROM Rooms r ";
-                validRoomNums += "WHERE hotelID = ";
-                validRoomNums += hotelID;
-		validRoomNums += " ORDER BY roomNumber";
-
-                List<List<String>> retrieveRooms = esql.executeQueryAndReturnResult(validRoomNums);
+                TypedResult retrieveRooms = esql.service().rooms(Integer.parseInt(hotelID));
 
-		for(int a = 0; a < retrieveRooms.size() / 2; a++){
+		for(int a = 0; a < retrieveRooms.rowCount() / 2; a++){
 
                         System.out.print("Room Number: ");
-                        System.out.print(retrieveRooms.get(a).get(0));
+                        System.out.print(retrieveRooms.getString(a, 0));
                         System.out.print("\tRoom Number: ");
-			System.out.print(retrieveRooms.get(a + 5).get(0));
+			System.out.print(retrieveRooms.getString(a + 5, 0));
 			System.out.println("\n");
                 }
 
@@ -1760,8 +2060,8 @@ catch(Exception e){
 
                 while(!checkRoom){
 
-                        for(int i = 0; i < retrieveRooms.size(); i++){
-                                if(roomNum.equals(retrieveRooms.get(i).get(0))){
+                        for(int i = 0; i < retrieveRooms.rowCount(); i++){
+                                if(roomNum.equals(retrieveRooms.getString(i, 0))){
                                         checkRoom = true;
                                 }
                         }
@@ -1780,18 +2080,14 @@ catch(Exception e){
                 System.out.println();
                 System.out.println();
 
-                String validComp = "SELECT mc.name, mc.companyID ";
-                validComp += "FROM MaintenanceCompany mc ";
-                validComp += " ORDER BY mc.companyID";
-
-                List<List<String>> retrieveComp = esql.executeQueryAndReturnResult(validComp);
+                TypedResult retrieveComp = esql.service().maintenanceCompanies();
 
-		for(int a = 0; a < retrieveComp.size(); a++){
+		for(int a = 0; a < retrieveComp.rowCount(); a++){
 
                         System.out.print("Company Name: ");
-                        System.out.print(retrieveComp.get(a).get(0));
+                        System.out.print(retrieveComp.getString(a, 0));
                         System.out.print("\nCompany ID: ");
-                        System.out.print(retrieveComp.get(a).get(1));
+                        System.out.print(retrieveComp.getString(a, 1));
                         System.out.println("\n");
                 }
 
@@ -1802,8 +2098,8 @@ catch(Exception e){
 
                 while(!checkComp){
 
-                        for(int i = 0; i < retrieveComp.size(); i++){
-                                if(companyID.equals(retrieveComp.get(i).get(1))){
+                        for(int i = 0; i < retrieveComp.rowCount(); i++){
+                                if(companyID.equals(retrieveComp.getString(i, 1))){
                                         checkComp = true;
                                 }
                         }
@@ -1819,18 +2115,7 @@ catch(Exception e){
 
 		LocalDate theDate = LocalDate.now();
 		
-		String query = String.format("INSERT INTO RoomRepairs (companyID, hotelID, roomNumber, repairDate) VALUES ('%s','%s','%s','%s')", companyID, hotelID, roomNum, theDate);
-
-                esql.executeUpdate(query);
-
-		String getRepairID = "SELECT repairID FROM RoomRepairs";
-		
-		List<List<String>> retrieve = esql.executeQueryAndReturnResult(getRepairID);
-
-		String repairID = retrieve.get(retrieve.size() - 1).get(0);
-
-		String query2 = String.format("INSERT INTO RoomRepairRequests (managerID, repairID) VALUES ('%s','%s')", currentUserID, repairID);
-		esql.executeUpdate(query2);
+		esql.service().placeRepair(session.userID(), Integer.parseInt(companyID), Integer.parseInt(hotelID), Integer.parseInt(roomNum), theDate);
 
 
 		System.out.println();
@@ -1846,8 +2131,12 @@ catch(Exception e){
 
 		System.err.println(e.getMessage());
 	}
+	finally{
+		op.end();
+	}
 }
-   public static void viewRoomRepairHistory(Hotel esql) {
+   public static void viewRoomRepairHistory(Hotel esql, Session session) {
+	Metrics.Operation op = Metrics.begin("viewRoomRepairHistory");
 
 	try{
 
@@ -1857,20 +2146,14 @@ catch(Exception e){
                 System.out.println();
                 System.out.println();
 
-                String validIDS = "SELECT DISTINCT h.hotelName, h.hotelID ";
-                validIDS += "FROM Hotel h, Rooms r ";
-                validIDS += "WHERE h.hotelID = r.hotelID AND managerUserID = ";
-                validIDS += currentUserID;
-                validIDS += " ORDER BY h.hotelID";
+                TypedResult retrieveHotels = session.managedHotels();
 
-                List<List<String>> retrieveHotels = esql.executeQueryAndReturnResult(validIDS);
-
-                for(int a = 0; a < retrieveHotels.size(); a++){
+                for(int a = 0; a < retrieveHotels.rowCount(); a++){
 
                         System.out.print("Hotel Name: ");
-                        System.out.print(retrieveHotels.get(a).get(0));
+                        System.out.print(retrieveHotels.getString(a, 0));
                         System.out.print("\nHotel ID: ");
-                        System.out.print(retrieveHotels.get(a).get(1));
+                        System.out.print(retrieveHotels.getString(a, 1));
                         System.out.println("\n");
                 }
 
@@ -1878,26 +2161,21 @@ catch(Exception e){
 		System.out.print("The following is a list of all the room repair requests history for the hotels you manage.\n");
 		System.out.println();
 
-		String query = "SELECT rr.companyID, rr.hotelID, rr.roomNumber, rr.repairDate ";
-		query += "FROM RoomRepairs rr, RoomRepairRequests q ";
-		query += "WHERE rr.repairID = q.repairID AND q.managerID = ";
-		query += currentUserID;
-
-		List<List<String>> retrieve = esql.executeQueryAndReturnResult(query);
+		TypedResult retrieve = esql.service().repairHistory(session.userID());
 
-		for(int i = 0; i < retrieve.size(); i++){
+		for(int i = 0; i < retrieve.rowCount(); i++){
 
                         System.out.print("Company ID: ");
-                        System.out.print(retrieve.get(i).get(0));
+                        System.out.print(retrieve.getString(i, 0));
 			System.out.println();
                         System.out.print("Hotel ID: ");
-                        System.out.print(retrieve.get(i).get(1));
+                        System.out.print(retrieve.getString(i, 1));
 			System.out.println();
                         System.out.print("Room Number: ");
-                        System.out.print(retrieve.get(i).get(2));
+                        System.out.print(retrieve.getString(i, 2));
 			System.out.println();
                         System.out.print("Repair Date: ");
-                        System.out.print(retrieve.get(i).get(3));
+                        System.out.print(retrieve.getString(i, 3));
                         System.out.println();
                         System.out.println();
 
@@ -1909,6 +2187,9 @@ catch(Exception e){
 
 		System.err.println(e.getMessage());
 	}
+	finally{
+		op.end();
+	}
 }
 
 }//end Hotel
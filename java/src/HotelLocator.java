@@ -0,0 +1,330 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * This class is an in-memory spatial index over hotel locations answering
+ * "k nearest hotels" and "hotels within R km" with real geodesic distance.
+ *
+ * Every hotel is placed on the unit sphere as an (x, y, z) vector and the
+ * vectors are stored in a KD-tree. The straight-line (chord) distance between
+ * two such vectors grows with the great-circle distance, so the tree can
+ * prune with plain coordinate differences and the haversine formula is only
+ * evaluated for the hotels that are returned. An index is immutable; when the
+ * hotels change a new one is built and swapped in.
+ */
+public class HotelLocator {
+
+   // mean radius of the earth used by the haversine formula.
+   public static final double EARTH_RADIUS_KM = 6371.0088;
+
+   /**
+    * One hotel found by a search, with its distance from the search point.
+    */
+   public static final class Match {
+      public final int hotelID;
+      public final String hotelName;
+      public final double latitude;
+      public final double longitude;
+      public final double distanceKm;
+
+      Match(int hotelID, String hotelName, double latitude, double longitude, double distanceKm){
+         this.hotelID = hotelID;
+         this.hotelName = hotelName;
+         this.latitude = latitude;
+         this.longitude = longitude;
+         this.distanceKm = distanceKm;
+      }
+   }//end Match
+
+   private final int[] _ids;
+   private final String[] _names;
+   private final double[] _lat;
+   private final double[] _long;
+
+   // unit vectors in tree order, three coordinates per hotel.
+   private final double[] _xyz;
+   // hotel index stored at each tree position.
+   private final int[] _order;
+
+   private final long _builtAt = System.currentTimeMillis();
+
+   /**
+    * Builds an index over the given hotels. The arrays are indexed alike and
+    * must not be changed afterwards.
+    */
+   public HotelLocator(int[] ids, String[] names, double[] latitudes, double[] longitudes){
+      int n = ids.length;
+      this._ids = ids;
+      this._names = names;
+      this._lat = latitudes;
+      this._long = longitudes;
+      this._order = new int[n];
+      for (int i = 0; i < n; ++i)
+         _order[i] = i;
+
+      double[] points = new double[3 * n];
+      for (int i = 0; i < n; ++i)
+         toUnitVector(latitudes[i], longitudes[i], points, 3 * i);
+      build(points, 0, n, 0);
+
+      this._xyz = new double[3 * n];
+      for (int t = 0; t < n; ++t)
+         System.arraycopy(points, 3 * _order[t], _xyz, 3 * t, 3);
+   }//end HotelLocator
+
+   /**
+    * Builds an index from a result whose first four columns are hotelID,
+    * hotelName, latitude and longitude.
+    */
+   public static HotelLocator fromResult(TypedResult hotels){
+      int n = hotels.rowCount();
+      int[] ids = new int[n];
+      String[] names = new String[n];
+      double[] lat = new double[n];
+      double[] lon = new double[n];
+      for (int i = 0; i < n; ++i){
+         ids[i] = hotels.getInt(i, 0);
+         String name = hotels.getString(i, 1);
+         names[i] = name == null ? null : name.trim();
+         lat[i] = hotels.getDouble(i, 2);
+         lon[i] = hotels.getDouble(i, 3);
+      }
+      return new HotelLocator(ids, names, lat, lon);
+   }//end fromResult
+
+   /**
+    * @return the number of hotels in the index
+    */
+   public int size(){
+      return _ids.length;
+   }
+
+   /**
+    * @return the time the index was built, in milliseconds since the epoch
+    */
+   public long builtAt(){
+      return _builtAt;
+   }
+
+   /**
+    * Method to find the k hotels closest to a location.
+    *
+    * @param latitude the latitude of the search point in degrees
+    * @param longitude the longitude of the search point in degrees
+    * @param k the maximum number of hotels returned
+    * @return the hotels found, nearest first
+    */
+   public List<Match> nearest(double latitude, double longitude, int k){
+      if (k <= 0 || size() == 0)
+         return new ArrayList<Match>();
+      double[] q = new double[3];
+      toUnitVector(latitude, longitude, q, 0);
+
+      TopK heap = new TopK(Math.min(k, size()));
+      searchNearest(q, 0, size(), 0, heap);
+
+      List<Match> result = new ArrayList<Match>(heap.size);
+      for (int i = 0; i < heap.size; ++i)
+         result.add(match(heap.positions[i], latitude, longitude));
+      Collections.sort(result, BY_DISTANCE);
+      return result;
+   }//end nearest
+
+   /**
+    * Method to find every hotel within a distance of a location.
+    *
+    * @param latitude the latitude of the search point in degrees
+    * @param longitude the longitude of the search point in degrees
+    * @param radiusKm the search radius in kilometres
+    * @return the hotels found, nearest first
+    */
+   public List<Match> within(double latitude, double longitude, double radiusKm){
+      List<Match> result = new ArrayList<Match>();
+      if (radiusKm < 0 || size() == 0)
+         return result;
+      double[] q = new double[3];
+      toUnitVector(latitude, longitude, q, 0);
+
+      double angle = Math.min(Math.PI, radiusKm / EARTH_RADIUS_KM);
+      double chord = 2.0 * Math.sin(angle / 2.0);
+      // a little slack so rounding never drops a hotel right on the edge.
+      double limit = chord * chord + 1e-12;
+
+      List<Integer> found = new ArrayList<Integer>();
+      searchWithin(q, 0, size(), 0, limit, found);
+      for (int t : found){
+         Match m = match(t, latitude, longitude);
+         if (m.distanceKm <= radiusKm)
+            result.add(m);
+      }
+      Collections.sort(result, BY_DISTANCE);
+      return result;
+   }//end within
+
+   /**
+    * Method to compute the great-circle distance between two locations with
+    * the haversine formula.
+    *
+    * @return the distance in kilometres
+    */
+   public static double haversineKm(double lat1, double long1, double lat2, double long2){
+      double dLat = Math.toRadians(lat2 - lat1);
+      double dLong = Math.toRadians(long2 - long1);
+      double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+               + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+               * Math.sin(dLong / 2) * Math.sin(dLong / 2);
+      return 2.0 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+   }//end haversineKm
+
+   private static final Comparator<Match> BY_DISTANCE = new Comparator<Match>(){
+      public int compare(Match a, Match b){
+         int c = Double.compare(a.distanceKm, b.distanceKm);
+         return c != 0 ? c : Integer.compare(a.hotelID, b.hotelID);
+      }
+   };
+
+   private Match match(int position, double latitude, double longitude){
+      int h = _order[position];
+      return new Match(_ids[h], _names[h], _lat[h], _long[h],
+                       haversineKm(latitude, longitude, _lat[h], _long[h]));
+   }
+
+   private void searchNearest(double[] q, int lo, int hi, int depth, TopK heap){
+      if (lo >= hi)
+         return;
+      int mid = (lo + hi) >>> 1;
+      heap.offer(mid, chord2(q, mid));
+
+      int axis = depth % 3;
+      double diff = q[axis] - _xyz[3 * mid + axis];
+      if (diff < 0){
+         searchNearest(q, lo, mid, depth + 1, heap);
+         if (!heap.full() || diff * diff < heap.worst())
+            searchNearest(q, mid + 1, hi, depth + 1, heap);
+      }else{
+         searchNearest(q, mid + 1, hi, depth + 1, heap);
+         if (!heap.full() || diff * diff < heap.worst())
+            searchNearest(q, lo, mid, depth + 1, heap);
+      }
+   }//end searchNearest
+
+   private void searchWithin(double[] q, int lo, int hi, int depth, double limit, List<Integer> found){
+      if (lo >= hi)
+         return;
+      int mid = (lo + hi) >>> 1;
+      if (chord2(q, mid) <= limit)
+         found.add(mid);
+
+      int axis = depth % 3;
+      double diff = q[axis] - _xyz[3 * mid + axis];
+      if (diff < 0 || diff * diff <= limit)
+         searchWithin(q, lo, mid, depth + 1, limit, found);
+      if (diff >= 0 || diff * diff <= limit)
+         searchWithin(q, mid + 1, hi, depth + 1, limit, found);
+   }//end searchWithin
+
+   private double chord2(double[] q, int position){
+      double dx = q[0] - _xyz[3 * position];
+      double dy = q[1] - _xyz[3 * position + 1];
+      double dz = q[2] - _xyz[3 * position + 2];
+      return dx * dx + dy * dy + dz * dz;
+   }
+
+   // arranges _order[lo, hi) so the median on the axis sits in the middle, recursively.
+   private void build(double[] points, int lo, int hi, int depth){
+      if (hi - lo < 2)
+         return;
+      int mid = (lo + hi) >>> 1;
+      int axis = depth % 3;
+      select(points, lo, hi - 1, mid, axis);
+      build(points, lo, mid, depth + 1);
+      build(points, mid + 1, hi, depth + 1);
+   }//end build
+
+   // quickselect on _order so position k holds the k-th smallest coordinate.
+   private void select(double[] points, int lo, int hi, int k, int axis){
+      while (lo < hi){
+         double pivot = points[3 * _order[(lo + hi) >>> 1] + axis];
+         int i = lo, j = hi;
+         while (i <= j){
+            while (points[3 * _order[i] + axis] < pivot) ++i;
+            while (points[3 * _order[j] + axis] > pivot) --j;
+            if (i <= j){
+               int t = _order[i]; _order[i] = _order[j]; _order[j] = t;
+               ++i; --j;
+            }
+         }
+         if (k <= j) hi = j;
+         else if (k >= i) lo = i;
+         else return;
+      }
+   }//end select
+
+   private static void toUnitVector(double latitude, double longitude, double[] out, int offset){
+      double phi = Math.toRadians(latitude);
+      double lambda = Math.toRadians(longitude);
+      out[offset] = Math.cos(phi) * Math.cos(lambda);
+      out[offset + 1] = Math.cos(phi) * Math.sin(lambda);
+      out[offset + 2] = Math.sin(phi);
+   }
+
+   /*
+    * Bounded max-heap keeping the k smallest squared chord distances seen so
+    * far; the root is the worst of them and is replaced when a closer hotel
+    * turns up.
+    */
+   private static final class TopK {
+      final int[] positions;
+      final double[] keys;
+      int size = 0;
+
+      TopK(int k){
+         positions = new int[k];
+         keys = new double[k];
+      }
+
+      boolean full(){
+         return size == keys.length;
+      }
+
+      double worst(){
+         return keys[0];
+      }
+
+      void offer(int position, double key){
+         if (!full()){
+            int i = size++;
+            positions[i] = position;
+            keys[i] = key;
+            while (i > 0){
+               int parent = (i - 1) >>> 1;
+               if (keys[parent] >= keys[i])
+                  break;
+               swap(i, parent);
+               i = parent;
+            }
+         }else if (key < keys[0]){
+            positions[0] = position;
+            keys[0] = key;
+            int i = 0;
+            while (true){
+               int l = 2 * i + 1, r = l + 1, largest = i;
+               if (l < size && keys[l] > keys[largest]) largest = l;
+               if (r < size && keys[r] > keys[largest]) largest = r;
+               if (largest == i)
+                  break;
+               swap(i, largest);
+               i = largest;
+            }
+         }
+      }
+
+      private void swap(int a, int b){
+         int p = positions[a]; positions[a] = positions[b]; positions[b] = p;
+         double k = keys[a]; keys[a] = keys[b]; keys[b] = k;
+      }
+   }//end TopK
+
+}//end HotelLocator
@@ -0,0 +1,573 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * This class serves the operations of HotelService as a JSON API over HTTP,
+ * using the server built into the JDK. It is started with
+ *
+ *    java Hotel <dbname> <port> <user> --serve <http port>
+ *
+ * Every request runs on its own virtual thread when the JVM has them (Java
+ * 21 and later), so a client waiting on the database costs a few hundred
+ * bytes rather than a platform thread; on older JVMs a pool of
+ * hotel.http.threads threads is used instead. The number of queries running
+ * at once is bounded by the connection pool, hotel.pool.maxSize.
+ *
+ * Clients authenticate every request with HTTP Basic authentication, the
+ * userID as user name; each set of credentials gets a Session that later
+ * requests reuse for hotel.http.sessionMillis. Parameters are passed in the query string or, for
+ * POST, as a form encoded body. Dates are yyyy-mm-dd.
+ *
+ *    GET  /hotels                                  every hotel
+ *    GET  /hotels?lat=&lon=                        hotels within 30 units
+ *    GET  /hotels/nearest?lat=&lon=[&count=]       closest hotels
+ *    GET  /hotels/within?lat=&lon=&km=             hotels within a great-circle distance
+ *    GET  /rooms?hotelID=&date=                    rooms with price and availability
+ *    POST /bookings  hotelID, roomNumber, date     book a night
+ *    POST /bookings/stay  hotelID, rooms, first, last   book rooms (comma separated) for a run of nights
+ *    GET  /bookings[?beforeDate=&beforeID=]        the user's bookings, newest first
+ *
+ * and for managers only:
+ *
+ *    GET  /manager/hotels                          hotels the manager manages
+ *    GET  /manager/bookings[?from=&to=]            booking history of those hotels
+ *    GET  /manager/updates[?beforeTime=&beforeNumber=]   recent room updates
+ *    GET  /manager/customers?hotelID=              top customers of a hotel
+ *    POST /manager/rooms  hotelID, roomNumber, price and/or imageURL
+ *    GET  /manager/repairs                         repair history
+ *    POST /manager/repairs  companyID, hotelID, roomNumber[, date]
+ *
+ * Results are JSON objects or arrays of objects keyed by column name;
+ * failures are {"error": message} with a 4xx or 5xx status.
+ */
+public class HotelServer {
+
+   // request threads when virtual threads are not available.
+   static final int THREADS = Integer.getInteger("hotel.http.threads", 200);
+
+   // connections the server's socket queues before it accepts them.
+   static final int BACKLOG = Integer.getInteger("hotel.http.backlog", 1024);
+
+   // how long the session of a set of credentials is reused before they are checked again.
+   static final long SESSION_MILLIS = Long.getLong("hotel.http.sessionMillis", 300000L);
+
+   private final HotelService _service;
+   private final HttpServer _server;
+
+   // sessions by the Authorization header that opened them.
+   private final ConcurrentHashMap<String, Session> _sessions = new ConcurrentHashMap<String, Session>();
+   private final ExecutorService _executor;
+
+   // the session a request was authenticated as, and its parameters.
+   private static final class Request {
+      final HttpExchange exchange;
+      final Map<String, String> params;
+      final Session session;
+      final int userID;
+
+      Request(HttpExchange exchange, Map<String, String> params, Session session){
+         this.exchange = exchange;
+         this.params = params;
+         this.session = session;
+         this.userID = session.userID();
+      }
+
+      String get(String name){
+         String value = params.get(name);
+         if (value == null || value.isEmpty())
+            throw new IllegalArgumentException("Missing parameter " + name);
+         return value;
+      }
+
+      String get(String name, String fallback){
+         String value = params.get(name);
+         return value == null || value.isEmpty() ? fallback : value;
+      }
+
+      int getInt(String name){
+         return Integer.parseInt(get(name));
+      }
+
+      double getDouble(String name){
+         return Double.parseDouble(get(name));
+      }
+
+      LocalDate getDate(String name){
+         return LocalDate.parse(get(name));
+      }
+
+      boolean isPost(){
+         return exchange.getRequestMethod().equals("POST");
+      }
+   }//end Request
+
+   // an error answered with its own status rather than 400 or 500.
+   private static final class HttpError extends RuntimeException {
+      private static final long serialVersionUID = 1L;
+      final int status;
+      HttpError(int status, String message){
+         super(message);
+         this.status = status;
+      }
+   }
+
+   /**
+    * The work of one path. The returned text is sent as the JSON body with
+    * status 200, unless the endpoint already sent its own response.
+    */
+   private interface Endpoint {
+      String handle(Request request) throws SQLException, IOException;
+   }
+
+   /**
+    * Creates a server bound to a port; requests are not served until start().
+    *
+    * @param service the operations the server exposes
+    * @param port the TCP port to listen on
+    * @throws java.io.IOException when the port cannot be bound
+    */
+   public HotelServer(HotelService service, int port) throws IOException {
+      this._service = service;
+      this._server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+      this._executor = newExecutor();
+      this._server.setExecutor(this._executor);
+      routes();
+   }//end HotelServer
+
+   /**
+    * Method to create the executor running the requests: one virtual thread
+    * per request when Executors.newVirtualThreadPerTaskExecutor exists, a
+    * fixed pool otherwise. The method is looked up by reflection so the
+    * client still builds and runs on Java 8.
+    */
+   static ExecutorService newExecutor(){
+      try{
+         return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      }catch (ReflectiveOperationException e){
+         return Executors.newFixedThreadPool(THREADS);
+      }
+   }//end newExecutor
+
+   /**
+    * @return true when requests run on virtual threads
+    */
+   public boolean virtualThreads(){
+      return !(_executor instanceof ThreadPoolExecutor);
+   }
+
+   public void start(){
+      _server.start();
+   }
+
+   /**
+    * Method to stop accepting requests, wait up to the given number of
+    * seconds for the ones running, and release the threads.
+    */
+   public void stop(int delaySeconds){
+      _server.stop(delaySeconds);
+      _executor.shutdown();
+   }//end stop
+
+   private void routes(){
+      route("/hotels", false, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            if (r.params.containsKey("lat") || r.params.containsKey("lon"))
+               return json(_service.searchHotels(r.getDouble("lat"), r.getDouble("lon")));
+            return json(_service.hotels());
+         }
+      });
+      route("/hotels/nearest", false, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            int count = Integer.parseInt(r.get("count", String.valueOf(HotelService.NEAREST_HOTELS)));
+            return json(_service.nearestHotels(r.getDouble("lat"), r.getDouble("lon"), count));
+         }
+      });
+      route("/hotels/within", false, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            return json(_service.hotelsWithin(r.getDouble("lat"), r.getDouble("lon"), r.getDouble("km")));
+         }
+      });
+      route("/rooms", false, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            List<HotelService.Room> rooms = _service.availableRooms(r.getInt("hotelID"), r.getDate("date"));
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < rooms.size(); ++i){
+               HotelService.Room room = rooms.get(i);
+               if (i > 0)
+                  sb.append(',');
+               sb.append("{\"roomnumber\":").append(room.roomNumber)
+                 .append(",\"price\":").append(room.price)
+                 .append(",\"available\":").append(room.available).append('}');
+            }
+            return sb.append(']').toString();
+         }
+      });
+      route("/bookings", false, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            if (r.isPost()){
+               int hotelID = r.getInt("hotelID");
+               int roomNumber = r.getInt("roomNumber");
+               LocalDate date = r.getDate("date");
+               if (!_service.bookRoom(r.userID, hotelID, roomNumber, date))
+                  throw new HttpError(409, "The room is already booked on " + date);
+               return "{\"booked\":true,\"price\":" + _service.roomPrice(hotelID, roomNumber) + "}";
+            }
+            String before = r.get("beforeDate", null);
+            return json(_service.recentBookings(r.userID, HotelService.RECENT_PAGE_SIZE,
+               before == null ? null : LocalDate.parse(before), Integer.parseInt(r.get("beforeID", "0"))));
+         }
+      });
+
+      route("/bookings/stay", false, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            if (!r.isPost())
+               throw new HttpError(405, "Use POST to book a stay");
+            String[] numbers = r.get("rooms").split(",");
+            int[] rooms = new int[numbers.length];
+            for (int i = 0; i < numbers.length; ++i)
+               rooms[i] = Integer.parseInt(numbers[i].trim());
+            LocalDate first = r.getDate("first");
+            LocalDate last = r.getDate("last");
+            if (last.isBefore(first))
+               throw new IllegalArgumentException("The last night is before the first");
+            TypedResult taken = _service.bookStay(r.userID, r.getInt("hotelID"), rooms, first, last);
+            if (taken.rowCount() > 0){
+               StringBuilder nights = new StringBuilder("Already booked:");
+               for (int i = 0; i < taken.rowCount(); ++i)
+                  nights.append(i == 0 ? " room " : ", room ").append(taken.getString(i, 0))
+                        .append(" on ").append(taken.getString(i, 1));
+               throw new HttpError(409, nights.toString());
+            }
+            return "{\"booked\":true}";
+         }
+      });
+
+      route("/manager/hotels", true, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            return json(r.session.managedHotels());
+         }
+      });
+      route("/manager/bookings", true, new Endpoint(){
+         public String handle(final Request r) throws SQLException, IOException {
+            String from = r.get("from", null);
+            // the history can be long, so the rows are written as they are read.
+            r.exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            r.exchange.sendResponseHeaders(200, 0);
+            final Writer out = new OutputStreamWriter(r.exchange.getResponseBody(), StandardCharsets.UTF_8);
+            out.write('[');
+            final boolean[] first = { true };
+            _service.bookingHistory(r.userID, from == null ? null : LocalDate.parse(from),
+               from == null ? null : r.getDate("to"), new RowHandler(){
+                  public void handle(ResultSet rs) throws SQLException {
+                     try{
+                        out.write(first[0] ? "{" : ",{");
+                        first[0] = false;
+                        out.write("\"bookingid\":" + rs.getInt(1));
+                        out.write(",\"bookingdate\":" + quote(rs.getString(2)));
+                        out.write(",\"hotelid\":" + rs.getInt(3));
+                        out.write(",\"roomnumber\":" + rs.getInt(4));
+                        out.write(",\"name\":" + quote(trim(rs.getString(5))) + "}");
+                     }catch (IOException e){
+                        throw new SQLException("The client went away", e);
+                     }
+                  }
+               });
+            out.write(']');
+            out.close();
+            return null;
+         }
+      });
+      route("/manager/updates", true, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            String before = r.get("beforeTime", null);
+            return json(_service.recentUpdates(r.userID, HotelService.RECENT_PAGE_SIZE,
+               before == null ? null : Timestamp.valueOf(before), Integer.parseInt(r.get("beforeNumber", "0"))));
+         }
+      });
+      route("/manager/customers", true, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            int hotelID = r.getInt("hotelID");
+            checkManages(r, hotelID);
+            return json(_service.topCustomers(hotelID, HotelService.TOP_CUSTOMERS));
+         }
+      });
+      route("/manager/occupancy", true, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            return json(_service.occupancy(r.userID, r.getDate("from"), r.getDate("to")));
+         }
+      });
+      route("/manager/rooms", true, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            if (!r.isPost())
+               throw new HttpError(405, "Use POST to update a room");
+            int hotelID = r.getInt("hotelID");
+            checkManages(r, hotelID);
+            String price = r.get("price", null);
+            if (!_service.updateRoom(r.userID, hotelID, r.getInt("roomNumber"),
+                  price == null ? null : Integer.valueOf(price), r.get("imageURL", null)))
+               throw new HttpError(404, "No such room");
+            return "{\"updated\":true}";
+         }
+      });
+      route("/manager/repairs", true, new Endpoint(){
+         public String handle(Request r) throws SQLException {
+            if (!r.isPost())
+               return json(_service.repairHistory(r.userID));
+            int hotelID = r.getInt("hotelID");
+            checkManages(r, hotelID);
+            String date = r.get("date", null);
+            int repairID = _service.placeRepair(r.userID, r.getInt("companyID"), hotelID, r.getInt("roomNumber"),
+               date == null ? LocalDate.now() : LocalDate.parse(date));
+            return "{\"repairid\":" + repairID + "}";
+         }
+      });
+   }//end routes
+
+   // fails the request unless the manager manages the hotel.
+   private static void checkManages(Request r, int hotelID) throws SQLException {
+      if (!r.session.manages(hotelID))
+         throw new HttpError(403, "You do not manage hotel " + hotelID);
+   }//end checkManages
+
+   /**
+    * Method to find the session of a request's credentials. A session is
+    * reused by every request with the same Authorization header for
+    * SESSION_MILLIS, so repeated requests skip the password check and keep
+    * the cached hotels of a manager; after that the credentials are
+    * checked again.
+    */
+   private Session session(HttpExchange exchange) throws SQLException {
+      String header = exchange.getRequestHeaders().getFirst("Authorization");
+      long now = System.currentTimeMillis();
+      Session session = header == null ? null : _sessions.get(header);
+      if (session != null && now - session.createdAt() < SESSION_MILLIS)
+         return session;
+
+      session = _service.logIn(authenticate(exchange), password(exchange));
+      if (session == null){
+         _sessions.remove(header);
+         throw new HttpError(401, "Incorrect userID or password");
+      }
+      if (_sessions.size() > 10000){
+         for (Map.Entry<String, Session> e : _sessions.entrySet())
+            if (now - e.getValue().createdAt() >= SESSION_MILLIS)
+               _sessions.remove(e.getKey(), e.getValue());
+      }
+      _sessions.put(header, session);
+      return session;
+   }//end session
+
+   // registers an endpoint behind authentication, parameter parsing and error handling.
+   private void route(final String path, final boolean managersOnly, final Endpoint endpoint){
+      _server.createContext(path, new HttpHandler(){
+         public void handle(HttpExchange exchange) throws IOException {
+            Metrics.Operation op = Metrics.begin(exchange.getRequestMethod() + " " + path);
+            try{
+               // contexts match by prefix; only the exact path is served.
+               if (!exchange.getRequestURI().getPath().equals(path))
+                  throw new HttpError(404, "Not found");
+               String method = exchange.getRequestMethod();
+               if (!method.equals("GET") && !method.equals("POST"))
+                  throw new HttpError(405, "Method not allowed");
+               Map<String, String> params = parameters(exchange);
+               Session session = session(exchange);
+               // as in the menus, every user who is not a customer gets the manager operations.
+               if (managersOnly && session.isCustomer())
+                  throw new HttpError(403, "Only managers may do this");
+               String body = endpoint.handle(new Request(exchange, params, session));
+               if (body != null)
+                  send(exchange, 200, body);
+            }catch (HttpError e){
+               if (e.status == 401)
+                  exchange.getResponseHeaders().set("WWW-Authenticate", "Basic realm=\"hotel\"");
+               send(exchange, e.status, error(e.getMessage()));
+            }catch (NumberFormatException e){
+               send(exchange, 400, error("Invalid number: " + e.getMessage()));
+            }catch (DateTimeParseException e){
+               send(exchange, 400, error("Invalid date: " + e.getParsedString()));
+            }catch (IllegalArgumentException e){
+               send(exchange, 400, error(e.getMessage()));
+            }catch (SQLException e){
+               send(exchange, 500, error(e.getMessage()));
+            }catch (RuntimeException e){
+               send(exchange, 500, error(String.valueOf(e)));
+            }finally{
+               exchange.close();
+               op.end();
+            }
+         }
+      });
+   }//end route
+
+   // the userID of the Basic credentials.
+   private static int authenticate(HttpExchange exchange){
+      String[] credentials = credentials(exchange);
+      try{
+         return Integer.parseInt(credentials[0].trim());
+      }catch (NumberFormatException e){
+         throw new HttpError(401, "The user name must be a userID");
+      }
+   }
+
+   private static String password(HttpExchange exchange){
+      return credentials(exchange)[1];
+   }
+
+   private static String[] credentials(HttpExchange exchange){
+      String header = exchange.getRequestHeaders().getFirst("Authorization");
+      if (header == null || !header.regionMatches(true, 0, "Basic ", 0, 6))
+         throw new HttpError(401, "Authentication required");
+      String decoded;
+      try{
+         decoded = new String(Base64.getDecoder().decode(header.substring(6).trim()), StandardCharsets.UTF_8);
+      }catch (IllegalArgumentException e){
+         throw new HttpError(401, "Malformed credentials");
+      }
+      int colon = decoded.indexOf(':');
+      if (colon < 0)
+         throw new HttpError(401, "Malformed credentials");
+      return new String[]{ decoded.substring(0, colon), decoded.substring(colon + 1) };
+   }//end credentials
+
+   // the query string parameters, and those of a form encoded POST body.
+   private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+      Map<String, String> params = new HashMap<String, String>();
+      decode(exchange.getRequestURI().getRawQuery(), params);
+      if (exchange.getRequestMethod().equals("POST")){
+         InputStream in = exchange.getRequestBody();
+         ByteArrayOutputStream body = new ByteArrayOutputStream();
+         byte[] buffer = new byte[4096];
+         for (int n; (n = in.read(buffer)) > 0; ){
+            body.write(buffer, 0, n);
+            if (body.size() > 65536)
+               throw new HttpError(413, "Request body too large");
+         }
+         decode(new String(body.toByteArray(), StandardCharsets.UTF_8), params);
+      }
+      return params;
+   }//end parameters
+
+   private static void decode(String query, Map<String, String> params) throws UnsupportedEncodingException {
+      if (query == null || query.isEmpty())
+         return;
+      for (String pair : query.split("&")){
+         int eq = pair.indexOf('=');
+         String name = eq < 0 ? pair : pair.substring(0, eq);
+         String value = eq < 0 ? "" : pair.substring(eq + 1);
+         params.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+      }
+   }//end decode
+
+   private static void send(HttpExchange exchange, int status, String body) throws IOException {
+      if (exchange.getResponseCode() != -1){
+         // a streamed response failed part way; the client sees it cut short.
+         System.err.println(exchange.getRequestURI() + ": " + body);
+         return;
+      }
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+   }//end send
+
+   // renders hotels found by the HotelLocator, nearest first.
+   static String json(List<HotelLocator.Match> matches){
+      StringBuilder sb = new StringBuilder("[");
+      for (int i = 0; i < matches.size(); ++i){
+         HotelLocator.Match m = matches.get(i);
+         if (i > 0)
+            sb.append(',');
+         sb.append("{\"hotelid\":").append(m.hotelID)
+           .append(",\"hotelname\":").append(quote(m.hotelName))
+           .append(",\"latitude\":").append(m.latitude)
+           .append(",\"longitude\":").append(m.longitude)
+           .append(",\"distancekm\":").append(m.distanceKm).append('}');
+      }
+      return sb.append(']').toString();
+   }//end json
+
+   /**
+    * Method to render a result as a JSON array with one object per row,
+    * keyed by column name. Text is trimmed of the padding of char columns.
+    */
+   static String json(TypedResult result){
+      StringBuilder sb = new StringBuilder("[");
+      for (int i = 0; i < result.rowCount(); ++i){
+         if (i > 0)
+            sb.append(',');
+         sb.append('{');
+         for (int c = 0; c < result.columnCount(); ++c){
+            if (c > 0)
+               sb.append(',');
+            sb.append(quote(result.columnName(c))).append(':');
+            if (result.isNull(i, c))
+               sb.append("null");
+            else if (result.isNumeric(c))
+               sb.append(result.getString(i, c));
+            else
+               sb.append(quote(trim(result.getString(i, c))));
+         }
+         sb.append('}');
+      }
+      return sb.append(']').toString();
+   }//end json
+
+   private static String error(String message){
+      return "{\"error\":" + quote(message == null ? "" : message) + "}";
+   }
+
+   private static String trim(String value){
+      return value == null ? null : value.trim();
+   }
+
+   // a JSON string literal.
+   static String quote(String value){
+      if (value == null)
+         return "null";
+      StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+      for (int i = 0; i < value.length(); ++i){
+         char ch = value.charAt(i);
+         switch (ch){
+            case '"': sb.append("\\\""); break;
+            case '\\': sb.append("\\\\"); break;
+            case '\n': sb.append("\\n"); break;
+            case '\r': sb.append("\\r"); break;
+            case '\t': sb.append("\\t"); break;
+            default:
+               if (ch < 0x20)
+                  sb.append(String.format("\\u%04x", (int) ch));
+               else
+                  sb.append(ch);
+         }
+      }
+      return sb.append('"').toString();
+   }//end quote
+
+}//end HotelServer
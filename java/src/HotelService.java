@@ -0,0 +1,863 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is every operation of the hotel application without the
+ * terminal around it. Each method takes its inputs as parameters and
+ * returns typed results, so the interactive menus in Hotel, batch jobs,
+ * servers and benchmarks all run the same code. Nothing here reads from
+ * System.in or prints; failures are reported as exceptions.
+ *
+ * The service holds no state of its own beyond the Hotel it runs on, whose
+ * pooled connections and caches make it safe to call from many threads.
+ */
+public class HotelService {
+
+   // distance from the user's location within which searchHotels lists hotels.
+   static final double HOTEL_SEARCH_RADIUS = 30.0;
+
+   // number of hotels listed by the nearest hotel search.
+   static final int NEAREST_HOTELS = 5;
+
+   private final Hotel _esql;
+
+   /**
+    * One room of a hotel with its price and whether it is free on the date
+    * it was looked up for.
+    */
+   public static final class Room {
+      public final int roomNumber;
+      public final int price;
+      public final boolean available;
+
+      Room(int roomNumber, int price, boolean available){
+         this.roomNumber = roomNumber;
+         this.price = price;
+         this.available = available;
+      }
+   }//end Room
+
+   /**
+    * Creates the service over a connected Hotel.
+    *
+    * @param esql the data access object every operation runs on
+    */
+   public HotelService (Hotel esql){
+      this._esql = esql;
+   }//end HotelService
+
+   /**
+    * Method to check a user's credentials.
+    *
+    * @param userID the user logging in
+    * @param password the password typed by the user
+    * @return the session of the user, or null when the userID and password
+    *         do not match
+    * @throws java.sql.SQLException when the query fails
+    */
+   public Session logIn (int userID, String password) throws SQLException {
+      TypedResult user = _esql.executeQueryAndReturnTypedResult (
+         "SELECT userType FROM Users WHERE userID = ? AND password = ?", userID, password);
+      if (user.rowCount () == 0)
+         return null;
+      String type = user.getString (0, 0);
+      return new Session (this, userID, type == null ? "" : type.trim ());
+   }//end logIn
+
+   /**
+    * @return hotelName and hotelID of every hotel
+    */
+   public TypedResult hotels () throws SQLException {
+      return _esql.executeQueryAndReturnTypedResult ("SELECT hotelName, hotelID FROM Hotel");
+   }//end hotels
+
+   /**
+    * @return hotelName and hotelID of every hotel with rooms managed by the manager, by hotelID
+    */
+   public TypedResult managedHotels (int managerID) throws SQLException {
+      return _esql.executeQueryAndReturnTypedResult (
+         "SELECT DISTINCT h.hotelName, h.hotelID FROM Hotel h, Rooms r " +
+         "WHERE h.hotelID = r.hotelID AND managerUserID = ? ORDER BY h.hotelID", managerID);
+   }//end managedHotels
+
+   /**
+    * Method to list the hotels within HOTEL_SEARCH_RADIUS of a location, as
+    * measured by calculate_distance. A bounding box on latitude and
+    * longitude lets Postgres narrow the search with the index on
+    * (latitude, longitude) before the exact distance is computed.
+    *
+    * @return hotelID, hotelName, latitude, longitude and dateEstablished of each hotel, by hotelID
+    * @throws java.sql.SQLException when the query fails
+    */
+   public TypedResult searchHotels (double latitude, double longitude) throws SQLException {
+      BigDecimal radius = BigDecimal.valueOf (HOTEL_SEARCH_RADIUS);
+      BigDecimal lat = BigDecimal.valueOf (latitude);
+      BigDecimal lon = BigDecimal.valueOf (longitude);
+      return _esql.executeQueryAndReturnTypedResult (
+         "SELECT hotelID, hotelName, latitude, longitude, dateEstablished FROM Hotel " +
+         "WHERE latitude BETWEEN ? AND ? AND longitude BETWEEN ? AND ? " +
+         "AND calculate_distance(latitude, longitude, ?, ?) <= ? ORDER BY hotelID",
+         lat.subtract (radius), lat.add (radius), lon.subtract (radius), lon.add (radius), lat, lon, radius);
+   }//end searchHotels
+
+   /**
+    * Method to find the hotels closest to a location by great-circle
+    * distance, using the in-memory HotelLocator.
+    *
+    * @return at most count hotels, nearest first
+    * @throws java.sql.SQLException when the locator has to be loaded and that fails
+    */
+   public List<HotelLocator.Match> nearestHotels (double latitude, double longitude, int count) throws SQLException {
+      return _esql.hotelLocator ().nearest (latitude, longitude, count);
+   }//end nearestHotels
+
+   /**
+    * Method to find every hotel within a great-circle distance of a
+    * location, using the in-memory HotelLocator.
+    *
+    * @param radiusKm the search radius in kilometres
+    * @return the hotels found, nearest first
+    * @throws java.sql.SQLException when the locator has to be loaded and that fails
+    */
+   public List<HotelLocator.Match> hotelsWithin (double latitude, double longitude, double radiusKm) throws SQLException {
+      return _esql.hotelLocator ().within (latitude, longitude, radiusKm);
+   }//end hotelsWithin
+
+   /**
+    * @return roomNumber, price and imageURL of every room of a hotel, by roomNumber
+    */
+   public TypedResult rooms (int hotelID) throws SQLException {
+      return _esql.executeQueryAndReturnTypedResult (
+         "SELECT roomNumber, price, imageURL FROM Rooms WHERE hotelID = ? ORDER BY roomNumber", hotelID);
+   }//end rooms
+
+   /**
+    * Method to list every room of a hotel with its price and whether it is
+    * free on a date. Prices come from Rooms and availability from the
+    * AvailabilityIndex, so no booking rows are read.
+    *
+    * @return the rooms of the hotel by roomNumber
+    * @throws java.sql.SQLException when the rooms or bookings cannot be read
+    */
+   public List<Room> availableRooms (int hotelID, LocalDate date) throws SQLException {
+      TypedResult prices = _esql.executeQueryAndReturnTypedResult (
+         "SELECT roomNumber, price FROM Rooms WHERE hotelID = ? ORDER BY roomNumber", hotelID);
+      // rooms booked on the date, in ascending order like the price list.
+      int[] booked = _esql.availability ().bookedRooms (hotelID, date);
+      List<Room> rooms = new ArrayList<Room> (prices.rowCount ());
+      for (int i = 0, b = 0; i < prices.rowCount (); ++i){
+         int number = prices.getInt (i, 0);
+         while (b < booked.length && booked[b] < number)
+            ++b;
+         rooms.add (new Room (number, prices.getInt (i, 1), b == booked.length || booked[b] != number));
+      }
+      return rooms;
+   }//end availableRooms
+
+   /**
+    * Method to check whether a room is free for every night from first to
+    * last, both included, from the AvailabilityIndex.
+    */
+   public boolean isFree (int hotelID, int roomNumber, LocalDate first, LocalDate last) throws SQLException {
+      return _esql.availability ().isFree (hotelID, roomNumber, first, last);
+   }//end isFree
+
+   /**
+    * @return the price of a room, or -1 when the room does not exist
+    */
+   public int roomPrice (int hotelID, int roomNumber) throws SQLException {
+      TypedResult price = _esql.executeQueryAndReturnTypedResult (
+         "SELECT price FROM Rooms WHERE hotelID = ? AND roomNumber = ?", hotelID, roomNumber);
+      return price.rowCount () == 0 ? -1 : price.getInt (0, 0);
+   }//end roomPrice
+
+   /**
+    * Method to change the price and/or image URL of a room and record the
+    * change in RoomUpdatesLog, in one transaction. A trigger on Rooms moves
+    * the revenue in HotelDailyStats of every night the room is booked by
+    * the change in price. Only the manager of the hotel may change its rooms.
+    *
+    * @param managerID the manager making the change
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room to change
+    * @param price the new price, or null to keep the current one
+    * @param imageURL the new image URL, or null to keep the current one
+    * @return true when the room exists and was changed
+    * @throws IllegalArgumentException when the manager does not manage the hotel
+    * @throws java.sql.SQLException when an update fails
+    */
+   public boolean updateRoom (final int managerID, final int hotelID, final int roomNumber,
+                              final Integer price, final String imageURL) throws SQLException {
+      if (price == null && imageURL == null)
+         throw new IllegalArgumentException ("Nothing to update");
+      return _esql.executeInTransaction (new TransactionWork<Boolean>(){
+         public Boolean run (Connection conn, StatementCache statements) throws SQLException {
+            checkManages (statements, managerID, hotelID);
+            PreparedStatement update = statements.prepare (
+               "UPDATE Rooms SET price = COALESCE(?, price), imageURL = COALESCE(?, imageURL) " +
+               "WHERE hotelID = ? AND roomNumber = ?");
+            if (price == null)
+               update.setNull (1, Types.INTEGER);
+            else
+               update.setInt (1, price);
+            if (imageURL == null)
+               update.setNull (2, Types.VARCHAR);
+            else
+               update.setString (2, imageURL);
+            update.setInt (3, hotelID);
+            update.setInt (4, roomNumber);
+            if (update.executeUpdate () == 0)
+               return false;
+
+            PreparedStatement log = statements.prepare (LOG_ROOM_UPDATE);
+            Hotel.bind (log, new Object[]{ managerID, hotelID, roomNumber, new Timestamp (System.currentTimeMillis ()) });
+            log.executeUpdate ();
+            return true;
+         }
+      });
+   }//end updateRoom
+
+   /**
+    * Method to stream the bookings of every hotel a manager manages, in
+    * booking date order, optionally limited to a range of dates. With a
+    * range only the monthly partitions of RoomBookings it covers are read.
+    *
+    * @param managerID the manager whose hotels are read
+    * @param from the first booking date included, or null for all bookings
+    * @param to the last booking date included; ignored when from is null
+    * @param handler receives bookingID, bookingDate, hotelID, roomNumber and customer name of each booking
+    * @return the number of bookings delivered to the handler
+    * @throws java.sql.SQLException when the query fails
+    */
+   public int bookingHistory (int managerID, LocalDate from, LocalDate to, RowHandler handler) throws SQLException {
+      String query = "SELECT rb.bookingID, rb.bookingDate, rb.hotelID, rb.roomNumber, u.name " +
+                     "FROM RoomBookings rb, Hotel h, Users u " +
+                     "WHERE rb.customerID = u.userID AND rb.hotelID = h.hotelID AND h.managerUserID = ?";
+      if (from == null)
+         return _esql.executeQueryAndStream (query + " ORDER BY rb.bookingDate", handler, managerID);
+      return _esql.executeQueryAndStream (query + " AND rb.bookingDate BETWEEN ? AND ? ORDER BY rb.bookingDate",
+         handler, managerID, java.sql.Date.valueOf (from), java.sql.Date.valueOf (to));
+   }//end bookingHistory
+
+   /**
+    * @return name and companyID of every maintenance company, by companyID
+    */
+   public TypedResult maintenanceCompanies () throws SQLException {
+      return _esql.executeQueryAndReturnTypedResult (
+         "SELECT name, companyID FROM MaintenanceCompany ORDER BY companyID");
+   }//end maintenanceCompanies
+
+   /**
+    * @return companyID, hotelID, roomNumber and repairDate of every repair a manager requested
+    */
+   public TypedResult repairHistory (int managerID) throws SQLException {
+      return _esql.executeQueryAndReturnTypedResult (
+         "SELECT rr.companyID, rr.hotelID, rr.roomNumber, rr.repairDate " +
+         "FROM RoomRepairs rr, RoomRepairRequests q WHERE rr.repairID = q.repairID AND q.managerID = ?",
+         managerID);
+   }//end repairHistory
+
+   /**
+    * Method to book one night of a room. The insert and the availability
+    * check are a single statement: the unique constraint on (hotelID,
+    * roomNumber, bookingDate) makes a second booking of the same night do
+    * nothing, so two customers racing for a room cannot both get it.
+    *
+    * @param customerID the user making the booking
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room to book
+    * @param date the night to book
+    * @return true when the night was booked, false when it was already booked
+    * @throws IllegalArgumentException when the night cannot be booked, see checkBookable
+    * @throws java.sql.SQLException when the insert fails for another reason
+    */
+   public boolean bookRoom (int customerID, int hotelID, int roomNumber, LocalDate date) throws SQLException {
+      checkBookable (date, date);
+      _esql.partitions ().ensure (date);
+      int inserted = _esql.executeUpdate (
+         "INSERT INTO RoomBookings (customerID, hotelID, roomNumber, bookingDate) VALUES (?, ?, ?, ?) " +
+         "ON CONFLICT (hotelID, roomNumber, bookingDate) DO NOTHING",
+         customerID, hotelID, roomNumber, java.sql.Date.valueOf (date));
+      // either way the night is now taken, so the index can say so.
+      _esql.availability ().recordBooking (hotelID, roomNumber, date);
+      return inserted == 1;
+   }//end bookRoom
+
+   /**
+    * Method to book several rooms for a run of nights at once. Every
+    * (room, night) pair is checked with one query and inserted with one
+    * JDBC batch inside a single transaction, so either the whole stay is
+    * booked or nothing is.
+    *
+    * @param customerID the user making the booking
+    * @param hotelID the hotel of the rooms
+    * @param roomNumbers the rooms to book; a room given twice is booked once
+    * @param firstNight the first night of the stay
+    * @param lastNight the last night of the stay, included
+    * @return the (roomNumber, bookingDate) pairs that were already booked;
+    *         empty when the whole stay was booked
+    * @throws IllegalArgumentException when the stay has no room or night, has more than
+    *         MAX_STAY_ROOMS rooms or MAX_STAY_NIGHTS nights, or cannot be booked, see checkBookable
+    * @throws java.sql.SQLException when the booking fails for another reason
+    */
+   public TypedResult bookStay (final int customerID, final int hotelID, final int[] roomNumbers,
+                                final LocalDate firstNight, final LocalDate lastNight) throws SQLException {
+      if (roomNumbers.length == 0 || lastNight.isBefore (firstNight))
+         throw new IllegalArgumentException ("A stay needs at least one room and one night");
+      long nights = lastNight.toEpochDay () - firstNight.toEpochDay () + 1;
+      if (nights > MAX_STAY_NIGHTS)
+         throw new IllegalArgumentException ("A stay can be at most " + MAX_STAY_NIGHTS + " nights");
+      checkBookable (firstNight, lastNight);
+
+      final int[] rooms = distinct (roomNumbers);
+      if (rooms.length > MAX_STAY_ROOMS)
+         throw new IllegalArgumentException ("A stay can be at most " + MAX_STAY_ROOMS + " rooms");
+      final java.sql.Date from = java.sql.Date.valueOf (firstNight);
+      final java.sql.Date to = java.sql.Date.valueOf (lastNight);
+      // keys for every (room, night) row are taken up front so the batch sets them itself.
+      final int[] bookingIDs = _esql.ids ("roombookings_bookingid_seq").next (rooms.length * (int) nights);
+      _esql.partitions ().ensure (firstNight, lastNight);
+
+      TypedResult conflicts = _esql.executeInTransaction (new TransactionWork<TypedResult>(){
+         public TypedResult run (Connection conn, StatementCache statements) throws SQLException {
+            PreparedStatement check = statements.prepare (STAY_CONFLICTS);
+            Hotel.bind (check, new Object[]{ hotelID, rooms, from, to });
+            ResultSet rs = check.executeQuery ();
+            TypedResult taken = TypedResult.read (rs);
+            rs.close ();
+            if (taken.rowCount () > 0)
+               return taken;
+
+            PreparedStatement insert = statements.prepare (BOOK_NIGHT);
+            int expected = 0;
+            for (int room : rooms){
+               for (LocalDate night = firstNight; !night.isAfter (lastNight); night = night.plusDays (1)){
+                  Hotel.bind (insert, new Object[]{ bookingIDs[expected], customerID, hotelID, room, java.sql.Date.valueOf (night) });
+                  insert.addBatch ();
+                  ++expected;
+               }
+            }
+            int inserted = 0;
+            boolean unknown = false;
+            for (int count : insert.executeBatch ()){
+               if (count == Statement.SUCCESS_NO_INFO)
+                  unknown = true;
+               else
+                  inserted += count;
+            }
+            if (unknown || inserted != expected){
+               // another session may have booked a night after the check, which the insert then skipped,
+               // and a driver answering SUCCESS_NO_INFO does not say; look for nights booked by anyone
+               // else, and if there are any undo the rest of the stay and report them.
+               PreparedStatement others = statements.prepare (STAY_CONFLICTS_OF_OTHERS);
+               Hotel.bind (others, new Object[]{ hotelID, rooms, from, to, bookingIDs });
+               rs = others.executeQuery ();
+               taken = TypedResult.read (rs);
+               rs.close ();
+               if (taken.rowCount () > 0)
+                  conn.rollback ();
+               else if (!unknown)
+                  throw new SQLException ("The stay could not be booked, please try again");
+            }
+            return taken;
+         }
+      });
+
+      if (conflicts.rowCount () == 0){
+         for (int room : rooms)
+            for (LocalDate night = firstNight; !night.isAfter (lastNight); night = night.plusDays (1))
+               _esql.availability ().recordBooking (hotelID, room, night);
+      }
+      return conflicts;
+   }//end bookStay
+
+   // the most nights, and distinct rooms, one bookStay may book.
+   static final int MAX_STAY_NIGHTS = Integer.getInteger("hotel.maxStayNights", 31);
+   static final int MAX_STAY_ROOMS = Integer.getInteger("hotel.maxStayRooms", 50);
+
+   /**
+    * Method to check that every night from first to last can be booked:
+    * none is before today, and none is after the last night of the months
+    * BookingPartitions keeps ready, so a booking never has to create a
+    * partition far ahead.
+    *
+    * @throws IllegalArgumentException when a night cannot be booked
+    */
+   static void checkBookable (LocalDate first, LocalDate last){
+      LocalDate today = LocalDate.now ();
+      if (first.isBefore (today))
+         throw new IllegalArgumentException ("Nights before " + today + " cannot be booked");
+      if (last.isAfter (lastBookableNight (today)))
+         throw new IllegalArgumentException ("Nights after " + lastBookableNight (today) + " cannot be booked yet");
+   }//end checkBookable
+
+   // true when a night passes checkBookable.
+   static boolean bookable (LocalDate night){
+      LocalDate today = LocalDate.now ();
+      return !night.isBefore (today) && !night.isAfter (lastBookableNight (today));
+   }//end bookable
+
+   // the last night that can be booked on a day: the end of the last month BookingPartitions creates ahead.
+   static LocalDate lastBookableNight (LocalDate today){
+      return today.plusMonths (BookingPartitions.AHEAD_MONTHS).with (TemporalAdjusters.lastDayOfMonth ());
+   }//end lastBookableNight
+
+   // bookings that overlap a requested stay; rooms are bound as one int[] (see Hotel.bind). The second form
+   // leaves out the stay's own rows, by the bookingIDs it was given.
+   static final String STAY_CONFLICTS =
+      "SELECT roomNumber, bookingDate FROM RoomBookings " +
+      "WHERE hotelID = ? AND roomNumber = ANY (?::integer[]) " +
+      "AND bookingDate BETWEEN ? AND ?";
+   static final String STAY_CONFLICTS_OF_OTHERS =
+      STAY_CONFLICTS + " AND bookingID <> ALL (?::integer[])";
+
+   // sorts numbers and drops repeats, e.g. so a room listed twice in a stay is booked once.
+   static int[] distinct (int[] values){
+      int[] sorted = values.clone ();
+      Arrays.sort (sorted);
+      int n = 0;
+      for (int i = 0; i < sorted.length; ++i)
+         if (n == 0 || sorted[i] != sorted[n - 1])
+            sorted[n++] = sorted[i];
+      return Arrays.copyOf (sorted, n);
+   }//end distinct
+
+   // number of rows shown per page by viewRecentBookingsfromCustomer and viewRecentUpdates.
+   static final int RECENT_PAGE_SIZE = Integer.getInteger("hotel.recentPageSize", 5);
+
+   // a customer's newest bookings; the second form continues after the last row of a page. Its bookingDate <= ?
+   // says again what the row comparison implies, in a form the planner can skip the later months of RoomBookings with.
+   static final String RECENT_BOOKINGS =
+      "SELECT rb.hotelID, rb.roomNumber, r.price, rb.bookingDate, rb.bookingID " +
+      "FROM RoomBookings rb JOIN Rooms r ON rb.hotelID = r.hotelID AND rb.roomNumber = r.roomNumber " +
+      "WHERE rb.customerID = ? ORDER BY rb.bookingDate DESC, rb.bookingID DESC LIMIT ?";
+   static final String RECENT_BOOKINGS_AFTER =
+      "SELECT rb.hotelID, rb.roomNumber, r.price, rb.bookingDate, rb.bookingID " +
+      "FROM RoomBookings rb JOIN Rooms r ON rb.hotelID = r.hotelID AND rb.roomNumber = r.roomNumber " +
+      "WHERE rb.customerID = ? AND (rb.bookingDate, rb.bookingID) < (?, ?) AND rb.bookingDate <= ? " +
+      "ORDER BY rb.bookingDate DESC, rb.bookingID DESC LIMIT ?";
+
+   // a manager's newest room updates, paged the same way.
+   static final String RECENT_UPDATES =
+      "SELECT updateNumber, managerID, hotelID, roomNumber, updatedOn FROM RoomUpdatesLog " +
+      "WHERE managerID = ? ORDER BY updatedOn DESC, updateNumber DESC LIMIT ?";
+   static final String RECENT_UPDATES_AFTER =
+      "SELECT updateNumber, managerID, hotelID, roomNumber, updatedOn FROM RoomUpdatesLog " +
+      "WHERE managerID = ? AND (updatedOn, updateNumber) < (?, ?) " +
+      "ORDER BY updatedOn DESC, updateNumber DESC LIMIT ?";
+
+   /**
+    * Method to read one page of a customer's bookings, newest first. The
+    * database walks the (customerID, bookingDate DESC, bookingID DESC)
+    * index and stops after limit rows, and the next page starts right
+    * after the (bookingDate, bookingID) of the last row shown, so a page
+    * costs the same however long the customer's history is. RoomBookings
+    * is partitioned by month, and the months are read newest first until
+    * the page is full, so the older months are not touched either.
+    *
+    * @param customerID the customer whose bookings are read
+    * @param limit the maximum number of bookings returned
+    * @param beforeDate the bookingDate of the last row of the previous page, or null for the first page
+    * @param beforeID the bookingID of the last row of the previous page
+    * @return hotelID, roomNumber, price, bookingDate and bookingID of each booking
+    * @throws java.sql.SQLException when the query fails
+    */
+   public TypedResult recentBookings (int customerID, int limit, LocalDate beforeDate, int beforeID) throws SQLException {
+      if (beforeDate == null)
+         return _esql.executeQueryAndReturnTypedResult (RECENT_BOOKINGS, customerID, limit);
+      java.sql.Date before = java.sql.Date.valueOf (beforeDate);
+      return _esql.executeQueryAndReturnTypedResult (RECENT_BOOKINGS_AFTER, customerID, before, beforeID, before, limit);
+   }//end recentBookings
+
+   /**
+    * Method to read one page of a manager's room updates, newest first,
+    * with the same keyset paging as recentBookings on (updatedOn, updateNumber).
+    *
+    * @param managerID the manager whose updates are read
+    * @param limit the maximum number of updates returned
+    * @param beforeTime the updatedOn of the last row of the previous page, or null for the first page
+    * @param beforeNumber the updateNumber of the last row of the previous page
+    * @return updateNumber, managerID, hotelID, roomNumber and updatedOn of each update
+    * @throws java.sql.SQLException when the query fails
+    */
+   public TypedResult recentUpdates (int managerID, int limit, Timestamp beforeTime, int beforeNumber) throws SQLException {
+      if (beforeTime == null)
+         return _esql.executeQueryAndReturnTypedResult (RECENT_UPDATES, managerID, limit);
+      return _esql.executeQueryAndReturnTypedResult (RECENT_UPDATES_AFTER,
+         managerID, beforeTime, beforeNumber, limit);
+   }//end recentUpdates
+
+   /**
+    * Method to add a user.
+    *
+    * @return the userID assigned to the new user
+    * @throws java.sql.SQLException when the insert fails
+    */
+   public int createUser (String name, String password, String userType) throws SQLException {
+      return _esql.executeInsertReturningKey (
+         "INSERT INTO Users (name, password, userType) VALUES (?, ?, ?) RETURNING userID",
+         name, password, userType);
+   }//end createUser
+
+   /**
+    * Method to record a room repair and the manager's request for it. Both
+    * rows are inserted in one transaction, the request pointing at the
+    * repairID the first insert returned, so a request never refers to
+    * another manager's repair and a repair is never left without a request.
+    * Only the manager of the hotel may request repairs of its rooms.
+    *
+    * @param managerID the manager placing the request
+    * @param companyID the maintenance company doing the repair
+    * @param hotelID the hotel of the room
+    * @param roomNumber the room to repair
+    * @param repairDate the date of the repair
+    * @return the repairID of the new repair
+    * @throws IllegalArgumentException when the manager does not manage the hotel
+    * @throws java.sql.SQLException when either insert fails
+    */
+   public int placeRepair (final int managerID, final int companyID, final int hotelID, final int roomNumber,
+                           final LocalDate repairDate) throws SQLException {
+      return _esql.executeInTransaction (new TransactionWork<Integer>(){
+         public Integer run (Connection conn, StatementCache statements) throws SQLException {
+            checkManages (statements, managerID, hotelID);
+            int repairID = Hotel.insertReturningKey (statements,
+               "INSERT INTO RoomRepairs (companyID, hotelID, roomNumber, repairDate) VALUES (?, ?, ?, ?) RETURNING repairID",
+               new Object[]{ companyID, hotelID, roomNumber, java.sql.Date.valueOf (repairDate) });
+            PreparedStatement request = statements.prepare (
+               "INSERT INTO RoomRepairRequests (managerID, repairID) VALUES (?, ?)");
+            Hotel.bind (request, new Object[]{ managerID, repairID });
+            request.executeUpdate ();
+            return repairID;
+         }
+      });
+   }//end placeRepair
+
+   static final String MANAGES_HOTEL =
+      "SELECT 1 FROM Hotel WHERE hotelID = ? AND managerUserID = ?";
+
+   // fails the transaction unless the manager manages the hotel.
+   private static void checkManages (StatementCache statements, int managerID, int hotelID) throws SQLException {
+      PreparedStatement check = statements.prepare (MANAGES_HOTEL);
+      Hotel.bind (check, new Object[]{ hotelID, managerID });
+      ResultSet rs = check.executeQuery ();
+      boolean manages = rs.next ();
+      rs.close ();
+      if (!manages)
+         throw new IllegalArgumentException ("User " + managerID + " does not manage hotel " + hotelID);
+   }//end checkManages
+
+   static final String MANAGERS_OF_HOTELS =
+      "SELECT hotelID, managerUserID FROM Hotel WHERE hotelID = ANY (?::integer[])";
+
+   // marks the price changes and repairs of hotels their user does not manage.
+   private static boolean[] notManaged (StatementCache statements, List<Change> changes) throws SQLException {
+      boolean[] denied = new boolean[changes.size ()];
+      List<Integer> hotels = new ArrayList<Integer> ();
+      for (Change c : changes)
+         if (c.kind != Change.BOOK)
+            hotels.add (c.hotelID);
+      if (hotels.isEmpty ())
+         return denied;
+
+      int[] hotelIDs = new int[hotels.size ()];
+      for (int i = 0; i < hotelIDs.length; ++i)
+         hotelIDs[i] = hotels.get (i);
+      PreparedStatement managers = statements.prepare (MANAGERS_OF_HOTELS);
+      Hotel.bind (managers, new Object[]{ distinct (hotelIDs) });
+      ResultSet rs = managers.executeQuery ();
+      Map<Integer, Integer> managerOf = new HashMap<Integer, Integer> ();
+      while (rs.next ())
+         managerOf.put (rs.getInt (1), rs.getInt (2));
+      rs.close ();
+
+      for (int i = 0; i < changes.size (); ++i){
+         Change c = changes.get (i);
+         Integer manager = managerOf.get (c.hotelID);
+         denied[i] = c.kind != Change.BOOK && (manager == null || manager.intValue () != c.userID);
+      }
+      return denied;
+   }//end notManaged
+
+   // books one night with a bookingID taken from the sequence; a night already booked is left alone.
+   static final String BOOK_NIGHT =
+      "INSERT INTO RoomBookings (bookingID, customerID, hotelID, roomNumber, bookingDate) VALUES (?, ?, ?, ?, ?) " +
+      "ON CONFLICT (hotelID, roomNumber, bookingDate) DO NOTHING";
+
+   static final String UPDATE_PRICE =
+      "UPDATE Rooms SET price = ? WHERE hotelID = ? AND roomNumber = ?";
+
+   static final String LOG_ROOM_UPDATE =
+      "INSERT INTO RoomUpdatesLog (managerID, hotelID, roomNumber, updatedOn) VALUES (?, ?, ?, ?)";
+
+   static final String INSERT_REPAIR =
+      "INSERT INTO RoomRepairs (repairID, companyID, hotelID, roomNumber, repairDate) VALUES (?, ?, ?, ?, ?)";
+
+   static final String INSERT_REPAIR_REQUEST =
+      "INSERT INTO RoomRepairRequests (managerID, repairID) VALUES (?, ?)";
+
+   /**
+    * One write of a bulk job: booking a night, changing a room's price or
+    * placing a repair request. Changes are handed to applyChanges in groups.
+    */
+   public static final class Change {
+      static final int BOOK = 0;
+      static final int PRICE = 1;
+      static final int REPAIR = 2;
+
+      final int kind;
+      final int userID;
+      final int hotelID;
+      final int roomNumber;
+      // the new price, or the companyID of a repair.
+      final int value;
+      final LocalDate date;
+
+      private Change(int kind, int userID, int hotelID, int roomNumber, int value, LocalDate date){
+         this.kind = kind;
+         this.userID = userID;
+         this.hotelID = hotelID;
+         this.roomNumber = roomNumber;
+         this.value = value;
+         this.date = date;
+      }
+
+      public static Change book (int customerID, int hotelID, int roomNumber, LocalDate night){
+         return new Change (BOOK, customerID, hotelID, roomNumber, 0, night);
+      }
+
+      public static Change price (int managerID, int hotelID, int roomNumber, int price){
+         return new Change (PRICE, managerID, hotelID, roomNumber, price, null);
+      }
+
+      public static Change repair (int managerID, int companyID, int hotelID, int roomNumber, LocalDate repairDate){
+         return new Change (REPAIR, managerID, hotelID, roomNumber, companyID, repairDate);
+      }
+   }//end Change
+
+   /**
+    * Method to apply a group of changes in one transaction. The changes of
+    * each kind go to the server as one JDBC batch per statement, with the
+    * bookingIDs and repairIDs taken from the IdAllocator beforehand, so a
+    * group costs a handful of round trips whatever its size. Bookings run
+    * first, then price changes, then repairs; within a kind the order of
+    * the list is kept. Bookings of a night that cannot be booked (see
+    * checkBookable), and price changes and repairs of a hotel their user
+    * does not manage, are skipped. If any statement fails the whole group
+    * is rolled back and nothing is applied.
+    *
+    * @param changes the changes to apply
+    * @return one result per change, in the order of the list: the new
+    *         bookingID, or 0 when the night was already booked; 1 when the
+    *         price was changed, or 0 when the room does not exist; the new
+    *         repairID; -1 for a skipped change
+    * @throws java.sql.SQLException when a statement fails
+    */
+   public int[] applyChanges (final List<Change> changes) throws SQLException {
+      int bookings = 0, repairs = 0;
+      final boolean[] unbookable = new boolean[changes.size ()];
+      for (int i = 0; i < changes.size (); ++i){
+         Change c = changes.get (i);
+         if (c.kind == Change.BOOK){
+            if (!bookable (c.date)){
+               unbookable[i] = true;
+               continue;
+            }
+            _esql.partitions ().ensure (c.date);
+            ++bookings;
+         }
+         else if (c.kind == Change.REPAIR)
+            ++repairs;
+      }
+      final int[] bookingIDs = bookings == 0 ? new int[0] : _esql.ids ("roombookings_bookingid_seq").next (bookings);
+      final int[] repairIDs = repairs == 0 ? new int[0] : _esql.ids ("roomrepairs_repairid_seq").next (repairs);
+
+      final int[] results = _esql.executeInTransaction (new TransactionWork<int[]>(){
+         public int[] run (Connection conn, StatementCache statements) throws SQLException {
+            int[] results = new int[changes.size ()];
+            int[] positions = new int[changes.size ()];
+            boolean[] denied = notManaged (statements, changes);
+
+            // bookings
+            int n = 0;
+            PreparedStatement book = null;
+            for (int i = 0; i < changes.size (); ++i){
+               Change c = changes.get (i);
+               if (c.kind != Change.BOOK)
+                  continue;
+               if (unbookable[i]){
+                  results[i] = -1;
+                  continue;
+               }
+               if (book == null)
+                  book = statements.prepare (BOOK_NIGHT);
+               Hotel.bind (book, new Object[]{ bookingIDs[n], c.userID, c.hotelID, c.roomNumber, java.sql.Date.valueOf (c.date) });
+               book.addBatch ();
+               positions[n++] = i;
+            }
+            if (book != null){
+               int[] counts = book.executeBatch ();
+               for (int k = 0; k < n; ++k)
+                  results[positions[k]] = counts[k] == 0 ? 0 : bookingIDs[k];
+            }
+
+            // price changes, logged only for the rooms that exist
+            n = 0;
+            PreparedStatement price = null;
+            for (int i = 0; i < changes.size (); ++i){
+               Change c = changes.get (i);
+               if (c.kind != Change.PRICE)
+                  continue;
+               if (denied[i]){
+                  results[i] = -1;
+                  continue;
+               }
+               if (price == null)
+                  price = statements.prepare (UPDATE_PRICE);
+               Hotel.bind (price, new Object[]{ c.value, c.hotelID, c.roomNumber });
+               price.addBatch ();
+               positions[n++] = i;
+            }
+            if (price != null){
+               int[] counts = price.executeBatch ();
+               PreparedStatement log = statements.prepare (LOG_ROOM_UPDATE);
+               Timestamp now = new Timestamp (System.currentTimeMillis ());
+               boolean logged = false;
+               for (int k = 0; k < n; ++k){
+                  if (counts[k] == 0)
+                     continue;
+                  Change c = changes.get (positions[k]);
+                  Hotel.bind (log, new Object[]{ c.userID, c.hotelID, c.roomNumber, now });
+                  log.addBatch ();
+                  logged = true;
+                  results[positions[k]] = 1;
+               }
+               if (logged)
+                  log.executeBatch ();
+            }
+
+            // repairs, then the requests pointing at them
+            n = 0;
+            PreparedStatement repair = null;
+            for (int i = 0; i < changes.size (); ++i){
+               Change c = changes.get (i);
+               if (c.kind != Change.REPAIR)
+                  continue;
+               if (denied[i]){
+                  results[i] = -1;
+                  continue;
+               }
+               if (repair == null)
+                  repair = statements.prepare (INSERT_REPAIR);
+               Hotel.bind (repair, new Object[]{ repairIDs[n], c.value, c.hotelID, c.roomNumber, java.sql.Date.valueOf (c.date) });
+               repair.addBatch ();
+               positions[n++] = i;
+            }
+            if (repair != null){
+               repair.executeBatch ();
+               PreparedStatement request = statements.prepare (INSERT_REPAIR_REQUEST);
+               for (int k = 0; k < n; ++k){
+                  Hotel.bind (request, new Object[]{ changes.get (positions[k]).userID, repairIDs[k] });
+                  request.addBatch ();
+                  results[positions[k]] = repairIDs[k];
+               }
+               request.executeBatch ();
+            }
+            return results;
+         }
+      });
+
+      for (int i = 0; i < changes.size (); ++i){
+         Change c = changes.get (i);
+         if (c.kind == Change.BOOK && !unbookable[i])
+            _esql.availability ().recordBooking (c.hotelID, c.roomNumber, c.date);
+      }
+      return results;
+   }//end applyChanges
+
+   // number of customers listed by viewRegularCustomers.
+   static final int TOP_CUSTOMERS = 5;
+
+   // the customers with the most bookings at a hotel, read from the counts kept by the RoomBookings triggers.
+   static final String TOP_CUSTOMERS_OF_HOTEL =
+      "SELECT c.customerID, u.name, c.bookings " +
+      "FROM CustomerBookingCounts c JOIN Users u ON u.userID = c.customerID " +
+      "WHERE c.hotelID = ? ORDER BY c.bookings DESC, c.customerID LIMIT ?";
+
+   /**
+    * Method to list the customers who booked a hotel most often. The counts
+    * are maintained by triggers on every change to RoomBookings, so this is
+    * a read of the first entries of the (hotelID, bookings DESC) index.
+    *
+    * @param hotelID the hotel whose customers are ranked
+    * @param limit the maximum number of customers returned
+    * @return customerID, name and bookings of each customer, most bookings first
+    * @throws java.sql.SQLException when the query fails
+    */
+   public TypedResult topCustomers (int hotelID, int limit) throws SQLException {
+      return _esql.executeQueryAndReturnTypedResult (TOP_CUSTOMERS_OF_HOTEL, hotelID, limit);
+   }//end topCustomers
+
+   // occupancy and revenue of a manager's hotels over a range of days, summed from the rollup kept by triggers.
+   static final String OCCUPANCY_OF_HOTELS =
+      "SELECT h.hotelID, h.hotelName, r.rooms, COALESCE(sum(s.bookedRooms), 0) AS bookedNights, " +
+      "round(100.0 * COALESCE(sum(s.bookedRooms), 0) / GREATEST(r.rooms * ?, 1), 1) AS occupancy, " +
+      "COALESCE(sum(s.revenue), 0)::bigint AS revenue " +
+      "FROM Hotel h CROSS JOIN LATERAL (SELECT count(*) AS rooms FROM Rooms WHERE hotelID = h.hotelID) r " +
+      "LEFT JOIN HotelDailyStats s ON s.hotelID = h.hotelID AND s.day BETWEEN ? AND ? " +
+      "WHERE h.managerUserID = ? GROUP BY h.hotelID, h.hotelName, r.rooms ORDER BY h.hotelID";
+
+   /**
+    * Method to report how full every hotel a manager manages was from one
+    * day to another, and what the booked nights are worth: at the rooms'
+    * current prices from today on, and at the prices of the time before
+    * that. The numbers come from HotelDailyStats, one row per
+    * hotel and day, which triggers keep up to date as bookings are made and
+    * prices change, so a month costs about 30 rows per hotel however many
+    * bookings it holds.
+    *
+    * @param managerID the manager whose hotels are reported
+    * @param from the first day included
+    * @param to the last day included
+    * @return hotelID, hotelName, rooms, bookedNights, occupancy (percent of
+    *         the room nights in the range) and revenue of each hotel, by hotelID
+    * @throws java.sql.SQLException when the query fails
+    */
+   public TypedResult occupancy (int managerID, LocalDate from, LocalDate to) throws SQLException {
+      if (to.isBefore (from))
+         throw new IllegalArgumentException ("The last day is before the first day");
+      int days = (int) (to.toEpochDay () - from.toEpochDay () + 1);
+      return _esql.executeQueryAndReturnTypedResult (OCCUPANCY_OF_HOTELS,
+         days, java.sql.Date.valueOf (from), java.sql.Date.valueOf (to), managerID);
+   }//end occupancy
+
+   /**
+    * Method to take the months ending on or before a date out of
+    * RoomBookings (see BookingPartitions.detachBefore). The availability
+    * index is dropped as well, since it still holds the detached nights.
+    *
+    * @param before the day after the last month detached
+    * @return the names the detached tables were renamed to
+    * @throws java.sql.SQLException when the months cannot be detached
+    */
+   public List<String> detachBookings (LocalDate before) throws SQLException {
+      try{
+         return _esql.partitions ().detachBefore (before);
+      }finally{
+         _esql.availability ().invalidateAll ();
+      }
+   }//end detachBookings
+
+}//end HotelService
@@ -0,0 +1,172 @@
+import java.sql.SQLException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class hands out values of one database sequence from memory so that
+ * batched inserts can set their keys themselves instead of leaving them to
+ * the column default one row at a time.
+ *
+ * Values are reserved a block at a time with a single
+ * "SELECT nextval(seq) FROM generate_series(1, n)" and then claimed with an
+ * atomic increment, so threads taking IDs never wait on each other. Once a
+ * quarter of a block is left, the next block is fetched in the background;
+ * a thread only goes to the database itself when both blocks are used up.
+ * A batch takes its values as one range of the block; when it wants at
+ * least a block more than is left, the shortfall is reserved in one
+ * query of its own.
+ *
+ * Reserved values that are never used are lost when the process exits,
+ * which leaves gaps in the keys like any rolled back nextval does.
+ */
+public class IdAllocator {
+
+   // fetches the next block off the caller's thread, shared by every allocator.
+   private static final ExecutorService PREFETCHER = Executors.newSingleThreadExecutor(new ThreadFactory(){
+      public Thread newThread(Runnable r){
+         Thread t = new Thread(r, "id-allocator-prefetch");
+         t.setDaemon(true);
+         return t;
+      }
+   });
+
+   private final Hotel _esql;
+   private final String _sequence;
+   private final int _blockSize;
+
+   private final AtomicReference<Block> _current = new AtomicReference<Block>(new Block(new int[0]));
+   private final AtomicReference<Block> _next = new AtomicReference<Block>();
+   private final AtomicBoolean _prefetching = new AtomicBoolean(false);
+
+   // a reserved run of sequence values and the position of the next one to hand out.
+   private static final class Block {
+      final int[] ids;
+      final AtomicInteger cursor = new AtomicInteger(0);
+      final int lowWater;
+
+      Block(int[] ids){
+         this.ids = ids;
+         this.lowWater = ids.length - Math.max(1, ids.length / 4);
+      }
+   }//end Block
+
+   /**
+    * Creates an allocator over a sequence; nothing is reserved until the
+    * first ID is asked for.
+    *
+    * @param esql the data access object used to reserve values
+    * @param sequence the name of the sequence, e.g. roombookings_bookingid_seq
+    * @param blockSize the number of values reserved per round trip
+    */
+   public IdAllocator(Hotel esql, String sequence, int blockSize){
+      if (blockSize < 1)
+         throw new IllegalArgumentException("blockSize must be at least 1");
+      this._esql = esql;
+      this._sequence = sequence;
+      this._blockSize = blockSize;
+   }//end IdAllocator
+
+   /**
+    * Method to take the next reserved value of the sequence.
+    *
+    * @return a value no other caller receives
+    * @throws java.sql.SQLException when a new block has to be reserved and that fails
+    */
+   public int next() throws SQLException {
+      while (true){
+         Block block = _current.get();
+         int i = block.cursor.getAndIncrement();
+         if (i < block.ids.length){
+            if (i == block.lowWater)
+               prefetch();
+            return block.ids[i];
+         }
+         refill(block);
+      }
+   }//end next
+
+   /**
+    * Method to take several values at once, e.g. one per row of a batch.
+    * The values left in the current block are claimed with one update of
+    * its cursor; the rest come from the next block or, when there are at
+    * least a block's worth, from one query reserving exactly that many.
+    *
+    * @param count the number of values wanted
+    * @return the values in the order they were taken
+    * @throws java.sql.SQLException when a new block has to be reserved and that fails
+    */
+   public int[] next(int count) throws SQLException {
+      int[] ids = new int[count];
+      int taken = 0;
+      while (taken < count){
+         Block block = _current.get();
+         int start, end;
+         do{
+            start = block.cursor.get();
+            end = Math.max(start, Math.min(block.ids.length, start + count - taken));
+         }while (end > start && !block.cursor.compareAndSet(start, end));
+         if (end > start){
+            System.arraycopy(block.ids, start, ids, taken, end - start);
+            taken += end - start;
+            if (start <= block.lowWater && block.lowWater < end)
+               prefetch();
+         }else if (count - taken >= _blockSize){
+            int[] rest = fetch(count - taken).ids;
+            System.arraycopy(rest, 0, ids, taken, rest.length);
+            taken += rest.length;
+         }else{
+            refill(block);
+         }
+      }
+      return ids;
+   }//end next
+
+   /**
+    * @return the name of the sequence values are taken from
+    */
+   public String sequence(){
+      return _sequence;
+   }
+
+   // swaps in the prefetched block, or fetches one, unless another thread already did.
+   private synchronized void refill(Block exhausted) throws SQLException {
+      if (_current.get() != exhausted)
+         return;
+      Block block = _next.getAndSet(null);
+      if (block == null)
+         block = fetch(_blockSize);
+      _current.set(block);
+   }//end refill
+
+   private void prefetch(){
+      if (_next.get() != null || !_prefetching.compareAndSet(false, true))
+         return;
+      PREFETCHER.execute(new Runnable(){
+         public void run(){
+            try{
+               _next.compareAndSet(null, fetch(_blockSize));
+            }catch (SQLException e){
+               // the thread that runs out fetches the block itself and sees the error.
+            }finally{
+               _prefetching.set(false);
+            }
+         }
+      });
+   }//end prefetch
+
+   private Block fetch(int count) throws SQLException {
+      TypedResult values = _esql.executeQueryAndReturnTypedResult(
+         "SELECT nextval(?::regclass) FROM generate_series(1, ?)", _sequence, count);
+      int[] ids = new int[values.rowCount()];
+      for (int i = 0; i < ids.length; ++i)
+         ids[i] = values.getInt(i, 0);
+      if (ids.length == 0)
+         throw new SQLException("No values could be reserved from " + _sequence);
+      return new Block(ids);
+   }//end fetch
+
+}//end IdAllocator
@@ -0,0 +1,203 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class times the query behind every menu operation twice: once with
+ * the indexes of create_indexes.sql dropped and once with them created.
+ * It is meant to run against a scratch database loaded by
+ * sql/scripts/benchmark_indexes.sh, never against real data, because it
+ * drops and recreates indexes.
+ *
+ * The statements are the ones Hotel.java issues, with parameters taken from
+ * the busiest hotel, customer and manager in the dataset.
+ */
+public class IndexBenchmark {
+
+   private static final int WARMUP = 3;
+
+   // one menu query with the parameters it is timed with.
+   private static final class Query {
+      final String name;
+      final String sql;
+      final Object[] params;
+      double[] withoutIndexes;
+      double[] withIndexes;
+      int rows;
+
+      Query(String name, String sql, Object... params){
+         this.name = name;
+         this.sql = sql;
+         this.params = params;
+      }
+   }//end Query
+
+   public static void main (String[] args) {
+      if (args.length < 4) {
+         System.err.println (
+            "Usage: java IndexBenchmark <scratch dbname> <port> <user> <create_indexes.sql> [iterations]");
+         return;
+      }//end if
+
+      Hotel esql = null;
+      try{
+         Class.forName ("org.postgresql.Driver").newInstance ();
+         esql = new Hotel (args[0], args[1], args[2], "");
+         int iterations = args.length > 4 ? Integer.parseInt (args[4]) : 20;
+
+         List<String> creates = readCreateIndexes (args[3]);
+         List<Query> queries = menuQueries (esql);
+
+         for (String create : creates)
+            esql.executeUpdate ("DROP INDEX IF EXISTS " + indexName (create));
+         esql.executeUpdate ("ANALYZE");
+         for (Query q : queries)
+            q.withoutIndexes = time (esql, q, iterations);
+
+         for (String create : creates)
+            esql.executeUpdate (create);
+         esql.executeUpdate ("ANALYZE");
+         for (Query q : queries)
+            q.withIndexes = time (esql, q, iterations);
+
+         report (queries, iterations);
+      }catch(Exception e){
+         System.err.println (e.getMessage ());
+      }finally{
+         if (esql != null)
+            esql.cleanup ();
+      }//end try
+   }//end main
+
+   // builds the menu queries with parameters picked from the loaded data.
+   private static List<Query> menuQueries (Hotel esql) throws SQLException {
+      TypedResult busiest = esql.executeQueryAndReturnTypedResult (
+         "SELECT rb.hotelID, h.managerUserID, h.latitude, h.longitude, max(rb.bookingDate) " +
+         "FROM RoomBookings rb, Hotel h WHERE rb.hotelID = h.hotelID " +
+         "GROUP BY rb.hotelID, h.managerUserID, h.latitude, h.longitude ORDER BY count(*) DESC LIMIT 1");
+      TypedResult customer = esql.executeQueryAndReturnTypedResult (
+         "SELECT customerID FROM RoomBookings GROUP BY customerID ORDER BY count(*) DESC LIMIT 1");
+      if (busiest.rowCount () == 0 || customer.rowCount () == 0)
+         throw new SQLException ("The benchmark database has no bookings; load it with benchmark_indexes.sh first");
+
+      int hotelID = busiest.getInt (0, 0);
+      int managerID = busiest.getInt (0, 1);
+      BigDecimal lat = BigDecimal.valueOf (busiest.getDouble (0, 2));
+      BigDecimal lon = BigDecimal.valueOf (busiest.getDouble (0, 3));
+      java.sql.Date last = java.sql.Date.valueOf (busiest.getDate (0, 4));
+      java.sql.Date first = java.sql.Date.valueOf (busiest.getDate (0, 4).minusDays (30));
+      int customerID = customer.getInt (0, 0);
+      BigDecimal radius = BigDecimal.valueOf (HotelService.HOTEL_SEARCH_RADIUS);
+
+      List<Query> queries = new ArrayList<Query> ();
+      queries.add (new Query ("viewHotels",
+         "SELECT hotelID, hotelName, latitude, longitude, dateEstablished FROM Hotel " +
+         "WHERE latitude BETWEEN ? AND ? AND longitude BETWEEN ? AND ? " +
+         "AND calculate_distance(latitude, longitude, ?, ?) <= ? ORDER BY hotelID",
+         lat.subtract (radius), lat.add (radius), lon.subtract (radius), lon.add (radius), lat, lon, radius));
+      queries.add (new Query ("viewRooms (rooms)",
+         "SELECT roomNumber, price FROM Rooms WHERE hotelID = ? ORDER BY roomNumber", hotelID));
+      queries.add (new Query ("viewRooms (availability load)",
+         AvailabilityIndex.LOAD_BOOKINGS, hotelID, first));
+      queries.add (new Query ("bookRooms (night check)",
+         HotelService.STAY_CONFLICTS, hotelID, new int[]{ 1 }, last, last));
+      queries.add (new Query ("viewRecentBookingsfromCustomer",
+         HotelService.RECENT_BOOKINGS, customerID, HotelService.RECENT_PAGE_SIZE));
+      queries.add (new Query ("managed hotels list",
+         "SELECT DISTINCT h.hotelName, h.hotelID FROM Hotel h, Rooms r " +
+         "WHERE h.hotelID = r.hotelID AND managerUserID = ? ORDER BY h.hotelID", managerID));
+      queries.add (new Query ("viewRecentUpdates",
+         HotelService.RECENT_UPDATES, managerID, HotelService.RECENT_PAGE_SIZE));
+      queries.add (new Query ("viewBookingHistoryofHotel (range)",
+         "SELECT rb.bookingID, rb.bookingDate, rb.hotelID, rb.roomNumber, u.name " +
+         "FROM RoomBookings rb, Hotel h, Users u " +
+         "WHERE rb.customerID = u.userID AND rb.hotelID = h.hotelID AND h.managerUserID = ? " +
+         "AND rb.bookingDate BETWEEN ? AND ? ORDER BY rb.bookingDate", managerID, first, last));
+      queries.add (new Query ("viewBookingHistoryofHotel (all)",
+         "SELECT rb.bookingID, rb.bookingDate, rb.hotelID, rb.roomNumber, u.name " +
+         "FROM RoomBookings rb, Hotel h, Users u " +
+         "WHERE rb.customerID = u.userID AND rb.hotelID = h.hotelID AND h.managerUserID = ? " +
+         "ORDER BY rb.bookingDate", managerID));
+      queries.add (new Query ("viewRegularCustomers",
+         HotelService.TOP_CUSTOMERS_OF_HOTEL, hotelID, HotelService.TOP_CUSTOMERS));
+      queries.add (new Query ("viewOccupancy",
+         HotelService.OCCUPANCY_OF_HOTELS, 31, first, last, managerID));
+      queries.add (new Query ("viewRoomRepairHistory",
+         "SELECT rr.companyID, rr.hotelID, rr.roomNumber, rr.repairDate " +
+         "FROM RoomRepairs rr, RoomRepairRequests q WHERE rr.repairID = q.repairID AND q.managerID = ?",
+         managerID));
+      return queries;
+   }//end menuQueries
+
+   // runs a query a few times untimed, then returns the sorted latencies in milliseconds.
+   private static double[] time (Hotel esql, Query q, int iterations) throws SQLException {
+      for (int i = 0; i < WARMUP; ++i)
+         q.rows = esql.executeQuery (q.sql, q.params);
+      double[] millis = new double[iterations];
+      for (int i = 0; i < iterations; ++i){
+         long start = System.nanoTime ();
+         esql.executeQuery (q.sql, q.params);
+         millis[i] = (System.nanoTime () - start) / 1e6;
+      }
+      Arrays.sort (millis);
+      return millis;
+   }//end time
+
+   private static void report (List<Query> queries, int iterations){
+      System.out.println ();
+      System.out.println ("Latency per menu query over " + iterations + " runs (milliseconds)");
+      System.out.println (String.format ("%-36s %8s %12s %12s %12s %12s %8s",
+         "query", "rows", "p50 no idx", "p95 no idx", "p50 idx", "p95 idx", "speedup"));
+      for (Query q : queries){
+         double before = percentile (q.withoutIndexes, 0.50);
+         double after = percentile (q.withIndexes, 0.50);
+         System.out.println (String.format ("%-36s %8d %12.3f %12.3f %12.3f %12.3f %7.1fx",
+            q.name, q.rows, before, percentile (q.withoutIndexes, 0.95),
+            after, percentile (q.withIndexes, 0.95), after > 0 ? before / after : 0.0));
+      }
+   }//end report
+
+   private static double percentile (double[] sorted, double p){
+      int i = (int) Math.ceil (p * sorted.length) - 1;
+      return sorted[Math.max (0, Math.min (sorted.length - 1, i))];
+   }
+
+   // reads the CREATE INDEX statements of create_indexes.sql, skipping comments.
+   static List<String> readCreateIndexes (String path) throws IOException {
+      StringBuilder sql = new StringBuilder ();
+      BufferedReader reader = new BufferedReader (new FileReader (path));
+      try{
+         String line;
+         while ((line = reader.readLine ()) != null){
+            if (!line.trim ().startsWith ("--"))
+               sql.append (line).append ('\n');
+         }
+      }finally{
+         reader.close ();
+      }
+      List<String> creates = new ArrayList<String> ();
+      for (String statement : sql.toString ().split (";")){
+         if (statement.trim ().toUpperCase ().startsWith ("CREATE"))
+            creates.add (statement.trim ());
+      }
+      return creates;
+   }//end readCreateIndexes
+
+   private static final Pattern INDEX_NAME =
+      Pattern.compile ("CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+(\\w+)", Pattern.CASE_INSENSITIVE);
+
+   static String indexName (String create){
+      Matcher m = INDEX_NAME.matcher (create);
+      if (!m.find ())
+         throw new IllegalArgumentException ("Not a CREATE INDEX statement: " + create);
+      return m.group (1);
+   }
+
+}//end IndexBenchmark
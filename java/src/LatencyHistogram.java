@@ -0,0 +1,120 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class counts durations in buckets whose width grows with the value,
+ * so that percentiles can be read with a bounded relative error without
+ * keeping the samples.
+ *
+ * Values below 16 ns get a bucket each; above that every power of two is
+ * split into 16 buckets, which keeps each bucket within 1/16 (about 6%) of
+ * the values it holds. Recording is one atomic increment of a bucket plus
+ * the adders for the count and sum, so threads recording at the same time
+ * never block each other.
+ */
+public class LatencyHistogram {
+
+   private static final int SUB_BUCKET_BITS = 4;
+   private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+   private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+   private final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+   private final LongAdder _count = new LongAdder();
+   private final LongAdder _sum = new LongAdder();
+   private final AtomicLong _max = new AtomicLong();
+
+   /**
+    * Method to count one duration.
+    *
+    * @param nanos the duration in nanoseconds; negative values count as 0
+    */
+   public void record(long nanos){
+      if (nanos < 0)
+         nanos = 0;
+      _buckets.incrementAndGet(bucketOf(nanos));
+      _count.increment();
+      _sum.add(nanos);
+      long max = _max.get();
+      while (nanos > max && !_max.compareAndSet(max, nanos))
+         max = _max.get();
+   }//end record
+
+   /**
+    * @return the number of durations recorded
+    */
+   public long count(){
+      return _count.sum();
+   }
+
+   /**
+    * @return the mean duration in nanoseconds, or 0 when nothing was recorded
+    */
+   public long mean(){
+      long count = _count.sum();
+      return count == 0 ? 0 : _sum.sum() / count;
+   }
+
+   /**
+    * @return the longest duration recorded in nanoseconds
+    */
+   public long max(){
+      return _max.get();
+   }
+
+   /**
+    * Method to estimate a percentile from the buckets. The answer is the
+    * upper bound of the bucket holding the percentile, so it overstates the
+    * true value by at most the width of one bucket.
+    *
+    * @param fraction the percentile as a fraction, e.g. 0.99
+    * @return the duration in nanoseconds, or 0 when nothing was recorded
+    */
+   public long percentile(double fraction){
+      long[] counts = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; ++i){
+         counts[i] = _buckets.get(i);
+         total += counts[i];
+      }
+      if (total == 0)
+         return 0;
+      long rank = Math.max(1, (long) Math.ceil(fraction * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; ++i){
+         seen += counts[i];
+         if (seen >= rank)
+            return Math.min(upperBound(i), _max.get());
+      }
+      return _max.get();
+   }//end percentile
+
+   /**
+    * Method to forget every recorded duration. Durations recorded while the
+    * reset runs may be partly kept.
+    */
+   public void reset(){
+      for (int i = 0; i < BUCKETS; ++i)
+         _buckets.set(i, 0);
+      _count.reset();
+      _sum.reset();
+      _max.set(0);
+   }//end reset
+
+   static int bucketOf(long value){
+      if (value < SUB_BUCKETS)
+         return (int) value;
+      int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+      int sub = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+      return (shift + 1) * SUB_BUCKETS + sub;
+   }//end bucketOf
+
+   static long upperBound(int bucket){
+      if (bucket < SUB_BUCKETS)
+         return bucket;
+      int shift = bucket / SUB_BUCKETS - 1;
+      long sub = bucket % SUB_BUCKETS;
+      return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+   }//end upperBound
+
+}//end LatencyHistogram
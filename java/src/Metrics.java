@@ -0,0 +1,258 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps the latency and volume statistics of every SQL statement
+ * template run by Hotel and of every operation a user asked for.
+ *
+ * A statement is recorded by the executor methods of Hotel under its SQL
+ * text, which is a template since the values are bound as parameters. An
+ * operation is a named scope opened with begin() around a menu function,
+ * an HTTP request or a batch group; the statements run on its thread while
+ * it is open add their time, rows, bytes and round trips to it. The time
+ * recorded for an operation is the time its statements took, so the minutes
+ * a terminal user spends at a prompt do not count.
+ *
+ * The statistics are registered as MBeans under hoteldbms:type=Sql and
+ * hoteldbms:type=Operation (hotel.metrics.jmx, on by default) and, when
+ * hotel.metrics.dumpMillis is set, appended to the CSV file
+ * hotel.metrics.file at that interval and once more at exit. With
+ * hotel.metrics.report set they are printed to stderr as a table at exit.
+ */
+public final class Metrics {
+
+   static final boolean JMX = Boolean.parseBoolean(System.getProperty("hotel.metrics.jmx", "true"));
+   static final long DUMP_MILLIS = Long.getLong("hotel.metrics.dumpMillis", 0L);
+   static final String DUMP_FILE = System.getProperty("hotel.metrics.file", "hotel-metrics.csv");
+
+   private static final ConcurrentHashMap<String, OperationStats> STATEMENTS = new ConcurrentHashMap<String, OperationStats>();
+   private static final ConcurrentHashMap<String, OperationStats> OPERATIONS = new ConcurrentHashMap<String, OperationStats>();
+
+   // the innermost operation open on each thread.
+   private static final ThreadLocal<Operation> CURRENT = new ThreadLocal<Operation>();
+
+   private static final AtomicBoolean DUMPING = new AtomicBoolean(false);
+
+   static {
+      if (Boolean.getBoolean("hotel.metrics.report") || DUMP_MILLIS > 0){
+         Runtime.getRuntime().addShutdownHook(new Thread("metrics-report"){
+            public void run(){
+               if (Boolean.getBoolean("hotel.metrics.report"))
+                  report(System.err);
+               if (DUMPING.get()){
+                  try{
+                     dump(new File(DUMP_FILE));
+                  }catch (IOException e){
+                     // the last interval is lost; the earlier ones are in the file.
+                  }
+               }
+            }
+         });
+      }
+   }
+
+   /**
+    * An operation in progress. Close it with end() in a finally block on
+    * the thread that began it.
+    */
+   public static final class Operation {
+      private final String _name;
+      private final Operation _parent;
+      private long _nanos = 0;
+      private long _rows = 0;
+      private long _bytes = 0;
+      private long _roundTrips = 0;
+      private boolean _failed = false;
+
+      private Operation(String name, Operation parent){
+         this._name = name;
+         this._parent = parent;
+      }
+
+      private void add(long nanos, boolean failed, long rows, long bytes, long roundTrips){
+         _nanos += nanos;
+         _failed |= failed;
+         _rows += rows;
+         _bytes += bytes;
+         _roundTrips += roundTrips;
+      }
+
+      /**
+       * Method to close the operation and record it. What it measured is
+       * also added to the operation it was begun in, if any.
+       */
+      public void end(){
+         stats(OPERATIONS, "Operation", _name).record(_nanos, _failed, _rows, _bytes, _roundTrips);
+         if (_parent != null)
+            _parent.add(_nanos, _failed, _rows, _bytes, _roundTrips);
+         CURRENT.set(_parent);
+      }//end end
+   }//end Operation
+
+   private Metrics(){
+   }
+
+   /**
+    * Method to open an operation on the current thread.
+    *
+    * @param name the operation, e.g. "viewRooms" or "GET /rooms"
+    * @return the operation, to be ended when it is done
+    */
+   public static Operation begin(String name){
+      Operation op = new Operation(name, CURRENT.get());
+      CURRENT.set(op);
+      return op;
+   }//end begin
+
+   /**
+    * @return the name of the innermost operation open on the current thread, or null
+    */
+   public static String currentOperation(){
+      Operation op = CURRENT.get();
+      return op == null ? null : op._name;
+   }
+
+   /**
+    * Method to record one execution of a statement, and add it to the
+    * operation open on the current thread.
+    *
+    * @param sql the SQL template
+    * @param nanos how long the statement took, including waiting for a connection
+    * @param failed whether it threw
+    * @param rows rows returned or changed
+    * @param bytes bytes of results kept in memory
+    * @param roundTrips messages exchanged with the server
+    */
+   public static void statement(String sql, long nanos, boolean failed, long rows, long bytes, long roundTrips){
+      stats(STATEMENTS, "Sql", sql).record(nanos, failed, rows, bytes, roundTrips);
+      Operation op = CURRENT.get();
+      if (op != null)
+         op.add(nanos, failed, rows, bytes, roundTrips);
+      if (DUMP_MILLIS > 0 && !DUMPING.get() && DUMPING.compareAndSet(false, true))
+         startDumping();
+   }//end statement
+
+   /**
+    * @return the statistics of every statement template, by SQL text
+    */
+   public static Map<String, OperationStats> statements(){
+      return new TreeMap<String, OperationStats>(STATEMENTS);
+   }
+
+   /**
+    * @return the statistics of every operation, by name
+    */
+   public static Map<String, OperationStats> operations(){
+      return new TreeMap<String, OperationStats>(OPERATIONS);
+   }
+
+   private static OperationStats stats(ConcurrentHashMap<String, OperationStats> map, String type, String name){
+      OperationStats stats = map.get(name);
+      if (stats == null){
+         OperationStats created = new OperationStats(name);
+         stats = map.putIfAbsent(name, created);
+         if (stats == null){
+            stats = created;
+            if (JMX)
+               register(type, created);
+         }
+      }
+      return stats;
+   }//end stats
+
+   private static void register(String type, OperationStats stats){
+      try{
+         ManagementFactory.getPlatformMBeanServer().registerMBean(stats,
+            new ObjectName("hoteldbms:type=" + type + ",name=" + ObjectName.quote(stats.getName())));
+      }catch (JMException e){
+         // the numbers are still kept and dumped without JMX.
+      }
+   }//end register
+
+   /**
+    * Method to print every operation and statement as a table, slowest p99
+    * first within each.
+    */
+   public static void report(PrintStream out){
+      out.println(String.format("%-9s %-60s %9s %6s %9s %9s %9s %9s %9s %10s %12s %8s",
+         "kind", "name", "count", "errors", "mean us", "p50 us", "p99 us", "p999 us", "max us", "rows", "bytes", "trips"));
+      report(out, "operation", OPERATIONS);
+      report(out, "sql", STATEMENTS);
+   }//end report
+
+   private static void report(PrintStream out, String kind, Map<String, OperationStats> map){
+      TreeMap<Long, OperationStats> byP99 = new TreeMap<Long, OperationStats>();
+      long tie = 0;
+      for (OperationStats s : map.values())
+         byP99.put(-s.getP99Micros() * 100000 - (tie++ % 100000), s);
+      for (OperationStats s : byP99.values()){
+         String name = s.getName().replaceAll("\\s+", " ");
+         if (name.length() > 60)
+            name = name.substring(0, 57) + "...";
+         out.println(String.format("%-9s %-60s %9d %6d %9d %9d %9d %9d %9d %10d %12d %8d",
+            kind, name, s.getCount(), s.getErrors(), s.getMeanMicros(), s.getP50Micros(), s.getP99Micros(),
+            s.getP999Micros(), s.getMaxMicros(), s.getRows(), s.getBytes(), s.getRoundTrips()));
+      }
+   }//end report
+
+   /**
+    * Method to append one line per operation and statement to a CSV file,
+    * writing the header first when the file is new.
+    */
+   public static void dump(File file) throws IOException {
+      boolean header = !file.exists() || file.length() == 0;
+      PrintWriter out = new PrintWriter(new FileWriter(file, true));
+      try{
+         if (header)
+            out.println("time,kind,name,count,errors,mean_us,p50_us,p99_us,p999_us,max_us,rows,bytes,round_trips");
+         long now = System.currentTimeMillis();
+         dump(out, now, "operation", OPERATIONS);
+         dump(out, now, "sql", STATEMENTS);
+      }finally{
+         out.close();
+      }
+   }//end dump
+
+   private static void dump(PrintWriter out, long now, String kind, Map<String, OperationStats> map){
+      for (OperationStats s : map.values()){
+         out.println(now + "," + kind + ",\"" + s.getName().replaceAll("\\s+", " ").replace("\"", "\"\"") + "\","
+            + s.getCount() + "," + s.getErrors() + "," + s.getMeanMicros() + "," + s.getP50Micros() + ","
+            + s.getP99Micros() + "," + s.getP999Micros() + "," + s.getMaxMicros() + ","
+            + s.getRows() + "," + s.getBytes() + "," + s.getRoundTrips());
+      }
+   }//end dump
+
+   private static void startDumping(){
+      ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+         public Thread newThread(Runnable r){
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      dumper.scheduleWithFixedDelay(new Runnable(){
+         public void run(){
+            try{
+               dump(new File(DUMP_FILE));
+            }catch (IOException e){
+               System.err.println("Unable to write metrics to " + DUMP_FILE + ": " + e.getMessage());
+            }
+         }
+      }, DUMP_MILLIS, DUMP_MILLIS, TimeUnit.MILLISECONDS);
+   }//end startDumping
+
+}//end Metrics
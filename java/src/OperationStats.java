@@ -0,0 +1,97 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class gathers the measurements of one SQL statement template or one
+ * operation: how long each execution took and how many rows, bytes and
+ * round trips it cost. Every counter is lock-free, so recording adds no
+ * contention between the threads running the same statement.
+ */
+public class OperationStats implements OperationStatsMBean {
+
+   private final String _name;
+   private final LatencyHistogram _latency = new LatencyHistogram();
+   private final LongAdder _errors = new LongAdder();
+   private final LongAdder _rows = new LongAdder();
+   private final LongAdder _bytes = new LongAdder();
+   private final LongAdder _roundTrips = new LongAdder();
+
+   /**
+    * Creates empty statistics.
+    *
+    * @param name the SQL template or operation measured
+    */
+   public OperationStats(String name){
+      this._name = name;
+   }
+
+   /**
+    * Method to record one execution.
+    *
+    * @param nanos how long it took
+    * @param failed whether it ended with an error
+    * @param rows rows returned or changed
+    * @param bytes bytes of results kept in memory
+    * @param roundTrips messages exchanged with the server
+    */
+   public void record(long nanos, boolean failed, long rows, long bytes, long roundTrips){
+      _latency.record(nanos);
+      if (failed)
+         _errors.increment();
+      _rows.add(rows);
+      _bytes.add(bytes);
+      _roundTrips.add(roundTrips);
+   }//end record
+
+   public String getName(){
+      return _name;
+   }
+
+   public long getCount(){
+      return _latency.count();
+   }
+
+   public long getErrors(){
+      return _errors.sum();
+   }
+
+   public long getMeanMicros(){
+      return _latency.mean() / 1000;
+   }
+
+   public long getP50Micros(){
+      return _latency.percentile(0.50) / 1000;
+   }
+
+   public long getP99Micros(){
+      return _latency.percentile(0.99) / 1000;
+   }
+
+   public long getP999Micros(){
+      return _latency.percentile(0.999) / 1000;
+   }
+
+   public long getMaxMicros(){
+      return _latency.max() / 1000;
+   }
+
+   public long getRows(){
+      return _rows.sum();
+   }
+
+   public long getBytes(){
+      return _bytes.sum();
+   }
+
+   public long getRoundTrips(){
+      return _roundTrips.sum();
+   }
+
+   public void reset(){
+      _latency.reset();
+      _errors.reset();
+      _rows.reset();
+      _bytes.reset();
+      _roundTrips.reset();
+   }
+
+}//end OperationStats
@@ -0,0 +1,35 @@
+/**
+ * The JMX view of one OperationStats, registered by Metrics under
+ * hoteldbms:type=Sql or hoteldbms:type=Operation. Durations are in
+ * microseconds.
+ */
+public interface OperationStatsMBean {
+
+   String getName();
+
+   long getCount();
+
+   long getErrors();
+
+   long getMeanMicros();
+
+   long getP50Micros();
+
+   long getP99Micros();
+
+   long getP999Micros();
+
+   long getMaxMicros();
+
+   long getRows();
+
+   long getBytes();
+
+   long getRoundTrips();
+
+   /**
+    * Forgets everything recorded so far.
+    */
+   void reset();
+
+}//end OperationStatsMBean
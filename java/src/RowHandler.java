@@ -0,0 +1,19 @@
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Callback used by Hotel.executeQueryAndStream to receive the rows of a
+ * query one at a time instead of as a materialized list.
+ */
+public interface RowHandler {
+
+   /**
+    * Called once per row. The result set is positioned on the row being
+    * delivered and must not be advanced or closed by the handler.
+    *
+    * @param rs the result set positioned on the current row
+    * @throws java.sql.SQLException when a column cannot be read
+    */
+   void handle (ResultSet rs) throws SQLException;
+
+}//end RowHandler
@@ -0,0 +1,102 @@
+import java.sql.SQLException;
+
+/**
+ * This class is one logged in user: who they are, what they may do and the
+ * hotels they manage. Every operation that acts for a user takes the
+ * session instead of reading global state, so one JVM can serve many users
+ * at once, each on their own thread.
+ *
+ * A session does not keep a database connection between operations. A
+ * terminal user spends most of a session at a prompt, and a pinned
+ * connection would hold a slot of the pool the whole time; each statement
+ * instead borrows one from the pool for as long as it runs.
+ */
+public class Session {
+
+   private final HotelService _service;
+   private final int _userID;
+   private final String _userType;
+   private final long _createdAt = System.currentTimeMillis();
+
+   // hotelName and hotelID of the hotels the user manages, loaded on first use.
+   private volatile TypedResult _managedHotels = null;
+
+   /**
+    * Creates the session of a user whose credentials were checked, see
+    * HotelService.logIn.
+    *
+    * @param service the operations the session runs
+    * @param userID the logged in user
+    * @param userType the user's type, e.g. "customer" or "manager"
+    */
+   Session(HotelService service, int userID, String userType){
+      this._service = service;
+      this._userID = userID;
+      this._userType = userType;
+   }//end Session
+
+   /**
+    * @return the userID of the logged in user
+    */
+   public int userID(){
+      return _userID;
+   }
+
+   /**
+    * @return the user's type as stored in Users
+    */
+   public String userType(){
+      return _userType;
+   }
+
+   /**
+    * @return true for customers; every other user type gets the manager operations
+    */
+   public boolean isCustomer(){
+      return _userType.equalsIgnoreCase("Customer");
+   }
+
+   /**
+    * @return when the user logged in, in milliseconds since the epoch
+    */
+   public long createdAt(){
+      return _createdAt;
+   }
+
+   /**
+    * Method to get the hotels the user manages. They are read once per
+    * session, since the menus and the server ask for them on every manager
+    * operation.
+    *
+    * @return hotelName and hotelID of each hotel, by hotelID
+    * @throws java.sql.SQLException when the hotels cannot be read
+    */
+   public TypedResult managedHotels() throws SQLException {
+      TypedResult hotels = _managedHotels;
+      if (hotels == null){
+         hotels = _service.managedHotels(_userID);
+         _managedHotels = hotels;
+      }
+      return hotels;
+   }//end managedHotels
+
+   /**
+    * @return true when the user manages the hotel
+    * @throws java.sql.SQLException when the hotels cannot be read
+    */
+   public boolean manages(int hotelID) throws SQLException {
+      TypedResult hotels = managedHotels();
+      for (int i = 0; i < hotels.rowCount(); ++i)
+         if (hotels.getInt(i, 1) == hotelID)
+            return true;
+      return false;
+   }//end manages
+
+   /**
+    * Method to forget the cached hotels so the next call reads them again.
+    */
+   public void refresh(){
+      _managedHotels = null;
+   }
+
+}//end Session
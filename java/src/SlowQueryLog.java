@@ -0,0 +1,243 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class writes every statement slower than a threshold to a local log
+ * file: when it ran, how long it took, how many rows it returned or changed,
+ * the operation it ran for, its SQL template and the parameters bound to it.
+ *
+ * A sample of the slow statements is also explained, so a plan that went
+ * wrong can be seen after the fact. The explain runs on a background thread
+ * with its own pooled connection, after the statement has returned, and is
+ * written under the same entry number. A SELECT that only calls the
+ * functions in PURE_CALLS is explained with EXPLAIN (ANALYZE, BUFFERS),
+ * which runs it again; other statements, including a SELECT that takes
+ * nextval or creates partitions, only get the plain plan so nothing is
+ * done twice. Only one explain per SQL template runs at a time, and
+ * explains that cannot keep up are dropped.
+ *
+ * A statement that reads or writes a password, see SENSITIVE, is logged
+ * without its parameters and is never explained, as a plan prints the
+ * values it was bound with.
+ *
+ * The log is off unless hotel.slowQuery.millis is set. The file is rotated
+ * by java.util.logging once it reaches hotel.slowQuery.fileBytes, keeping
+ * hotel.slowQuery.files generations.
+ */
+public class SlowQueryLog {
+
+   // statements taking at least this long are logged; 0 turns the log off.
+   static final long THRESHOLD_MILLIS = Long.getLong("hotel.slowQuery.millis", 0L);
+
+   // fraction of the slow statements explained, from 0 to 1.
+   static final double EXPLAIN_SAMPLE = Double.parseDouble(System.getProperty("hotel.slowQuery.explainSample", "0"));
+
+   // the log file; %g is replaced by the generation, 0 being the current one.
+   static final String FILE = System.getProperty("hotel.slowQuery.file", "hotel-slow.%g.log");
+   static final int FILE_BYTES = Integer.getInteger("hotel.slowQuery.fileBytes", 10 * 1024 * 1024);
+   static final int FILES = Integer.getInteger("hotel.slowQuery.files", 5);
+
+   // an explain that runs longer than this is cancelled.
+   static final int EXPLAIN_TIMEOUT_SECONDS = Integer.getInteger("hotel.slowQuery.explainTimeoutSeconds", 30);
+
+   // functions, and keywords followed by a parenthesis, that a SELECT may call and still be run again by EXPLAIN ANALYZE.
+   static final Set<String> PURE_CALLS = new HashSet<String>(Arrays.asList(
+      "select", "from", "join", "lateral", "where", "on", "and", "or", "not", "in", "any", "all", "exists",
+      "as", "values", "over", "filter", "count", "sum", "min", "max", "avg", "coalesce", "nullif",
+      "greatest", "least", "round", "abs", "substr", "lower", "upper", "to_date", "to_regclass",
+      "date_trunc", "extract", "generate_series", "calculate_distance"));
+
+   private static final Pattern CALL = Pattern.compile("([A-Za-z_][A-Za-z0-9_.]*)\\s*\\(");
+
+   // statements whose parameters must not reach the log: those touching Users.password.
+   private static final Pattern SENSITIVE = Pattern.compile("\\bpassword\\b", Pattern.CASE_INSENSITIVE);
+
+   private final ConnectionPool _pool;
+   private final long _thresholdNanos;
+   private final double _explainSample;
+   private final FileHandler _file;
+   private final Logger _log;
+   private final ThreadPoolExecutor _explainer;
+   private final AtomicLong _entries = new AtomicLong();
+
+   // templates with an explain queued or running.
+   private final Set<String> _explaining = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+   /**
+    * Creates a log writing to the given file pattern.
+    *
+    * @param pool where the explains borrow their connections
+    * @param thresholdMillis statements taking at least this long are logged
+    * @param explainSample fraction of the slow statements explained
+    * @param file the file pattern, see java.util.logging.FileHandler
+    * @param fileBytes size at which the file is rotated
+    * @param files number of files kept
+    * @throws java.io.IOException when the file cannot be opened
+    */
+   public SlowQueryLog(ConnectionPool pool, long thresholdMillis, double explainSample,
+                       String file, int fileBytes, int files) throws IOException {
+      this._pool = pool;
+      this._thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+      this._explainSample = explainSample;
+      this._file = new FileHandler(file, fileBytes, files, true);
+      this._file.setFormatter(new Formatter(){
+         public String format(LogRecord record){
+            return record.getMessage();
+         }
+      });
+      // a logger of its own that does not also print to the console.
+      this._log = Logger.getAnonymousLogger();
+      this._log.setUseParentHandlers(false);
+      this._log.addHandler(this._file);
+      this._explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+         new ArrayBlockingQueue<Runnable>(16), new ThreadFactory(){
+            public Thread newThread(Runnable r){
+               Thread t = new Thread(r, "slow-query-explain");
+               t.setDaemon(true);
+               return t;
+            }
+         }, new ThreadPoolExecutor.DiscardPolicy());
+   }//end SlowQueryLog
+
+   /**
+    * Method to create the log configured by the hotel.slowQuery system
+    * properties.
+    *
+    * @return the log, or null when hotel.slowQuery.millis is not set
+    * @throws java.io.IOException when the file cannot be opened
+    */
+   public static SlowQueryLog fromSystemProperties(ConnectionPool pool) throws IOException {
+      if (THRESHOLD_MILLIS <= 0)
+         return null;
+      return new SlowQueryLog(pool, THRESHOLD_MILLIS, EXPLAIN_SAMPLE, FILE, FILE_BYTES, FILES);
+   }//end fromSystemProperties
+
+   /**
+    * Method to log a statement if it was slow.
+    *
+    * @param sql the SQL template
+    * @param params the values bound to it, or null when it is not one statement and cannot be explained
+    * @param nanos how long it took
+    * @param rows rows returned or changed, -1 when it failed
+    */
+   public void record(String sql, Object[] params, long nanos, long rows){
+      if (nanos < _thresholdNanos)
+         return;
+      long entry = _entries.incrementAndGet();
+      String operation = Metrics.currentOperation();
+      StringBuilder sb = new StringBuilder();
+      sb.append('#').append(entry).append(' ').append(LocalDateTime.now())
+        .append(' ').append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms")
+        .append(rows < 0 ? " failed" : " rows=" + rows)
+        .append(" operation=").append(operation == null ? "-" : operation).append('\n')
+        .append("   sql: ").append(sql.replaceAll("\\s+", " ").trim()).append('\n');
+      boolean sensitive = isSensitive(sql);
+      if (params != null && params.length > 0)
+         sb.append("   params: ").append(sensitive ? "[redacted]" : Arrays.deepToString(params)).append('\n');
+      _log.log(Level.INFO, sb.toString());
+
+      if (params != null && !sensitive && rows >= 0 && _explainSample > 0
+          && ThreadLocalRandom.current().nextDouble() < _explainSample && _explaining.add(sql))
+         explainLater(entry, sql, params.clone());
+   }//end record
+
+   private void explainLater(final long entry, final String sql, final Object[] params){
+      Runnable explain = new Runnable(){
+         public void run(){
+            try{
+               _log.log(Level.INFO, explain(entry, sql, params));
+            }finally{
+               _explaining.remove(sql);
+            }
+         }
+      };
+      if (_explainer.getQueue().remainingCapacity() == 0){
+         // the explainer is behind; this one is dropped.
+         _explaining.remove(sql);
+         return;
+      }
+      _explainer.execute(explain);
+   }//end explainLater
+
+   private String explain(long entry, String sql, Object[] params){
+      boolean analyze = safeToAnalyze(sql);
+      String explain = analyze ? "EXPLAIN (ANALYZE, BUFFERS) " : "EXPLAIN ";
+      StringBuilder sb = new StringBuilder();
+      sb.append('#').append(entry).append(' ').append(explain.trim()).append('\n');
+      try{
+         Connection conn = _pool.borrow();
+         try{
+            PreparedStatement stmt = conn.prepareStatement(explain + sql);
+            try{
+               stmt.setQueryTimeout(EXPLAIN_TIMEOUT_SECONDS);
+               Hotel.bind(stmt, params);
+               ResultSet rs = stmt.executeQuery();
+               while (rs.next())
+                  sb.append("   ").append(rs.getString(1)).append('\n');
+               rs.close();
+            }finally{
+               stmt.close();
+            }
+         }finally{
+            _pool.release(conn);
+         }
+      }catch (SQLException e){
+         sb.append("   could not explain: ").append(e.getMessage()).append('\n');
+      }
+      return sb.toString();
+   }//end explain
+
+   // true for a statement that reads or writes a password, whose parameters are not logged.
+   static boolean isSensitive(String sql){
+      return SENSITIVE.matcher(sql).find();
+   }//end isSensitive
+
+   // true for a SELECT that calls nothing outside PURE_CALLS, so running it again changes nothing.
+   static boolean safeToAnalyze(String sql){
+      if (!sql.trim().regionMatches(true, 0, "SELECT", 0, 6))
+         return false;
+      Matcher call = CALL.matcher(sql);
+      while (call.find())
+         if (!PURE_CALLS.contains(call.group(1).toLowerCase(Locale.ROOT)))
+            return false;
+      return true;
+   }//end safeToAnalyze
+
+   /**
+    * Method to stop explaining and close the file. Explains still queued
+    * are dropped.
+    */
+   public void close(){
+      _explainer.shutdownNow();
+      try{
+         _explainer.awaitTermination(EXPLAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      }catch (InterruptedException e){
+         Thread.currentThread().interrupt();
+      }
+      _file.close();
+   }//end close
+
+}//end SlowQueryLog
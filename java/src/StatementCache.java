@@ -0,0 +1,141 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class keeps the most recently used PreparedStatements of one
+ * physical connection so that repeated queries skip parsing and planning.
+ *
+ * Keeping the statement open is what lets the driver switch it to a named
+ * server-side statement once it has run prepareThreshold times, a setting
+ * of the connection (see ConnectionPool); before that it is sent as a
+ * plain query so one-off statements do not pay for a named plan. The cache
+ * belongs to the connection it was created for and, like the connection, is
+ * only used by the thread that borrowed it.
+ *
+ * A statement pushed out of the cache while the connection is borrowed may
+ * still be held by the borrower, e.g. by a transaction that prepared more
+ * distinct statements than the cache holds, so a statement handed out
+ * during the current borrow is only closed when the connection is released.
+ */
+public class StatementCache {
+
+   private final Connection _connection;
+   private final int _capacity;
+
+   // statements keyed by their SQL text, least recently used first.
+   private final LinkedHashMap<String, Cached> _statements;
+
+   // statements handed out, each of which is one execution on the server.
+   private long _prepared = 0;
+
+   // counts the borrows of the connection; statements handed out in the current one are in use.
+   private long _borrow = 0;
+
+   // evicted statements that were handed out during the current borrow, closed by release().
+   private final ArrayList<PreparedStatement> _evicted = new ArrayList<PreparedStatement>();
+
+   private static final class Cached {
+      final PreparedStatement statement;
+      long borrow = -1;
+      Cached(PreparedStatement statement){
+         this.statement = statement;
+      }
+   }
+
+   /**
+    * Creates an empty cache for the given connection.
+    *
+    * @param connection the connection that owns the statements
+    * @param capacity the maximum number of statements kept open
+    */
+   public StatementCache(Connection connection, int capacity){
+      this._connection = connection;
+      this._capacity = capacity;
+      this._statements = new LinkedHashMap<String, Cached>(16, 0.75f, true){
+         protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest){
+            if (size() <= _capacity)
+               return false;
+            Cached cached = eldest.getValue();
+            if (cached.borrow == _borrow)
+               _evicted.add(cached.statement);
+            else
+               closeQuietly(cached.statement);
+            return true;
+         }
+      };
+   }//end StatementCache
+
+   /**
+    * Method to get a PreparedStatement for the given SQL, reusing the cached
+    * one when the same text was prepared before on this connection. The
+    * returned statement must not be closed by the caller.
+    *
+    * @param sql the SQL text with '?' placeholders
+    * @return a statement with its parameters cleared
+    * @throws java.sql.SQLException when the statement cannot be prepared
+    */
+   public PreparedStatement prepare(String sql) throws SQLException {
+      ++_prepared;
+      Cached entry = _statements.get(sql);
+      if (entry == null){
+         entry = new Cached(_connection.prepareStatement(sql));
+         entry.borrow = _borrow;
+         _statements.put(sql, entry);
+      }else{
+         entry.statement.clearParameters();
+         entry.borrow = _borrow;
+      }
+      return entry.statement;
+   }//end prepare
+
+   /**
+    * @return how many times prepare has been called on this cache
+    */
+   public long prepared(){
+      return _prepared;
+   }
+
+   /**
+    * @return the number of statements currently cached
+    */
+   public int size(){
+      return _statements.size();
+   }
+
+   /**
+    * Method to close the statements evicted while the connection was
+    * borrowed; called by the pool when the connection is handed back.
+    */
+   public void release(){
+      for (PreparedStatement stmt : _evicted)
+         closeQuietly(stmt);
+      _evicted.clear();
+      ++_borrow;
+   }//end release
+
+   /**
+    * Method to close every cached statement.
+    */
+   public void close(){
+      release();
+      Iterator<Cached> it = _statements.values().iterator();
+      while (it.hasNext()){
+         closeQuietly(it.next().statement);
+         it.remove();
+      }
+   }//end close
+
+   private static void closeQuietly(PreparedStatement stmt){
+      try{
+         stmt.close();
+      }catch (SQLException e){
+         // ignored.
+      }
+   }
+
+}//end StatementCache
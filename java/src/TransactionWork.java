@@ -0,0 +1,24 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A unit of work run by Hotel.executeInTransaction on one borrowed
+ * connection with autocommit off. Statements should be prepared through
+ * the given cache so they are reused across transactions.
+ *
+ * @param <T> the result of the work
+ */
+public interface TransactionWork<T> {
+
+   /**
+    * Runs the statements of the transaction. Returning commits the
+    * transaction; throwing rolls it back.
+    *
+    * @param conn the connection the transaction runs on
+    * @param statements the PreparedStatement cache of that connection
+    * @return the result handed back to the caller of executeInTransaction
+    * @throws java.sql.SQLException when a statement fails
+    */
+   T run (Connection conn, StatementCache statements) throws SQLException;
+
+}//end TransactionWork
@@ -0,0 +1,290 @@
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * This class holds a query result column by column in primitive arrays.
+ *
+ * Integer columns are kept in an int[], bigint and timestamp columns in a
+ * long[], numeric and floating point columns in a double[] and dates as
+ * epoch days in an int[]; only text columns keep one String per cell. A
+ * result of any size therefore costs a handful of arrays and callers read
+ * IDs, room numbers and prices without parsing them back out of strings.
+ */
+public class TypedResult {
+
+   // how each column is stored.
+   static final int INT = 0;
+   static final int LONG = 1;
+   static final int DOUBLE = 2;
+   static final int DATE = 3;
+   static final int TIMESTAMP = 4;
+   static final int TEXT = 5;
+
+   private final String[] _names;
+   private final int[] _kinds;
+   private final Object[] _columns;
+   private final BitSet[] _nulls;
+   private int _rowCount = 0;
+   private int _capacity = 16;
+
+   private TypedResult(ResultSetMetaData rsmd) throws SQLException {
+      int numCol = rsmd.getColumnCount();
+      _names = new String[numCol];
+      _kinds = new int[numCol];
+      _columns = new Object[numCol];
+      _nulls = new BitSet[numCol];
+      for (int c = 0; c < numCol; ++c){
+         _names[c] = rsmd.getColumnName(c + 1);
+         _kinds[c] = kindOf(rsmd.getColumnType(c + 1));
+         _columns[c] = allocate(_kinds[c], _capacity);
+         _nulls[c] = new BitSet();
+      }
+   }//end TypedResult
+
+   /**
+    * Method to read every remaining row of a result set into a new
+    * TypedResult.
+    *
+    * @param rs the result set to read; it is not closed
+    * @return the rows of the result set, column by column
+    * @throws java.sql.SQLException when a column cannot be read
+    */
+   public static TypedResult read(ResultSet rs) throws SQLException {
+      TypedResult result = new TypedResult(rs.getMetaData());
+      while (rs.next())
+         result.append(rs);
+      return result;
+   }//end read
+
+   // copies the current row of the result set into the column arrays.
+   private void append(ResultSet rs) throws SQLException {
+      if (_rowCount == _capacity)
+         grow();
+      int row = _rowCount++;
+      for (int c = 0; c < _kinds.length; ++c){
+         int i = c + 1;
+         switch (_kinds[c]){
+            case INT:
+               ((int[]) _columns[c])[row] = rs.getInt(i);
+               break;
+            case LONG:
+               ((long[]) _columns[c])[row] = rs.getLong(i);
+               break;
+            case DOUBLE:
+               ((double[]) _columns[c])[row] = rs.getDouble(i);
+               break;
+            case DATE:
+               java.sql.Date date = rs.getDate(i);
+               ((int[]) _columns[c])[row] = date == null ? 0 : (int) date.toLocalDate().toEpochDay();
+               break;
+            case TIMESTAMP:
+               java.sql.Timestamp ts = rs.getTimestamp(i);
+               ((long[]) _columns[c])[row] = ts == null ? 0L : ts.getTime();
+               break;
+            default:
+               ((String[]) _columns[c])[row] = rs.getString(i);
+               break;
+         }
+         if (rs.wasNull())
+            _nulls[c].set(row);
+      }
+   }//end append
+
+   /**
+    * @return the number of rows
+    */
+   public int rowCount(){
+      return _rowCount;
+   }
+
+   /**
+    * @return the number of columns
+    */
+   public int columnCount(){
+      return _kinds.length;
+   }
+
+   /**
+    * @return the name of a column, counting from 0
+    */
+   public String columnName(int col){
+      return _names[col];
+   }
+
+   /**
+    * @return true when the column holds integers or numbers rather than text or dates
+    */
+   public boolean isNumeric(int col){
+      return _kinds[col] == INT || _kinds[col] == LONG || _kinds[col] == DOUBLE;
+   }
+
+   /**
+    * Method to estimate the memory the rows take: the width of each
+    * primitive value, and two bytes per character of text.
+    *
+    * @return the estimated size of the rows in bytes
+    */
+   public long estimatedBytes(){
+      long bytes = 0;
+      for (int c = 0; c < _kinds.length; ++c){
+         switch (_kinds[c]){
+            case INT: case DATE: bytes += 4L * _rowCount; break;
+            case LONG: case TIMESTAMP: case DOUBLE: bytes += 8L * _rowCount; break;
+            default:
+               String[] text = (String[]) _columns[c];
+               for (int r = 0; r < _rowCount; ++r)
+                  if (text[r] != null)
+                     bytes += 2L * text[r].length();
+         }
+      }
+      return bytes;
+   }//end estimatedBytes
+
+   /**
+    * @return true when the cell holds SQL NULL
+    */
+   public boolean isNull(int row, int col){
+      return _nulls[col].get(row);
+   }
+
+   /**
+    * @return the value of an integer column
+    */
+   public int getInt(int row, int col){
+      if (_kinds[col] == LONG)
+         return (int) ((long[]) _columns[col])[row];
+      return ((int[]) column(col, INT))[row];
+   }
+
+   /**
+    * @return the value of an integer or bigint column
+    */
+   public long getLong(int row, int col){
+      if (_kinds[col] == INT)
+         return ((int[]) _columns[col])[row];
+      return ((long[]) column(col, LONG))[row];
+   }
+
+   /**
+    * @return the value of a numeric or floating point column
+    */
+   public double getDouble(int row, int col){
+      switch (_kinds[col]){
+         case INT: return ((int[]) _columns[col])[row];
+         case LONG: return ((long[]) _columns[col])[row];
+         default: return ((double[]) column(col, DOUBLE))[row];
+      }
+   }
+
+   /**
+    * @return the value of a date column, or null for SQL NULL
+    */
+   public LocalDate getDate(int row, int col){
+      int[] days = (int[]) column(col, DATE);
+      return isNull(row, col) ? null : LocalDate.ofEpochDay(days[row]);
+   }
+
+   /**
+    * @return the value of a timestamp column, or null for SQL NULL
+    */
+   public java.sql.Timestamp getTimestamp(int row, int col){
+      long[] millis = (long[]) column(col, TIMESTAMP);
+      return isNull(row, col) ? null : new java.sql.Timestamp(millis[row]);
+   }
+
+   /**
+    * @return the value of any column as text, or null for SQL NULL
+    */
+   public String getString(int row, int col){
+      if (isNull(row, col))
+         return null;
+      switch (_kinds[col]){
+         case INT: return String.valueOf(((int[]) _columns[col])[row]);
+         case LONG: return String.valueOf(((long[]) _columns[col])[row]);
+         case DOUBLE: return String.valueOf(((double[]) _columns[col])[row]);
+         case DATE: return LocalDate.ofEpochDay(((int[]) _columns[col])[row]).toString();
+         case TIMESTAMP: return new java.sql.Timestamp(((long[]) _columns[col])[row]).toString();
+         default: return ((String[]) _columns[col])[row];
+      }
+   }
+
+   /**
+    * Method to get a whole integer column. The array may be longer than
+    * rowCount(); only the first rowCount() entries are valid.
+    */
+   public int[] intColumn(int col){
+      return (int[]) column(col, INT);
+   }
+
+   /**
+    * Method to get a whole bigint column, see intColumn.
+    */
+   public long[] longColumn(int col){
+      return (long[]) column(col, LONG);
+   }
+
+   /**
+    * Method to get a whole numeric column, see intColumn.
+    */
+   public double[] doubleColumn(int col){
+      return (double[]) column(col, DOUBLE);
+   }
+
+   private Object column(int col, int kind){
+      if (_kinds[col] != kind)
+         throw new IllegalArgumentException("Column " + _names[col] + " is not of the requested type");
+      return _columns[col];
+   }
+
+   private void grow(){
+      int size = _capacity * 2;
+      for (int c = 0; c < _columns.length; ++c){
+         Object old = _columns[c];
+         switch (_kinds[c]){
+            case INT: case DATE: _columns[c] = Arrays.copyOf((int[]) old, size); break;
+            case LONG: case TIMESTAMP: _columns[c] = Arrays.copyOf((long[]) old, size); break;
+            case DOUBLE: _columns[c] = Arrays.copyOf((double[]) old, size); break;
+            default: _columns[c] = Arrays.copyOf((String[]) old, size); break;
+         }
+      }
+      _capacity = size;
+   }//end grow
+
+   private static Object allocate(int kind, int size){
+      switch (kind){
+         case INT: case DATE: return new int[size];
+         case LONG: case TIMESTAMP: return new long[size];
+         case DOUBLE: return new double[size];
+         default: return new String[size];
+      }
+   }
+
+   private static int kindOf(int sqlType){
+      switch (sqlType){
+         case Types.INTEGER:
+         case Types.SMALLINT:
+         case Types.TINYINT:
+            return INT;
+         case Types.BIGINT:
+            return LONG;
+         case Types.NUMERIC:
+         case Types.DECIMAL:
+         case Types.DOUBLE:
+         case Types.FLOAT:
+         case Types.REAL:
+            return DOUBLE;
+         case Types.DATE:
+            return DATE;
+         case Types.TIMESTAMP:
+            return TIMESTAMP;
+         default:
+            return TEXT;
+      }
+   }//end kindOf
+
+}//end TypedResult
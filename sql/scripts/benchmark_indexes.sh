@@ -0,0 +1,22 @@
+#!/bin/bash
+# Loads a synthetic dataset into a scratch database and times every menu
+# query with and without the indexes in create_indexes.sql.
+#
+# usage: benchmark_indexes.sh <scratch dbname> [scale]
+# Everything in the scratch database is dropped and recreated.
+DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+DB=${1:?"usage: benchmark_indexes.sh <scratch dbname> [scale]"}
+SCALE=${2:-1}
+
+psql -h localhost -p $PGPORT $DB < $DIR/../src/create_tables.sql
+
+JAVA_DIR=$DIR/../../java
+(cd $JAVA_DIR && mvn -B -q package -DskipTests) || exit 1
+# writes data/*.csv scaled up with DataGenerator and loads it with DataLoader.
+DATA=$(mktemp -d) || exit 1
+trap 'rm -rf "$DATA"' EXIT
+java -cp "$JAVA_DIR/target/hotel.jar:$JAVA_DIR/target/lib/*" DataGenerator \
+     $DATA $SCALE $DB $PGPORT $USER || exit 1
+
+java -cp "$JAVA_DIR/target/hotel.jar:$JAVA_DIR/target/lib/*" IndexBenchmark \
+     $DB $PGPORT $USER $DIR/../src/create_indexes.sql
@@ -1,6 +1,9 @@
 #!/bin/bash
 DIR="$( cd "$( dirname "${BASH_SOURCE[0]}" )" && pwd )"
+JAVA_DIR=$DIR/../../java
 psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_tables.sql
-psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/create_indexes.sql
-psql -h localhost -p $PGPORT $USER"_DB" < $DIR/../src/load_data.sql
-
+# builds target/hotel.jar with the PostgreSQL driver pom.xml declares; the bundled 7.3 driver cannot COPY.
+(cd $JAVA_DIR && mvn -B -q package -DskipTests) || exit 1
+# streams data/*.csv from this machine, then builds the indexes of create_indexes.sql.
+java -cp "$JAVA_DIR/target/hotel.jar:$JAVA_DIR/target/lib/*" DataLoader $USER"_DB" $PGPORT $USER \
+     $DIR/../../data $DIR/../src/create_indexes.sql
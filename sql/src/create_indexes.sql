@@ -0,0 +1,24 @@
+--The following index lets the hotel radius search in viewHotels narrow its bounding box on latitude and longitude
+--before the exact distance is computed.
+CREATE INDEX hotel_latitude_longitude_idx ON Hotel (latitude, longitude);
+
+--Hotels managed by the logged in manager (updateRoomInfo, viewRecentUpdates, viewBookingHistoryofHotel, ...).
+CREATE INDEX hotel_managerUserID_idx ON Hotel (managerUserID);
+
+--A customer's bookings newest first (viewRecentBookingsfromCustomer). The key matches the ORDER BY and the
+--keyset condition of every page, so a page reads only the rows it shows.
+CREATE INDEX roomBookings_customerID_bookingDate_idx ON RoomBookings (customerID, bookingDate DESC, bookingID DESC);
+
+--A hotel's bookings, optionally within a range of dates (viewBookingHistoryofHotel,
+--loading the availability index). Lookups by (hotelID, roomNumber, bookingDate) in bookRooms use the index
+--behind the UNIQUE constraint declared in create_tables.sql.
+CREATE INDEX roomBookings_hotelID_bookingDate_idx ON RoomBookings (hotelID, bookingDate);
+
+--The customers with the most bookings at a hotel (viewRegularCustomers) are the first entries of this index.
+CREATE INDEX customerBookingCounts_hotelID_bookings_idx ON CustomerBookingCounts (hotelID, bookings DESC, customerID);
+
+--Room updates made by a manager newest first (viewRecentUpdates), paged the same way.
+CREATE INDEX roomUpdatesLog_managerID_updatedOn_idx ON RoomUpdatesLog (managerID, updatedOn DESC, updateNumber DESC);
+
+--Repair requests placed by a manager (viewRoomRepairHistory).
+CREATE INDEX roomRepairRequests_managerID_idx ON RoomRepairRequests (managerID);
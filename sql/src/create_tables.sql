@@ -6,6 +6,8 @@ DROP TABLE IF EXISTS RoomBookings CASCADE;
 DROP TABLE IF EXISTS RoomRepairs CASCADE;
 DROP TABLE IF EXISTS RoomRepairRequests CASCADE;
 DROP TABLE IF EXISTS RoomUpdatesLog CASCADE;
+DROP TABLE IF EXISTS CustomerBookingCounts CASCADE;
+DROP TABLE IF EXISTS HotelDailyStats CASCADE;
 
 CREATE TABLE Users ( userID serial,
                      name char(50),
@@ -42,16 +44,20 @@ CREATE TABLE MaintenanceCompany (
 );
 
 
+---RoomBookings is partitioned by bookingDate into one table per month (see create_booking_partitions below), so a
+---query on a range of dates only reads the months in the range and old months can be detached without touching the
+---rest. Unique keys of a partitioned table have to include bookingDate, which the serial bookingID does not need.
 CREATE TABLE RoomBookings ( 
                     bookingID serial NOT NULL,
                     customerID integer NOT NULL,
                     hotelID integer NOT NULL,
                     roomNumber integer NOT NULL, 
                     bookingDate date NOT NULL, 
-                    PRIMARY KEY(bookingID),
+                    PRIMARY KEY(bookingID, bookingDate),
+                    UNIQUE(hotelID, roomNumber, bookingDate), ---a room can only be booked once per night
                     FOREIGN KEY(customerID) REFERENCES Users(userID),
                     FOREIGN KEY(hotelID, roomNumber) REFERENCES Rooms(hotelID, roomNumber)
-);
+) PARTITION BY RANGE (bookingDate);
 
 CREATE TABLE RoomRepairs (  
                             repairID serial,
@@ -87,8 +93,190 @@ CREATE TABLE RoomUpdatesLog (
 );
 
 ---The following is the definition of a user-defined sql function for calculating the distance between two lat-long pairs.
+---It is a plain IMMUTABLE sql function so the planner can inline it into queries instead of calling plpgsql once per row.
 CREATE OR REPLACE FUNCTION calculate_distance(lat1 decimal, long1 decimal, lat2 decimal, long2 decimal)
 RETURNS decimal AS $dist$
-BEGIN RETURN sqrt((lat1 - lat2) * (lat1 - lat2) + (long1 - long2) * (long1 - long2));
+SELECT sqrt((lat1 - lat2) * (lat1 - lat2) + (long1 - long2) * (long1 - long2));
+$dist$ LANGUAGE sql IMMUTABLE;
+
+---The following table holds how many bookings every customer has made at every hotel. It is kept up to date by the
+---triggers on RoomBookings below, so viewRegularCustomers reads the top customers of a hotel from an index instead of
+---counting all of the hotel's bookings.
+CREATE TABLE CustomerBookingCounts (
+                            hotelID integer NOT NULL,
+                            customerID integer NOT NULL,
+                            bookings integer NOT NULL,
+                            PRIMARY KEY(hotelID, customerID),
+                            FOREIGN KEY(hotelID) REFERENCES Hotel(hotelID),
+                            FOREIGN KEY(customerID) REFERENCES Users(userID)
+);
+
+---Statement level triggers see every row a statement inserted, deleted or updated as a transition table, so a COPY
+---or a batch of bookings changes each (hotelID, customerID) count once rather than once per row.
+CREATE OR REPLACE FUNCTION count_customer_bookings()
+RETURNS trigger AS $count$
+BEGIN
+    IF TG_OP = 'DELETE' OR TG_OP = 'UPDATE' THEN
+        UPDATE CustomerBookingCounts c SET bookings = c.bookings - o.n
+        FROM (SELECT hotelID, customerID, count(*) AS n FROM old_bookings GROUP BY hotelID, customerID) o
+        WHERE c.hotelID = o.hotelID AND c.customerID = o.customerID;
+
+        DELETE FROM CustomerBookingCounts c
+        USING (SELECT DISTINCT hotelID, customerID FROM old_bookings) o
+        WHERE c.hotelID = o.hotelID AND c.customerID = o.customerID AND c.bookings <= 0;
+    END IF;
+    IF TG_OP = 'INSERT' OR TG_OP = 'UPDATE' THEN
+        INSERT INTO CustomerBookingCounts (hotelID, customerID, bookings)
+        SELECT hotelID, customerID, count(*) FROM new_bookings GROUP BY hotelID, customerID
+        ON CONFLICT (hotelID, customerID) DO UPDATE SET bookings = CustomerBookingCounts.bookings + EXCLUDED.bookings;
+    END IF;
+    RETURN NULL;
+END;
+$count$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roomBookings_count_insert AFTER INSERT ON RoomBookings
+    REFERENCING NEW TABLE AS new_bookings
+    FOR EACH STATEMENT EXECUTE PROCEDURE count_customer_bookings();
+
+CREATE TRIGGER roomBookings_count_delete AFTER DELETE ON RoomBookings
+    REFERENCING OLD TABLE AS old_bookings
+    FOR EACH STATEMENT EXECUTE PROCEDURE count_customer_bookings();
+
+CREATE TRIGGER roomBookings_count_update AFTER UPDATE ON RoomBookings
+    REFERENCING OLD TABLE AS old_bookings NEW TABLE AS new_bookings
+    FOR EACH STATEMENT EXECUTE PROCEDURE count_customer_bookings();
+
+---The following table holds, for every hotel and night, how many of its rooms are booked and what those nights are
+---worth: at the rooms' current prices from today on, and at the prices the rooms had on the night for past nights.
+---It is kept up to date by the triggers on RoomBookings and Rooms below, so the occupancy and revenue of a hotel over
+---a month are read from about 30 rows instead of its bookings joined to Rooms.
+CREATE TABLE HotelDailyStats (
+                            hotelID integer NOT NULL,
+                            day date NOT NULL,
+                            bookedRooms integer NOT NULL,
+                            revenue bigint NOT NULL,
+                            PRIMARY KEY(hotelID, day),
+                            FOREIGN KEY(hotelID) REFERENCES Hotel(hotelID)
+);
+
+---Rows are added in (hotelID, day) order, so two transactions booking nights of the same hotel lock its days in the
+---same order and wait for each other rather than deadlock.
+CREATE OR REPLACE FUNCTION roll_up_bookings()
+RETURNS trigger AS $rollup$
+BEGIN
+    IF TG_OP = 'DELETE' OR TG_OP = 'UPDATE' THEN
+        UPDATE HotelDailyStats s SET bookedRooms = s.bookedRooms - o.n, revenue = s.revenue - o.revenue
+        FROM (SELECT b.hotelID, b.bookingDate, count(*) AS n, sum(r.price) AS revenue
+              FROM old_bookings b JOIN Rooms r ON r.hotelID = b.hotelID AND r.roomNumber = b.roomNumber
+              GROUP BY b.hotelID, b.bookingDate) o
+        WHERE s.hotelID = o.hotelID AND s.day = o.bookingDate;
+
+        DELETE FROM HotelDailyStats s
+        USING (SELECT DISTINCT hotelID, bookingDate FROM old_bookings) o
+        WHERE s.hotelID = o.hotelID AND s.day = o.bookingDate AND s.bookedRooms <= 0;
+    END IF;
+    IF TG_OP = 'INSERT' OR TG_OP = 'UPDATE' THEN
+        INSERT INTO HotelDailyStats (hotelID, day, bookedRooms, revenue)
+        SELECT b.hotelID, b.bookingDate, count(*), sum(r.price)
+        FROM new_bookings b JOIN Rooms r ON r.hotelID = b.hotelID AND r.roomNumber = b.roomNumber
+        GROUP BY b.hotelID, b.bookingDate ORDER BY b.hotelID, b.bookingDate
+        ON CONFLICT (hotelID, day) DO UPDATE SET bookedRooms = HotelDailyStats.bookedRooms + EXCLUDED.bookedRooms,
+                                                 revenue = HotelDailyStats.revenue + EXCLUDED.revenue;
+    END IF;
+    RETURN NULL;
+END;
+$rollup$ LANGUAGE plpgsql;
+
+CREATE TRIGGER roomBookings_stats_insert AFTER INSERT ON RoomBookings
+    REFERENCING NEW TABLE AS new_bookings
+    FOR EACH STATEMENT EXECUTE PROCEDURE roll_up_bookings();
+
+CREATE TRIGGER roomBookings_stats_delete AFTER DELETE ON RoomBookings
+    REFERENCING OLD TABLE AS old_bookings
+    FOR EACH STATEMENT EXECUTE PROCEDURE roll_up_bookings();
+
+CREATE TRIGGER roomBookings_stats_update AFTER UPDATE ON RoomBookings
+    REFERENCING OLD TABLE AS old_bookings NEW TABLE AS new_bookings
+    FOR EACH STATEMENT EXECUTE PROCEDURE roll_up_bookings();
+
+---A price change moves the revenue of every night from today on the room is booked by the difference. Past nights
+---keep the price the room had on the night, so a report on a past month does not change with today's prices, and
+---the update only reads the partitions from the current month on. Changes that leave the price alone, such as a new
+---imageURL, find nothing to update.
+CREATE OR REPLACE FUNCTION roll_up_room_prices()
+RETURNS trigger AS $prices$
+BEGIN
+    UPDATE HotelDailyStats s SET revenue = s.revenue + d.delta
+    FROM (SELECT rb.hotelID, rb.bookingDate, sum(n.price - o.price) AS delta
+          FROM old_rooms o JOIN new_rooms n ON n.hotelID = o.hotelID AND n.roomNumber = o.roomNumber
+          JOIN RoomBookings rb ON rb.hotelID = n.hotelID AND rb.roomNumber = n.roomNumber
+          WHERE n.price <> o.price AND rb.bookingDate >= current_date
+          GROUP BY rb.hotelID, rb.bookingDate) d
+    WHERE s.hotelID = d.hotelID AND s.day = d.bookingDate;
+    RETURN NULL;
 END;
-$dist$ LANGUAGE plpgsql;
+$prices$ LANGUAGE plpgsql;
+
+CREATE TRIGGER rooms_stats_update AFTER UPDATE ON Rooms
+    REFERENCING OLD TABLE AS old_rooms NEW TABLE AS new_rooms
+    FOR EACH STATEMENT EXECUTE PROCEDURE roll_up_room_prices();
+
+---The partitions of RoomBookings are named roombookings_pYYYY_MM and each holds the bookings of one month. There is
+---no default partition: a night in a month without a partition cannot be booked, but the planner then knows the
+---partitions in date order and reads a customer's newest bookings from the latest months only. The application
+---creates a missing month before booking a night in it (BookingPartitions), and months ahead of time as it runs.
+CREATE OR REPLACE FUNCTION create_booking_partitions(first_month date, last_month date)
+RETURNS integer AS $partitions$
+DECLARE
+    month date := date_trunc('month', first_month)::date;
+    partition text;
+    created integer := 0;
+BEGIN
+    ---two sessions creating the same month wait for each other instead of failing.
+    PERFORM pg_advisory_xact_lock(hashtext('roombookings partitions'));
+    WHILE month <= last_month LOOP
+        partition := 'roombookings_p' || to_char(month, 'YYYY_MM');
+        IF to_regclass(partition) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I PARTITION OF RoomBookings FOR VALUES FROM (%L) TO (%L)',
+                           partition, month, (month + interval '1 month')::date);
+            created := created + 1;
+        ELSIF NOT EXISTS (SELECT 1 FROM pg_inherits
+                          WHERE inhrelid = to_regclass(partition) AND inhparent = 'roombookings'::regclass) THEN
+            RAISE EXCEPTION 'Table % exists but is not a partition of RoomBookings', partition;
+        END IF;
+        month := (month + interval '1 month')::date;
+    END LOOP;
+    RETURN created;
+END;
+$partitions$ LANGUAGE plpgsql;
+
+---Detaches the months ending on or before a date from RoomBookings and returns the names of the detached tables.
+---Detaching only changes the catalog, so it takes no longer for a large month than for a small one; the tables are
+---kept with their rows, renamed to roombookings_archive_YYYY_MM so the month can be created again, and can be
+---archived or dropped afterwards. Their bookings are taken out of
+---CustomerBookingCounts, as deleting them would have done, but their nights stay in HotelDailyStats so the occupancy
+---and revenue of past months can still be reported; later price changes no longer move them.
+CREATE OR REPLACE FUNCTION detach_booking_partitions(before date)
+RETURNS SETOF text AS $detach$
+DECLARE
+    partition text;
+BEGIN
+    FOR partition IN
+        SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+        WHERE i.inhparent = 'roombookings'::regclass AND c.relname ~ '^roombookings_p[0-9]{4}_[0-9]{2}$'
+        AND to_date(substr(c.relname, 15), 'YYYY_MM') + interval '1 month' <= before
+        ORDER BY c.relname
+    LOOP
+        EXECUTE format('UPDATE CustomerBookingCounts c SET bookings = c.bookings - o.n '
+                       'FROM (SELECT hotelID, customerID, count(*) AS n FROM %I GROUP BY hotelID, customerID) o '
+                       'WHERE c.hotelID = o.hotelID AND c.customerID = o.customerID', partition);
+        EXECUTE format('ALTER TABLE RoomBookings DETACH PARTITION %I', partition);
+        EXECUTE format('ALTER TABLE %I RENAME TO %I', partition, 'roombookings_archive_' || substr(partition, 15));
+        RETURN NEXT 'roombookings_archive_' || substr(partition, 15);
+    END LOOP;
+    DELETE FROM CustomerBookingCounts WHERE bookings <= 0;
+END;
+$detach$ LANGUAGE plpgsql;
+
+---The current month and the next two years; earlier months are created by the data loader for the bookings it loads.
+SELECT create_booking_partitions(current_date, (current_date + interval '24 months')::date);